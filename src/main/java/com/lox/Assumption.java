@@ -0,0 +1,24 @@
+package com.lox;
+
+/**
+ * 编译后的代码所依赖的一个假设，例如"全局变量 fib 定义之后没有被重新赋值"。
+ * <p>
+ * 假设一旦失效就不会再恢复，之后重新编译时也不会再基于它做推测。生成的代码在用到假设的地方
+ * 先检查 {@link #isValid()}，只是一次字段读取。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className Assumption
+ * @date 2026/10/18 19:00
+ **/
+public final class Assumption {
+    private boolean valid = true;
+
+    public boolean isValid() {
+        return valid;
+    }
+
+    void invalidate() {
+        valid = false;
+    }
+}
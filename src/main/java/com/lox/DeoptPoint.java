@@ -0,0 +1,124 @@
+package com.lox;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * JIT 代码里的一个去优化点：某条语句开头的类型检查没通过时，从这条语句开始改由解释器执行。
+ * <p>
+ * 编译时记下这条语句所在的位置（外层的语句序列和循环，从外到内）以及此时已经声明的局部变量
+ * 在调用帧里的槽位。去优化时生成的代码把对应的 JVM 局部变量按同样的顺序放进数组交给 {@link #resume}，
+ * 这里把它们写回解释器的调用帧，再从最内层开始依次把每层剩下的部分交给解释器：语句序列执行剩下的
+ * 语句，循环重新从循环头执行（for 循环的循环体已经开始时先执行增量表达式）。被编译的函数没有被捕获的变量，所以只需要换上闭包的 upvalues。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className DeoptPoint
+ * @date 2026/10/18 19:10
+ **/
+final class DeoptPoint {
+
+    /**
+     * 一层位置。loop 不为 null 时表示一个正在执行的循环，否则表示从 statements[index] 开始
+     * 还没执行的语句。
+     */
+    static final class Frame {
+        final List<Stmt> statements;
+        final int index;
+        // Stmt.While 或 Stmt.For
+        final Stmt loop;
+        // for 循环回到循环头之前先执行增量表达式
+        final boolean increment;
+
+        Frame(List<Stmt> statements, int index, Stmt loop, boolean increment) {
+            this.statements = statements;
+            this.index = index;
+            this.loop = loop;
+            this.increment = increment;
+        }
+    }
+
+    final Deoptimizable owner;
+    // 函数模式下解释执行时回边记到这个函数上；OSR 编译的循环为 null，沿用解释器当前的函数
+    final FunctionProfile function;
+    final boolean isInitializer;
+    // 从外到内
+    final Frame[] frames;
+    // 已声明的局部变量在调用帧里的槽位，和 resume 收到的值一一对应
+    final int[] slots;
+    // 这条语句开头检查过类型的变量的槽位，去优化时把它们实际的类型记进 types
+    final int[] guarded;
+    final TypeFeedback types;
+    final String reason;
+
+    DeoptPoint(Deoptimizable owner, FunctionProfile function, boolean isInitializer,
+               Frame[] frames, int[] slots, int[] guarded, TypeFeedback types, String reason) {
+        this.owner = owner;
+        this.function = function;
+        this.isInitializer = isInitializer;
+        this.frames = frames;
+        this.slots = slots;
+        this.guarded = guarded;
+        this.types = types;
+        this.reason = reason;
+    }
+
+    /**
+     * values 和 resume 收到的一样，和 slots 一一对应
+     */
+    void observeTypes(Object[] values) {
+        for (int slot : guarded) {
+            for (int i = 0; i < slots.length; i++) {
+                if (slots[i] == slot) types.observe(slot, values[i]);
+            }
+        }
+    }
+
+    /**
+     * 在解释器里执行完剩下的部分，返回函数的返回值。函数模式下新分配一个调用帧；OSR 编译的循环
+     * 直接写回正在执行的那个调用帧，循环里的 return 留在解释器的 completion 上交给外层函数
+     */
+    Object resume(Interpreter interpreter, Upvalue[] upvalues, Object receiver, Object[] values) {
+        int previous = function != null ? interpreter.pushFrame(function.frameSize) : -1;
+        Upvalue[] enclosing = interpreter.upvalues;
+        interpreter.upvalues = upvalues;
+        try {
+            for (int i = 0; i < slots.length; i++) {
+                interpreter.stack[interpreter.fp + slots[i]] = values[i];
+            }
+            for (int i = frames.length - 1; i >= 0; i--) {
+                Frame frame = frames[i];
+                if (frame.loop != null) {
+                    // 内层的 break 结束这个循环，continue 和正常执行完都回到循环头，return 一直带到最外层
+                    if (interpreter.exitLoop()) continue;
+                    if (frame.loop.kind == Stmt.FOR) {
+                        interpreter.resumeFor((Stmt.For) frame.loop, frame.increment, function);
+                    } else {
+                        execute(interpreter, Collections.<Stmt>singletonList(frame.loop));
+                    }
+                } else if (interpreter.completion == Interpreter.NORMAL) {
+                    execute(interpreter, frame.statements.subList(frame.index, frame.statements.size()));
+                }
+            }
+        } finally {
+            interpreter.upvalues = enclosing;
+            if (function != null) interpreter.popFrame(previous);
+        }
+        if (function == null) return null;
+        interpreter.endFunction();
+        if (interpreter.completion == Interpreter.RETURN) {
+            Object value = interpreter.takeReturnValue();
+            return isInitializer ? receiver : value;
+        }
+        if (isInitializer) return receiver;
+        return null;
+    }
+
+    private void execute(Interpreter interpreter, List<Stmt> statements) {
+        if (function != null) {
+            interpreter.executeFunction(statements, function);
+        } else {
+            interpreter.executeBlock(statements);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.lox;
+
+/**
+ * 持有 JIT 代码、可以被去优化的对象：{@link FunctionProfile} 和 {@link LoopProfile}。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className Deoptimizable
+ * @date 2026/10/18 19:00
+ **/
+interface Deoptimizable {
+
+    /**
+     * 推测失败，丢掉编译好的代码 from，退回解释执行并重新计数。
+     * from 已经不是当前代码时（已经去优化过或重新编译过）什么也不做。
+     */
+    void deoptimize(Interpreter interpreter, JitCode from, String reason);
+}
@@ -1,27 +1,11 @@
 package com.lox;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
- * 每多一层结构块，就会在外层多出一层环境，最大的块的变量是放在最里面的环境。
- * 如下:
- * class {
- *     var x = 1;
- *
- *     func f1() {
- *         var x = 2;
- *         print x;
- *         {
- *             var x = 3;
- *             print x;
- *
- *         }
- *     }
- * }
- *
- * 上述代码中会放三层环境
- * 最外层是 块环境->方法环境->类环境
+ * 全局环境。局部变量都在解释器的调用帧里（被捕获的装在 {@link Upvalue} 里），
+ * 这里只存顶层的变量：顶层的变量和 REPL 里的输入在运行时才知道有哪些。变量按名字在 {@link Symbols}
+ * 里的编号直接下标访问。
  *
  * @author peiyou
  * @version 1.0
@@ -29,55 +13,79 @@ import java.util.Map;
  * @date 2023/9/13 14:31
  **/
 public class Environment {
-    // 变量表示更上一次的环境
-    final Environment enclosing;
+    // 符号编号 -> 单元，没有用到过的名字为 null
+    private Global[] values = new Global[64];
+    // 新建的单元带上 JIT 推测用的假设，赋值或重新定义时失效
+    private boolean trackAssumptions = false;
 
-    public Environment() {
-        this(null);
+    public void define(String name, Object value) {
+        global(Symbols.intern(name)).define(value);
     }
-    public Environment(Environment environment) {
-        this.enclosing = environment;
+
+    void define(Token name, Object value) {
+        global(name.symbol).define(value);
     }
-    private final Map<String, Object> values = new HashMap<>();
 
-    public void define(String name, Object value) {
-        values.put(name, value);
+    /**
+     * 全局变量 name 的单元，还没有时新建一个未定义的单元
+     */
+    Global global(Token name) {
+        return global(name.symbol);
     }
 
-    public Object get(Token name) {
-        if (values.containsKey(name.lexeme)) {
-            return values.get(name.lexeme);
+    private Global global(int symbol) {
+        if (symbol >= values.length) values = Arrays.copyOf(values, Math.max(symbol + 1, values.length * 2));
+        Global global = values[symbol];
+        if (global == null) {
+            global = new Global(Symbols.name(symbol));
+            if (trackAssumptions) global.assumption = new Assumption();
+            values[symbol] = global;
         }
-        if (enclosing != null) return enclosing.get(name);
+        return global;
+    }
 
-        throw new RuntimeError(name, "未定义的变量名'" + name.lexeme + "'；");
+    private Global lookup(Token name) {
+        return name.symbol < values.length ? values[name.symbol] : null;
     }
 
-    public void assign(Token name, Object value) {
-        if (values.containsKey(name.lexeme)) {
-            values.put(name.lexeme, value);
-            return;
-        }
-        if (enclosing != null) {
-            enclosing.assign(name, value);
-            return;
+    /**
+     * 从现在起记录变量的重新赋值，供 {@link #stable} 使用
+     */
+    void trackAssumptions() {
+        if (trackAssumptions) return;
+        trackAssumptions = true;
+        for (Global global : values) {
+            if (global == null) continue;
+            // 之前的赋值没有记录，只能当作已经被重新赋值过
+            global.assumption = new Assumption();
+            global.assumption.invalidate();
         }
-        throw new RuntimeError(name, "未定义变量'" + name.lexeme + "'；");
     }
 
-    public void assignAt(int distance, Token name, Object value) {
-        ancestor(distance).values.put(name.lexeme, value);
+    /**
+     * 变量 name 没有被重新赋值的假设；变量还没定义或者已经被赋值过时返回 null
+     */
+    Assumption stable(Token name) {
+        Global global = lookup(name);
+        if (global == null || !global.isDefined() || global.assumption == null) return null;
+        return global.assumption.isValid() ? global.assumption : null;
     }
 
-    public Object getAt(int distance, String name) {
-        return ancestor(distance).values.get(name);
+    Object value(Token name) {
+        return lookup(name).value;
     }
 
-    Environment ancestor(int distance) {
-        Environment environment = this;
-        for (int i = 0; i < distance; i++) {
-            environment = environment.enclosing;
-        }
-        return environment;
+    /**
+     * 按名字取全局变量
+     */
+    public Object get(Token name) {
+        return global(name.symbol).get(name);
+    }
+
+    /**
+     * 按名字给全局变量赋值
+     */
+    public void assign(Token name, Object value) {
+        global(name.symbol).assign(name, value);
     }
 }
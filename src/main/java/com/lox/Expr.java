@@ -2,10 +2,32 @@ package com.lox;
 
 import java.util.List;
 
-abstract class Expr {
+public abstract class Expr {
+
+    public static final int ASSIGN = 0;
+    public static final int BINARY = 1;
+    public static final int CALL = 2;
+    public static final int GET = 3;
+    public static final int GROUPING = 4;
+    public static final int LITERAL = 5;
+    public static final int LOGICAL = 6;
+    public static final int SET = 7;
+    public static final int THIS = 8;
+    public static final int SUPER = 9;
+    public static final int UNARY = 10;
+    public static final int TERNARY = 11;
+    public static final int VARIABLE = 12;
+    public static final int SELF_INC_OR_DECR = 13;
+    public static final int LAMBDA = 14;
+
+    public final int kind;
+
+    protected Expr(int kind) {
+        this.kind = kind;
+    }
 
-    abstract <R> R accept(Visitor<R> visitor);
-    interface Visitor<R> {
+    public abstract <R> R accept(Visitor<R> visitor);
+    public interface Visitor<R> {
         R visitAssignExpr(Assign expr);
         R visitBinaryExpr(Binary expr);
         R visitCallExpr(Call expr);
@@ -22,217 +44,248 @@ abstract class Expr {
         R visitSelfIncOrDecrExpr(SelfIncOrDecr expr);
         R visitLambdaExpr(Lambda expr);
     }
-    static class Assign extends Expr{
-        Assign(Token name, Expr value) {
+    public static class Assign extends Expr{
+        public Assign(Token name, Expr value) {
+            super(ASSIGN);
             this.name = name;
             this.value = value;
         }
 
-        final Token name;
-        final Expr value;
+        public final Token name;
+        public final Expr value;
+        public int binding;
+        public int slot;
+        public Global global;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitAssignExpr(this);
         }
     }
-    static class Binary extends Expr{
-        Binary(Expr left, Token operator, Expr right) {
+    public static class Binary extends Expr{
+        public Binary(Expr left, Token operator, Expr right) {
+            super(BINARY);
             this.left = left;
             this.operator = operator;
             this.right = right;
         }
 
-        final Expr left;
-        final Token operator;
-        final Expr right;
+        public final Expr left;
+        public final Token operator;
+        public final Expr right;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitBinaryExpr(this);
         }
     }
-    static class Call extends Expr{
-        Call(Expr callee, Token paren, List<Expr> arguments) {
+    public static class Call extends Expr{
+        public Call(Expr callee, Token paren, List<Expr> arguments) {
+            super(CALL);
             this.callee = callee;
             this.paren = paren;
             this.arguments = arguments;
         }
 
-        final Expr callee;
-        final Token paren;
-        final List<Expr> arguments;
+        public final Expr callee;
+        public final Token paren;
+        public final List<Expr> arguments;
+        public boolean tail;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitCallExpr(this);
         }
     }
-    static class Get extends Expr{
-        Get(Expr object, Token name) {
+    public static class Get extends Expr{
+        public Get(Expr object, Token name) {
+            super(GET);
             this.object = object;
             this.name = name;
         }
 
-        final Expr object;
-        final Token name;
+        public final Expr object;
+        public final Token name;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitGetExpr(this);
         }
     }
-    static class Grouping extends Expr{
-        Grouping(Expr expression) {
+    public static class Grouping extends Expr{
+        public Grouping(Expr expression) {
+            super(GROUPING);
             this.expression = expression;
         }
 
-        final Expr expression;
+        public final Expr expression;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitGroupingExpr(this);
         }
     }
-    static class Literal extends Expr{
-        Literal(Object value) {
+    public static class Literal extends Expr{
+        public Literal(Object value) {
+            super(LITERAL);
             this.value = value;
         }
 
-        final Object value;
+        public final Object value;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitLiteralExpr(this);
         }
     }
-    static class Logical extends Expr{
-        Logical(Expr left, Token operator, Expr right) {
+    public static class Logical extends Expr{
+        public Logical(Expr left, Token operator, Expr right) {
+            super(LOGICAL);
             this.left = left;
             this.operator = operator;
             this.right = right;
         }
 
-        final Expr left;
-        final Token operator;
-        final Expr right;
+        public final Expr left;
+        public final Token operator;
+        public final Expr right;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitLogicalExpr(this);
         }
     }
-    static class Set extends Expr{
-        Set(Expr object, Token name, Expr value) {
+    public static class Set extends Expr{
+        public Set(Expr object, Token name, Expr value) {
+            super(SET);
             this.object = object;
             this.name = name;
             this.value = value;
         }
 
-        final Expr object;
-        final Token name;
-        final Expr value;
+        public final Expr object;
+        public final Token name;
+        public final Expr value;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitSetExpr(this);
         }
     }
-    static class This extends Expr{
-        This(Token keyword) {
+    public static class This extends Expr{
+        public This(Token keyword) {
+            super(THIS);
             this.keyword = keyword;
         }
 
-        final Token keyword;
+        public final Token keyword;
+        public int binding;
+        public int slot;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitThisExpr(this);
         }
     }
-    static class Super extends Expr{
-        Super(Token keyword, Token method) {
+    public static class Super extends Expr{
+        public Super(Token keyword, Token method) {
+            super(SUPER);
             this.keyword = keyword;
             this.method = method;
         }
 
-        final Token keyword;
-        final Token method;
+        public final Token keyword;
+        public final Token method;
+        public int slot;
+        public int thisBinding;
+        public int thisSlot;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitSuperExpr(this);
         }
     }
-    static class Unary extends Expr{
-        Unary(Token operator, Expr right) {
+    public static class Unary extends Expr{
+        public Unary(Token operator, Expr right) {
+            super(UNARY);
             this.operator = operator;
             this.right = right;
         }
 
-        final Token operator;
-        final Expr right;
+        public final Token operator;
+        public final Expr right;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitUnaryExpr(this);
         }
     }
-    static class Ternary extends Expr{
-        Ternary(Expr condition, Expr left, Expr right) {
+    public static class Ternary extends Expr{
+        public Ternary(Expr condition, Expr left, Expr right) {
+            super(TERNARY);
             this.condition = condition;
             this.left = left;
             this.right = right;
         }
 
-        final Expr condition;
-        final Expr left;
-        final Expr right;
+        public final Expr condition;
+        public final Expr left;
+        public final Expr right;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitTernaryExpr(this);
         }
     }
-    static class Variable extends Expr{
-        Variable(Token name) {
+    public static class Variable extends Expr{
+        public Variable(Token name) {
+            super(VARIABLE);
             this.name = name;
         }
 
-        final Token name;
+        public final Token name;
+        public int binding;
+        public int slot;
+        public Global global;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitVariableExpr(this);
         }
     }
-    static class SelfIncOrDecr extends Expr{
-        SelfIncOrDecr(Token name, Expr variable) {
+    public static class SelfIncOrDecr extends Expr{
+        public SelfIncOrDecr(Token name, Expr variable) {
+            super(SELF_INC_OR_DECR);
             this.name = name;
             this.variable = variable;
         }
 
-        final Token name;
-        final Expr variable;
+        public final Token name;
+        public final Expr variable;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitSelfIncOrDecrExpr(this);
         }
     }
-    static class Lambda extends Expr{
-        Lambda(Token name, List<Token> params, List<Stmt> body) {
+    public static class Lambda extends Expr{
+        public Lambda(Token name, List<Token> params, List<Stmt> body) {
+            super(LAMBDA);
             this.name = name;
             this.params = params;
             this.body = body;
         }
 
-        final Token name;
-        final List<Token> params;
-        final List<Stmt> body;
+        public final Token name;
+        public final List<Token> params;
+        public final List<Stmt> body;
+        public int frameSize;
+        public int[] upvalues;
+        public int[] boxedParams;
+        public FunctionProfile profile;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitLambdaExpr(this);
         }
     }
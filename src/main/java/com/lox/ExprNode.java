@@ -0,0 +1,1260 @@
+package com.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.lox.runtime.LoxNumbers;
+import com.lox.runtime.LoxString;
+
+/**
+ * 预先链接好的表达式节点。
+ * {@link NodeCompiler} 在 Resolver 之后把 Expr 树翻译成节点树，运算符、变量的作用域距离这些
+ * 在翻译时就已经确定，执行时不再 switch 运算符。局部变量读写解释器栈上的调用帧，
+ * 被闭包捕获的变量读写调用帧或闭包里的 {@link Upvalue}。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className ExprNode
+ * @date 2026/10/18 14:10
+ **/
+abstract class ExprNode {
+    // 数字类型的标记，JIT 的类型反馈和推测用：浮点数、不是数字（不推测）、整数
+    static final int DOUBLE = 1;
+    static final int GENERIC = 3;
+    static final int LONG = 4;
+
+    // 持有这个节点的上一层，节点改写时由它换掉这个节点
+    NodeParent parent;
+
+    abstract Object evaluate();
+
+    static <T extends ExprNode> T adopt(NodeParent parent, T child) {
+        if (child != null) child.parent = parent;
+        return child;
+    }
+
+    /**
+     * 在上一层里把这个节点换成 replacement，之后的执行直接走 replacement
+     */
+    final void replace(ExprNode replacement) {
+        replacement.parent = parent;
+        if (parent != null) parent.replaceChild(this, replacement);
+    }
+
+    static final class Constant extends ExprNode {
+        final Object value;
+
+        Constant(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        Object evaluate() {
+            return value;
+        }
+    }
+
+    /**
+     * 被捕获的变量。upvalue 为 true 时是当前闭包捕获的第 slot 个，否则是当前函数自己的变量，
+     * Upvalue 放在调用帧的 slot 槽位里
+     */
+    static final class CellRead extends ExprNode {
+        final Interpreter interpreter;
+        final boolean upvalue;
+        final int slot;
+
+        CellRead(Interpreter interpreter, boolean upvalue, int slot) {
+            this.interpreter = interpreter;
+            this.upvalue = upvalue;
+            this.slot = slot;
+        }
+
+        @Override
+        Object evaluate() {
+            return cell(interpreter, upvalue, slot).value;
+        }
+    }
+
+    static Upvalue cell(Interpreter interpreter, boolean upvalue, int slot) {
+        return upvalue ? interpreter.upvalues[slot] : (Upvalue) interpreter.stack[interpreter.fp + slot];
+    }
+
+    /**
+     * 调用帧里的局部变量。栈在调用时可能扩容，每次都从解释器上取
+     */
+    static final class FrameRead extends ExprNode {
+        final Interpreter interpreter;
+        final int slot;
+
+        FrameRead(Interpreter interpreter, int slot) {
+            this.interpreter = interpreter;
+            this.slot = slot;
+        }
+
+        @Override
+        Object evaluate() {
+            return interpreter.stack[interpreter.fp + slot];
+        }
+    }
+
+    static final class GlobalRead extends ExprNode {
+        final Token name;
+        final Global global;
+
+        GlobalRead(Token name, Global global) {
+            this.name = name;
+            this.global = global;
+        }
+
+        @Override
+        Object evaluate() {
+            return global.get(name);
+        }
+    }
+
+    static final class CellWrite extends ExprNode implements NodeParent {
+        final Interpreter interpreter;
+        final boolean upvalue;
+        final int slot;
+        ExprNode value;
+
+        CellWrite(Interpreter interpreter, boolean upvalue, int slot, ExprNode value) {
+            this.interpreter = interpreter;
+            this.upvalue = upvalue;
+            this.slot = slot;
+            this.value = adopt(this, value);
+        }
+
+        @Override
+        public void replaceChild(ExprNode child, ExprNode replacement) {
+            if (value == child) value = replacement;
+        }
+
+        @Override
+        Object evaluate() {
+            Object result = value.evaluate();
+            cell(interpreter, upvalue, slot).value = result;
+            return result;
+        }
+    }
+
+    static final class FrameWrite extends ExprNode implements NodeParent {
+        final Interpreter interpreter;
+        final int slot;
+        ExprNode value;
+
+        FrameWrite(Interpreter interpreter, int slot, ExprNode value) {
+            this.interpreter = interpreter;
+            this.slot = slot;
+            this.value = adopt(this, value);
+        }
+
+        @Override
+        public void replaceChild(ExprNode child, ExprNode replacement) {
+            if (value == child) value = replacement;
+        }
+
+        @Override
+        Object evaluate() {
+            Object result = value.evaluate();
+            interpreter.stack[interpreter.fp + slot] = result;
+            return result;
+        }
+    }
+
+    static final class GlobalWrite extends ExprNode implements NodeParent {
+        final Token name;
+        final Global global;
+        ExprNode value;
+
+        GlobalWrite(Token name, Global global, ExprNode value) {
+            this.name = name;
+            this.global = global;
+            this.value = adopt(this, value);
+        }
+
+        @Override
+        public void replaceChild(ExprNode child, ExprNode replacement) {
+            if (value == child) value = replacement;
+        }
+
+        @Override
+        Object evaluate() {
+            Object result = value.evaluate();
+            global.assign(name, result);
+            return result;
+        }
+    }
+
+    /**
+     * 被捕获的变量的 ++ / --，返回自增前的值
+     */
+    static final class CellIncrement extends ExprNode {
+        final Interpreter interpreter;
+        final boolean upvalue;
+        final int slot;
+        final Token name;
+        final Token operator;
+        final int delta;
+
+        CellIncrement(Interpreter interpreter, boolean upvalue, int slot, Token name, Token operator) {
+            this.interpreter = interpreter;
+            this.upvalue = upvalue;
+            this.slot = slot;
+            this.name = name;
+            this.operator = operator;
+            this.delta = operator.type == TokenType.PLUS_PLUS ? 1 : -1;
+        }
+
+        @Override
+        Object evaluate() {
+            Upvalue cell = cell(interpreter, upvalue, slot);
+            Object value = cell.value;
+            cell.value = increment(operator, name, value, delta);
+            return value;
+        }
+    }
+
+    static final class FrameIncrement extends ExprNode {
+        final Interpreter interpreter;
+        final int slot;
+        final Token name;
+        final Token operator;
+        final int delta;
+
+        FrameIncrement(Interpreter interpreter, int slot, Token name, Token operator) {
+            this.interpreter = interpreter;
+            this.slot = slot;
+            this.name = name;
+            this.operator = operator;
+            this.delta = operator.type == TokenType.PLUS_PLUS ? 1 : -1;
+        }
+
+        @Override
+        Object evaluate() {
+            Object[] stack = interpreter.stack;
+            int index = interpreter.fp + slot;
+            Object value = stack[index];
+            stack[index] = increment(operator, name, value, delta);
+            return value;
+        }
+    }
+
+    static final class GlobalIncrement extends ExprNode {
+        final Token name;
+        final Global global;
+        final Token operator;
+        final int delta;
+
+        GlobalIncrement(Token name, Global global, Token operator) {
+            this.name = name;
+            this.global = global;
+            this.operator = operator;
+            this.delta = operator.type == TokenType.PLUS_PLUS ? 1 : -1;
+        }
+
+        @Override
+        Object evaluate() {
+            Object value = global.get(name);
+            global.assign(name, increment(operator, name, value, delta));
+            return value;
+        }
+    }
+
+    // ---------------------------------------------------------------- 二元运算
+
+    /**
+     * 有两个子节点的运算
+     */
+    abstract static class Binary extends ExprNode implements NodeParent {
+        ExprNode left;
+        ExprNode right;
+
+        Binary(ExprNode left, ExprNode right) {
+            this.left = adopt(this, left);
+            this.right = adopt(this, right);
+        }
+
+        @Override
+        public void replaceChild(ExprNode child, ExprNode replacement) {
+            if (left == child) {
+                left = replacement;
+            } else if (right == child) {
+                right = replacement;
+            }
+        }
+    }
+
+    /**
+     * 加减乘除和比较。NodeCompiler 生成的是 {@link Uninitialized}，第一次执行时按两个操作数的类型换成
+     * 只处理两个整数、两个浮点数或者左边是字符串的节点，这些节点只用一次 instanceof 确认推测，
+     * 不再走 LoxNumbers 的类型分派；推测落空时换成通用的节点（Add、Less 这些），之后不再特化。
+     * 整数加减乘溢出得到浮点数不算推测落空，结果交给上一层的节点去特化
+     */
+    abstract static class Operator extends Binary {
+        final Token operator;
+
+        Operator(ExprNode left, ExprNode right, Token operator) {
+            super(left, right);
+            this.operator = operator;
+        }
+
+        /**
+         * 推测落空：换成通用的节点，用已经求出的两个操作数把这一次算完
+         */
+        final Object generalize(Object l, Object r) {
+            replace(generic(left, right, operator));
+            return binary(operator, l, r);
+        }
+    }
+
+    static final class Uninitialized extends Operator {
+
+        Uninitialized(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        Object evaluate() {
+            Object l = left.evaluate();
+            Object r = right.evaluate();
+            replace(specialize(l, r));
+            return binary(operator, l, r);
+        }
+
+        private Operator specialize(Object l, Object r) {
+            TokenType type = operator.type;
+            if (l instanceof Long && r instanceof Long) {
+                switch (type) {
+                    case PLUS: return new AddLong(left, right, operator);
+                    case MINUS: return new SubtractLong(left, right, operator);
+                    case STAR: return new MultiplyLong(left, right, operator);
+                    case SLASH: return new DivideLong(left, right, operator);
+                    case GREATER: return new GreaterLong(left, right, operator);
+                    case GREATER_EQUAL: return new GreaterEqualLong(left, right, operator);
+                    case LESS: return new LessLong(left, right, operator);
+                    case LESS_EQUAL: return new LessEqualLong(left, right, operator);
+                }
+            } else if (l instanceof Double && r instanceof Double) {
+                switch (type) {
+                    case PLUS: return new AddDouble(left, right, operator);
+                    case MINUS: return new SubtractDouble(left, right, operator);
+                    case STAR: return new MultiplyDouble(left, right, operator);
+                    case SLASH: return new DivideDouble(left, right, operator);
+                    case GREATER: return new GreaterDouble(left, right, operator);
+                    case GREATER_EQUAL: return new GreaterEqualDouble(left, right, operator);
+                    case LESS: return new LessDouble(left, right, operator);
+                    case LESS_EQUAL: return new LessEqualDouble(left, right, operator);
+                }
+            } else if (type == TokenType.PLUS && LoxString.isString(l)) {
+                return new AddString(left, right, operator);
+            }
+            return generic(left, right, operator);
+        }
+    }
+
+    /**
+     * operator 对应的通用节点
+     */
+    static Operator generic(ExprNode left, ExprNode right, Token operator) {
+        switch (operator.type) {
+            case PLUS: return new Add(left, right, operator);
+            case MINUS: return new Subtract(left, right, operator);
+            case STAR: return new Multiply(left, right, operator);
+            case SLASH: return new Divide(left, right, operator);
+            case GREATER: return new Greater(left, right, operator);
+            case GREATER_EQUAL: return new GreaterEqual(left, right, operator);
+            case LESS: return new Less(left, right, operator);
+            default: return new LessEqual(left, right, operator);
+        }
+    }
+
+    /**
+     * 按 operator 的通用规则计算，只在节点改写时用一次
+     */
+    static Object binary(Token operator, Object l, Object r) {
+        switch (operator.type) {
+            case PLUS: return add(operator, l, r);
+            case MINUS: return checkNumbers(operator, LoxNumbers.subtract(l, r));
+            case STAR: return checkNumbers(operator, LoxNumbers.multiply(l, r));
+            case SLASH: return divide(operator, l, r);
+            case GREATER: return greater(operator, l, r);
+            case GREATER_EQUAL: return greaterEqual(operator, l, r);
+            case LESS: return less(operator, l, r);
+            default: return lessEqual(operator, l, r);
+        }
+    }
+
+    // 通用的算术和比较直接用 LoxNumbers 的规则，它先判断两个整数、两个浮点数这两种常见情况；
+    // 操作数不是数字时再看是不是字符串，最后报错，报错信息和解释器一样。
+
+    static Object add(Token operator, Object l, Object r) {
+        Object sum = LoxNumbers.add(l, r);
+        if (sum != null) return sum;
+        Object text = LoxString.concat(l, r);
+        if (text != null) return text;
+        throw new RuntimeError(operator, "操作数两边必须是数字或字符串.");
+    }
+
+    static Object divide(Token operator, Object l, Object r) {
+        Object result = checkNumbers(operator, LoxNumbers.divide(l, r));
+        if (LoxNumbers.isZero(r)) {
+            throw new RuntimeError(operator, "被除数不能为0.");
+        }
+        return result;
+    }
+
+    static Object greater(Token operator, Object l, Object r) {
+        Boolean result = LoxNumbers.greater(l, r);
+        if (result != null) return result;
+        return compareStrings(operator, l, r) > 0;
+    }
+
+    static Object greaterEqual(Token operator, Object l, Object r) {
+        Boolean result = LoxNumbers.greaterEqual(l, r);
+        if (result != null) return result;
+        return compareStrings(operator, l, r) >= 0;
+    }
+
+    static Object less(Token operator, Object l, Object r) {
+        Boolean result = LoxNumbers.less(l, r);
+        if (result != null) return result;
+        return compareStrings(operator, l, r) < 0;
+    }
+
+    static Object lessEqual(Token operator, Object l, Object r) {
+        Boolean result = LoxNumbers.lessEqual(l, r);
+        if (result != null) return result;
+        return compareStrings(operator, l, r) <= 0;
+    }
+
+    /**
+     * 有一边是字符串时按字符串比较，否则报错
+     */
+    private static int compareStrings(Token operator, Object l, Object r) {
+        if (LoxString.isString(l) || LoxString.isString(r)) {
+            return l.toString().compareTo(r.toString());
+        }
+        throw new RuntimeError(operator, "Operands must be numbers.");
+    }
+
+    static final class Add extends Operator {
+        Add(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        Object evaluate() {
+            return add(operator, left.evaluate(), right.evaluate());
+        }
+    }
+
+    static final class AddLong extends Operator {
+        AddLong(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        Object evaluate() {
+            Object l = left.evaluate();
+            Object r = right.evaluate();
+            if (l instanceof Long && r instanceof Long) return LoxNumbers.add((long) (Long) l, (long) (Long) r);
+            return generalize(l, r);
+        }
+    }
+
+    static final class AddDouble extends Operator {
+        AddDouble(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        Object evaluate() {
+            Object l = left.evaluate();
+            Object r = right.evaluate();
+            if (l instanceof Double && r instanceof Double) return (Double) l + (Double) r;
+            return generalize(l, r);
+        }
+    }
+
+    /**
+     * 左边是字符串的 +，右边不管是什么都拼上去
+     */
+    static final class AddString extends Operator {
+        AddString(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        Object evaluate() {
+            Object l = left.evaluate();
+            Object r = right.evaluate();
+            if (l instanceof String || l instanceof LoxString) return LoxString.concat(l, r);
+            return generalize(l, r);
+        }
+    }
+
+    static final class Subtract extends Operator {
+        Subtract(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        Object evaluate() {
+            return checkNumbers(operator, LoxNumbers.subtract(left.evaluate(), right.evaluate()));
+        }
+    }
+
+    static final class SubtractLong extends Operator {
+        SubtractLong(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        Object evaluate() {
+            Object l = left.evaluate();
+            Object r = right.evaluate();
+            if (l instanceof Long && r instanceof Long) return LoxNumbers.subtract((long) (Long) l, (long) (Long) r);
+            return generalize(l, r);
+        }
+    }
+
+    static final class SubtractDouble extends Operator {
+        SubtractDouble(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        Object evaluate() {
+            Object l = left.evaluate();
+            Object r = right.evaluate();
+            if (l instanceof Double && r instanceof Double) return (Double) l - (Double) r;
+            return generalize(l, r);
+        }
+    }
+
+    static final class Multiply extends Operator {
+        Multiply(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        Object evaluate() {
+            return checkNumbers(operator, LoxNumbers.multiply(left.evaluate(), right.evaluate()));
+        }
+    }
+
+    static final class MultiplyLong extends Operator {
+        MultiplyLong(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        Object evaluate() {
+            Object l = left.evaluate();
+            Object r = right.evaluate();
+            if (l instanceof Long && r instanceof Long) return LoxNumbers.multiply((long) (Long) l, (long) (Long) r);
+            return generalize(l, r);
+        }
+    }
+
+    static final class MultiplyDouble extends Operator {
+        MultiplyDouble(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        Object evaluate() {
+            Object l = left.evaluate();
+            Object r = right.evaluate();
+            if (l instanceof Double && r instanceof Double) return (Double) l * (Double) r;
+            return generalize(l, r);
+        }
+    }
+
+    static final class Divide extends Operator {
+        Divide(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        Object evaluate() {
+            return divide(operator, left.evaluate(), right.evaluate());
+        }
+    }
+
+    static final class DivideLong extends Operator {
+        DivideLong(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        Object evaluate() {
+            Object l = left.evaluate();
+            Object r = right.evaluate();
+            if (l instanceof Long && r instanceof Long) {
+                long divisor = (Long) r;
+                if (divisor == 0) throw new RuntimeError(operator, "被除数不能为0.");
+                return (double) (Long) l / divisor;
+            }
+            return generalize(l, r);
+        }
+    }
+
+    static final class DivideDouble extends Operator {
+        DivideDouble(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        Object evaluate() {
+            Object l = left.evaluate();
+            Object r = right.evaluate();
+            if (l instanceof Double && r instanceof Double) {
+                double divisor = (Double) r;
+                if (divisor == 0) throw new RuntimeError(operator, "被除数不能为0.");
+                return (Double) l / divisor;
+            }
+            return generalize(l, r);
+        }
+    }
+
+    static final class Greater extends Operator {
+        Greater(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        Object evaluate() {
+            return greater(operator, left.evaluate(), right.evaluate());
+        }
+    }
+
+    static final class GreaterLong extends Operator {
+        GreaterLong(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        Object evaluate() {
+            Object l = left.evaluate();
+            Object r = right.evaluate();
+            if (l instanceof Long && r instanceof Long) return (Long) l > (Long) r;
+            return generalize(l, r);
+        }
+    }
+
+    static final class GreaterDouble extends Operator {
+        GreaterDouble(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        Object evaluate() {
+            Object l = left.evaluate();
+            Object r = right.evaluate();
+            if (l instanceof Double && r instanceof Double) return (Double) l > (Double) r;
+            return generalize(l, r);
+        }
+    }
+
+    static final class GreaterEqual extends Operator {
+        GreaterEqual(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        Object evaluate() {
+            return greaterEqual(operator, left.evaluate(), right.evaluate());
+        }
+    }
+
+    static final class GreaterEqualLong extends Operator {
+        GreaterEqualLong(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        Object evaluate() {
+            Object l = left.evaluate();
+            Object r = right.evaluate();
+            if (l instanceof Long && r instanceof Long) return (Long) l >= (Long) r;
+            return generalize(l, r);
+        }
+    }
+
+    static final class GreaterEqualDouble extends Operator {
+        GreaterEqualDouble(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        Object evaluate() {
+            Object l = left.evaluate();
+            Object r = right.evaluate();
+            if (l instanceof Double && r instanceof Double) return (Double) l >= (Double) r;
+            return generalize(l, r);
+        }
+    }
+
+    static final class Less extends Operator {
+        Less(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        Object evaluate() {
+            return less(operator, left.evaluate(), right.evaluate());
+        }
+    }
+
+    static final class LessLong extends Operator {
+        LessLong(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        Object evaluate() {
+            Object l = left.evaluate();
+            Object r = right.evaluate();
+            if (l instanceof Long && r instanceof Long) return (Long) l < (Long) r;
+            return generalize(l, r);
+        }
+    }
+
+    static final class LessDouble extends Operator {
+        LessDouble(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        Object evaluate() {
+            Object l = left.evaluate();
+            Object r = right.evaluate();
+            if (l instanceof Double && r instanceof Double) return (Double) l < (Double) r;
+            return generalize(l, r);
+        }
+    }
+
+    static final class LessEqual extends Operator {
+        LessEqual(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        Object evaluate() {
+            return lessEqual(operator, left.evaluate(), right.evaluate());
+        }
+    }
+
+    static final class LessEqualLong extends Operator {
+        LessEqualLong(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        Object evaluate() {
+            Object l = left.evaluate();
+            Object r = right.evaluate();
+            if (l instanceof Long && r instanceof Long) return (Long) l <= (Long) r;
+            return generalize(l, r);
+        }
+    }
+
+    static final class LessEqualDouble extends Operator {
+        LessEqualDouble(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        Object evaluate() {
+            Object l = left.evaluate();
+            Object r = right.evaluate();
+            if (l instanceof Double && r instanceof Double) return (Double) l <= (Double) r;
+            return generalize(l, r);
+        }
+    }
+
+    static final class Equal extends Binary {
+        // == 为 false，!= 为 true
+        final boolean negate;
+
+        Equal(ExprNode left, ExprNode right, boolean negate) {
+            super(left, right);
+            this.negate = negate;
+        }
+
+        @Override
+        Object evaluate() {
+            Object l = left.evaluate();
+            Object r = right.evaluate();
+            return isEqual(l, r) != negate;
+        }
+    }
+
+    static final class BitAnd extends Binary {
+        final Token operator;
+
+        BitAnd(ExprNode left, ExprNode right, Token operator) {
+            super(left, right);
+            this.operator = operator;
+        }
+
+        @Override
+        Object evaluate() {
+            Object l = left.evaluate();
+            Object r = right.evaluate();
+            if (l instanceof Long && r instanceof Long) return (Long) l & (Long) r;
+            return checkInteger(operator, LoxNumbers.bitAnd(l, r));
+        }
+    }
+
+    static final class BitOr extends Binary {
+        final Token operator;
+
+        BitOr(ExprNode left, ExprNode right, Token operator) {
+            super(left, right);
+            this.operator = operator;
+        }
+
+        @Override
+        Object evaluate() {
+            Object l = left.evaluate();
+            Object r = right.evaluate();
+            if (l instanceof Long && r instanceof Long) return (Long) l | (Long) r;
+            return checkInteger(operator, LoxNumbers.bitOr(l, r));
+        }
+    }
+
+    static final class Comma extends Binary {
+        Comma(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        Object evaluate() {
+            left.evaluate();
+            return right.evaluate();
+        }
+    }
+
+    // ---------------------------------------------------------------- 一元运算和逻辑运算
+
+    /**
+     * 有一个子节点的运算
+     */
+    abstract static class Unary extends ExprNode implements NodeParent {
+        ExprNode right;
+
+        Unary(ExprNode right) {
+            this.right = adopt(this, right);
+        }
+
+        @Override
+        public void replaceChild(ExprNode child, ExprNode replacement) {
+            if (right == child) right = replacement;
+        }
+    }
+
+    static final class Not extends Unary {
+        Not(ExprNode right) {
+            super(right);
+        }
+
+        @Override
+        Object evaluate() {
+            return !isTruthy(right.evaluate());
+        }
+    }
+
+    /**
+     * 取负，和 {@link Operator} 一样第一次执行时按操作数的类型特化
+     */
+    static final class UninitializedNegate extends Unary {
+        final Token operator;
+
+        UninitializedNegate(ExprNode right, Token operator) {
+            super(right);
+            this.operator = operator;
+        }
+
+        @Override
+        Object evaluate() {
+            Object value = right.evaluate();
+            if (value instanceof Long) {
+                replace(new NegateLong(right, operator));
+            } else if (value instanceof Double) {
+                replace(new NegateDouble(right, operator));
+            } else {
+                replace(new Negate(right, operator));
+            }
+            return negate(operator, value);
+        }
+    }
+
+    static Object negate(Token operator, Object value) {
+        Object result = LoxNumbers.negate(value);
+        if (result == null) {
+            throw new RuntimeError(operator, "Operand must be a number.");
+        }
+        return result;
+    }
+
+    static final class Negate extends Unary {
+        final Token operator;
+
+        Negate(ExprNode right, Token operator) {
+            super(right);
+            this.operator = operator;
+        }
+
+        @Override
+        Object evaluate() {
+            return negate(operator, right.evaluate());
+        }
+    }
+
+    static final class NegateLong extends Unary {
+        final Token operator;
+
+        NegateLong(ExprNode right, Token operator) {
+            super(right);
+            this.operator = operator;
+        }
+
+        @Override
+        Object evaluate() {
+            Object value = right.evaluate();
+            if (value instanceof Long) {
+                long number = (Long) value;
+                if (!LoxNumbers.negateOverflows(number)) return -number;
+                return -(double) number;
+            }
+            replace(new Negate(right, operator));
+            return negate(operator, value);
+        }
+    }
+
+    static final class NegateDouble extends Unary {
+        final Token operator;
+
+        NegateDouble(ExprNode right, Token operator) {
+            super(right);
+            this.operator = operator;
+        }
+
+        @Override
+        Object evaluate() {
+            Object value = right.evaluate();
+            if (value instanceof Double) return -(Double) value;
+            replace(new Negate(right, operator));
+            return negate(operator, value);
+        }
+    }
+
+    static final class And extends Binary {
+        And(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        Object evaluate() {
+            Object value = left.evaluate();
+            if (!isTruthy(value)) return value;
+            return right.evaluate();
+        }
+    }
+
+    static final class Or extends Binary {
+        Or(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        Object evaluate() {
+            Object value = left.evaluate();
+            if (isTruthy(value)) return value;
+            return right.evaluate();
+        }
+    }
+
+    static final class Conditional extends ExprNode implements NodeParent {
+        ExprNode condition;
+        ExprNode thenValue;
+        ExprNode elseValue;
+
+        Conditional(ExprNode condition, ExprNode thenValue, ExprNode elseValue) {
+            this.condition = adopt(this, condition);
+            this.thenValue = adopt(this, thenValue);
+            this.elseValue = adopt(this, elseValue);
+        }
+
+        @Override
+        public void replaceChild(ExprNode child, ExprNode replacement) {
+            if (condition == child) {
+                condition = replacement;
+            } else if (thenValue == child) {
+                thenValue = replacement;
+            } else if (elseValue == child) {
+                elseValue = replacement;
+            }
+        }
+
+        @Override
+        Object evaluate() {
+            if (isTruthy(condition.evaluate())) {
+                return thenValue.evaluate();
+            }
+            return elseValue.evaluate();
+        }
+    }
+
+    // ---------------------------------------------------------------- 调用和对象
+
+    static final class Call extends ExprNode implements NodeParent {
+        ExprNode callee;
+        final ExprNode[] arguments;
+        final Token paren;
+        final Interpreter interpreter;
+        // callee 是 Klass.method 时用来查静态方法，见 Interpreter.visitCallExpr
+        final ExprNode staticReceiver;
+        final Token staticName;
+        // return f(...) 里的调用，见 Interpreter.tailCall
+        final boolean tail;
+
+        Call(ExprNode callee, ExprNode[] arguments, Token paren, Interpreter interpreter,
+             ExprNode staticReceiver, Token staticName, boolean tail) {
+            this.callee = adopt(this, callee);
+            this.arguments = arguments;
+            for (ExprNode argument : arguments) {
+                adopt(this, argument);
+            }
+            this.paren = paren;
+            this.interpreter = interpreter;
+            this.staticReceiver = staticReceiver;
+            this.staticName = staticName;
+            this.tail = tail;
+        }
+
+        @Override
+        public void replaceChild(ExprNode child, ExprNode replacement) {
+            if (callee == child) {
+                callee = replacement;
+            } else {
+                for (int i = 0; i < arguments.length; i++) {
+                    if (arguments[i] == child) arguments[i] = replacement;
+                }
+            }
+        }
+
+        @Override
+        Object evaluate() {
+            Object function = callee.evaluate();
+            if (function == null && staticReceiver != null) {
+                Object receiver = staticReceiver.evaluate();
+                if (receiver instanceof LoxClass) {
+                    LoxFunction staticMethod = ((LoxClass) receiver).findStaticMethod(staticName.symbol);
+                    if (staticMethod == null) {
+                        throw new RuntimeError(paren, staticName.lexeme + "不是静态方法。");
+                    }
+                    function = staticMethod;
+                }
+            }
+            ExprNode[] arguments = this.arguments;
+            switch (arguments.length) {
+                case 0:
+                    return interpreter.call(function, 0, null, null, null, null, paren, tail);
+                case 1:
+                    return interpreter.call(function, 1, arguments[0].evaluate(), null, null, null, paren, tail);
+                case 2:
+                    return interpreter.call(function, 2, arguments[0].evaluate(), arguments[1].evaluate(),
+                            null, null, paren, tail);
+                case 3:
+                    return interpreter.call(function, 3, arguments[0].evaluate(), arguments[1].evaluate(),
+                            arguments[2].evaluate(), null, paren, tail);
+                case 4:
+                    return interpreter.call(function, 4, arguments[0].evaluate(), arguments[1].evaluate(),
+                            arguments[2].evaluate(), arguments[3].evaluate(), paren, tail);
+            }
+            List<Object> args = new ArrayList<>(arguments.length);
+            for (ExprNode argument : arguments) {
+                args.add(argument.evaluate());
+            }
+            if (!(function instanceof LoxCallable)) {
+                throw new RuntimeError(paren, "方法和类才支持调用.");
+            }
+            LoxCallable callable = (LoxCallable) function;
+            if (args.size() != callable.arity()) {
+                throw new RuntimeError(paren, "期待 " + callable.arity() + " 个参数，但只传入了 " + args.size() + " 个。");
+            }
+            if (tail) return interpreter.tailCall(callable, args);
+            return callable.call(interpreter, args);
+        }
+    }
+
+    static final class Get extends ExprNode implements NodeParent {
+        ExprNode object;
+        final Token name;
+        final Interpreter interpreter;
+
+        Get(ExprNode object, Token name, Interpreter interpreter) {
+            this.object = adopt(this, object);
+            this.name = name;
+            this.interpreter = interpreter;
+        }
+
+        @Override
+        public void replaceChild(ExprNode child, ExprNode replacement) {
+            if (object == child) object = replacement;
+        }
+
+        @Override
+        Object evaluate() {
+            Object target = object.evaluate();
+            if (target instanceof LoxInstance) {
+                Object value = ((LoxInstance) target).get(name);
+                if (value instanceof LoxGetterFunction) {
+                    return ((LoxGetterFunction) value).call0(interpreter);
+                }
+                return value;
+            }
+            return null;
+        }
+    }
+
+    static final class Set extends ExprNode implements NodeParent {
+        ExprNode object;
+        final Token name;
+        ExprNode value;
+
+        Set(ExprNode object, Token name, ExprNode value) {
+            this.object = adopt(this, object);
+            this.name = name;
+            this.value = adopt(this, value);
+        }
+
+        @Override
+        public void replaceChild(ExprNode child, ExprNode replacement) {
+            if (object == child) {
+                object = replacement;
+            } else if (value == child) {
+                value = replacement;
+            }
+        }
+
+        @Override
+        Object evaluate() {
+            Object target = object.evaluate();
+            if (!(target instanceof LoxInstance)) {
+                throw new RuntimeError(name, "Only instances have fields.");
+            }
+            Object result = value.evaluate();
+            ((LoxInstance) target).set(name, result);
+            return result;
+        }
+    }
+
+    static final class Super extends ExprNode {
+        final Interpreter interpreter;
+        // super 在闭包里的下标
+        final int slot;
+        // 读 this 的节点
+        final ExprNode receiver;
+        final Token method;
+
+        Super(Interpreter interpreter, int slot, ExprNode receiver, Token method) {
+            this.interpreter = interpreter;
+            this.slot = slot;
+            this.receiver = receiver;
+            this.method = method;
+        }
+
+        @Override
+        Object evaluate() {
+            LoxClass superclass = (LoxClass) interpreter.upvalues[slot].value;
+            LoxInstance object = (LoxInstance) receiver.evaluate();
+            LoxFunction function = superclass.findMethod(method.symbol);
+            if (function == null) {
+                throw new RuntimeError(method, "Undefined property '" + method.lexeme + "'.");
+            }
+            return function.bind(object);
+        }
+    }
+
+    static final class Lambda extends ExprNode {
+        final Expr.Lambda lambda;
+        final FunctionProfile profile;
+        final Interpreter interpreter;
+
+        Lambda(Expr.Lambda lambda, FunctionProfile profile, Interpreter interpreter) {
+            this.lambda = lambda;
+            this.profile = profile;
+            this.interpreter = interpreter;
+        }
+
+        @Override
+        Object evaluate() {
+            return new LoxLambda(lambda, interpreter.capture(lambda.upvalues), profile);
+        }
+    }
+
+    /**
+     * 语法上合法但执行时必然出错的表达式，和解释器一样等到执行时才报错
+     */
+    static final class Fail extends ExprNode {
+        final Token token;
+        final String message;
+
+        Fail(Token token, String message) {
+            this.token = token;
+            this.message = message;
+        }
+
+        @Override
+        Object evaluate() {
+            throw new RuntimeError(token, message);
+        }
+    }
+
+    // ---------------------------------------------------------------- 公共的检查
+
+    static boolean isTruthy(Object object) {
+        if (object == null) return false;
+        if (object instanceof Boolean) return (boolean) object;
+        return true;
+    }
+
+    static boolean isEqual(Object left, Object right) {
+        return LoxNumbers.isEqual(left, right);
+    }
+
+    static Object increment(Token operator, Token name, Object value, int delta) {
+        if (value == null) throw new RuntimeError(operator, "变量'" + name.lexeme + "'未初始化.");
+        Object result = LoxNumbers.increment(value, delta);
+        if (result == null) {
+            throw new RuntimeError(operator, operator.lexeme + "操作只能是数字。");
+        }
+        return result;
+    }
+
+    /**
+     * 数字运算的结果，为 null 时说明操作数不都是数字
+     */
+    static Object checkNumbers(Token operator, Object result) {
+        if (result != null) return result;
+        throw new RuntimeError(operator, "Operands must be numbers.");
+    }
+
+    static void checkNumberOperands(Token operator, Object left, Object right) {
+        if (LoxNumbers.isNumber(left) && LoxNumbers.isNumber(right)) return;
+        throw new RuntimeError(operator, "Operands must be numbers.");
+    }
+
+    /**
+     * &amp; 和 | 的结果，为 null 时说明操作数不都是整数
+     */
+    static Object checkInteger(Token operator, Object result) {
+        if (result != null) return result;
+        throw new RuntimeError(operator, "Operand must be a integer.");
+    }
+}
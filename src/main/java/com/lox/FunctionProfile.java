@@ -0,0 +1,199 @@
+package com.lox;
+
+import java.util.List;
+
+import com.lox.jit.JitBailout;
+
+/**
+ * 一个函数声明（具名函数、方法或 lambda）对应一份，由它创建出来的所有 LoxFunction/LoxLambda
+ * 共享，包括 bind 出来的方法。
+ * <p>
+ * 分层执行：函数从 {@link Tier#INTERPRETER} 开始，调用次数加上循环回边次数（热度）超过
+ * 阈值后升级到 {@link Tier#NODES}（预先链接好的节点树），再热就升级到 {@link Tier#JIT}（JVM 字节码）。
+ * 升级只发生在函数入口，正在执行的那一次调用不受影响。阈值小于 0 表示不启用那一层。
+ * JIT 代码里的推测失败时去优化，退回解释执行并重新计数，热了之后再编译。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className FunctionProfile
+ * @date 2026/10/18 16:30
+ **/
+final class FunctionProfile implements Deoptimizable {
+    static final int DEFAULT_NODE_THRESHOLD = 32;
+    static final int DEFAULT_JIT_THRESHOLD = 1000;
+
+    enum Tier {
+        INTERPRETER, NODES, JIT
+    }
+
+    final String name;
+    final Token token;
+    final List<Token> params;
+    // 方法的 0 号槽是 this，参数依次跟在后面；boxedParams 是被捕获的参数（和 this）的槽位
+    final boolean hasThis;
+    final int frameSize;
+    final int[] boxedParams;
+    final List<Stmt> statements;
+    final boolean isInitializer;
+
+    private Tier tier = Tier.INTERPRETER;
+    int invocations = 0;
+    int backEdges = 0;
+    // NODES 层的函数体
+    StmtNode.Body body = null;
+    // JIT 层编译好的代码
+    JitCode code = null;
+    // 编译失败过就不再尝试，停在 NODES 或 INTERPRETER
+    private boolean jitFailed = false;
+    // JIT 推测局部变量类型用的反馈，去优化时更新
+    final TypeFeedback types = new TypeFeedback();
+
+    private FunctionProfile(String name, Token token, List<Token> params, boolean hasThis, int frameSize,
+                            int[] boxedParams, List<Stmt> statements, boolean isInitializer) {
+        this.name = name;
+        this.token = token;
+        this.params = params;
+        this.hasThis = hasThis;
+        this.frameSize = frameSize;
+        this.boxedParams = boxedParams;
+        this.statements = statements;
+        this.isInitializer = isInitializer;
+    }
+
+    static FunctionProfile of(Stmt.Function declaration, boolean isInitializer) {
+        return new FunctionProfile(declaration.name.lexeme, declaration.name, declaration.params, declaration.hasThis,
+                declaration.frameSize, declaration.boxedParams, declaration.body, isInitializer);
+    }
+
+    static FunctionProfile of(Expr.Lambda lambda) {
+        return new FunctionProfile("lambda", lambda.name, lambda.params, false,
+                lambda.frameSize, lambda.boxedParams, lambda.body, false);
+    }
+
+    Tier tier() {
+        return tier;
+    }
+
+    /**
+     * 函数入口调用：记一次调用，够热就升级。返回 JIT 代码，还没到 JIT 层时返回 null
+     */
+    JitCode enter(Interpreter interpreter) {
+        if (code != null) return code;
+        if (invocations < Integer.MAX_VALUE) invocations++;
+        long hotness = (long) invocations + backEdges;
+        if (!jitFailed && interpreter.jitThreshold >= 0 && hotness >= interpreter.jitThreshold) {
+            try {
+                code = new JitCompiler(interpreter, this).compile();
+                promote(interpreter, Tier.JIT);
+                return code;
+            } catch (JitBailout e) {
+                jitFailed = true;
+                if (interpreter.traceTiers) {
+                    System.err.println("[tier] " + describe() + " 无法 JIT：" + e.getMessage());
+                }
+            }
+        }
+        if (body == null && interpreter.nodeThreshold >= 0 && hotness >= interpreter.nodeThreshold) {
+            useNodes(interpreter, new NodeCompiler(interpreter, false).compileBody(this));
+        }
+        return null;
+    }
+
+    /**
+     * 在解释器的栈上分配调用帧，参数放进帧里（方法的 0 号槽留给 this），返回调用方的帧，交给
+     * {@link #execute}
+     */
+    int pushFrame(Interpreter interpreter, List<Object> arguments) {
+        int previous = interpreter.pushFrame(frameSize);
+        Object[] stack = interpreter.stack;
+        int base = hasThis ? interpreter.fp + 1 : interpreter.fp;
+        for (int i = 0; i < arguments.size(); i++) {
+            stack[base + i] = arguments.get(i);
+        }
+        return previous;
+    }
+
+    /**
+     * 参数不超过 4 个时的 pushFrame，多出来的参数位置是 null，不写进帧里
+     */
+    int pushFrame(Interpreter interpreter, Object a0, Object a1, Object a2, Object a3) {
+        int previous = interpreter.pushFrame(frameSize);
+        Object[] stack = interpreter.stack;
+        int base = hasThis ? interpreter.fp + 1 : interpreter.fp;
+        int arity = params.size();
+        if (arity > 0) stack[base] = a0;
+        if (arity > 1) stack[base + 1] = a1;
+        if (arity > 2) stack[base + 2] = a2;
+        if (arity > 3) stack[base + 3] = a3;
+        return previous;
+    }
+
+    /**
+     * 解释执行（到了 NODES 层就执行节点树）一次调用，调用帧已经由 pushFrame 分配好：this 放进帧里，
+     * 被捕获的参数装进 Upvalue；函数体执行期间解释器的 upvalues 换成这个闭包的，最后退回 previous。
+     * 执行了 return 时解释器的 completion 为 RETURN，由调用方取走返回值
+     */
+    void execute(Interpreter interpreter, Upvalue[] upvalues, Object receiver, int previous) {
+        Upvalue[] enclosing = interpreter.upvalues;
+        interpreter.upvalues = upvalues;
+        try {
+            Object[] stack = interpreter.stack;
+            int fp = interpreter.fp;
+            if (hasThis) stack[fp] = receiver;
+            for (int slot : boxedParams) {
+                stack[fp + slot] = new Upvalue(stack[fp + slot]);
+            }
+            if (body != null) {
+                body.execute();
+            } else {
+                interpreter.executeFunction(statements, this);
+            }
+            interpreter.endFunction();
+        } finally {
+            interpreter.upvalues = enclosing;
+            interpreter.popFrame(previous);
+        }
+    }
+
+    @Override
+    public void deoptimize(Interpreter interpreter, JitCode from, String reason) {
+        if (code != from) return;
+        code = null;
+        // 不重新计数，下次进入时就重新编译：失败的推测已经记在 types 里（每次都让某个变量的推测更保守），
+        // 被重新赋值的全局变量也不会再当常量，所以重新编译的次数有限
+        Tier next = body != null ? Tier.NODES : Tier.INTERPRETER;
+        if (interpreter.traceTiers) {
+            System.err.println("[deopt] " + describe() + " " + tier + " -> " + next + "：" + reason);
+        }
+        tier = next;
+    }
+
+    void useNodes(Interpreter interpreter, StmtNode.Body body) {
+        this.body = body;
+        promote(interpreter, Tier.NODES);
+    }
+
+    /**
+     * 循环结束（或被 break/return/异常打断）时把这次执行的回边次数累加进来
+     */
+    void addBackEdges(int count) {
+        backEdges = (int) Math.min(Integer.MAX_VALUE, (long) backEdges + count);
+    }
+
+    private void promote(Interpreter interpreter, Tier next) {
+        if (interpreter.traceTiers) {
+            System.err.println("[tier] " + describe() + " " + tier + " -> " + next
+                    + " (calls=" + invocations + ", back-edges=" + backEdges + ")");
+        }
+        tier = next;
+    }
+
+    private String describe() {
+        return name + "@" + token.line;
+    }
+
+    @Override
+    public String toString() {
+        return describe() + " " + tier + " calls=" + invocations + " back-edges=" + backEdges;
+    }
+}
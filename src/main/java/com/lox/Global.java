@@ -0,0 +1,52 @@
+package com.lox;
+
+/**
+ * 一个全局变量的存储单元。全局环境按名字建单元，单元一旦建立就不会被替换，
+ * 所以使用变量的语法树节点第一次查找之后可以直接记住单元，之后的读写只是一次字段访问。
+ * <p>
+ * 单元可以先于定义存在（函数里用到后面才定义的全局变量），这时值是 {@link #UNDEFINED}，
+ * 读写都按未定义报错；REPL 里重新定义同名变量时写的也是同一个单元，已经记住它的节点自然看到新值。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className Global
+ * @date 2026/10/18 21:40
+ **/
+public final class Global {
+    // 还没有执行到定义语句
+    static final Object UNDEFINED = new Object();
+
+    final String name;
+    Object value = UNDEFINED;
+    // JIT 推测"定义后没有再赋值"时用，只在开启了推测的全局环境里创建
+    Assumption assumption;
+
+    Global(String name) {
+        this.name = name;
+    }
+
+    boolean isDefined() {
+        return value != UNDEFINED;
+    }
+
+    public Object get(Token token) {
+        Object result = value;
+        if (result == UNDEFINED) {
+            throw new RuntimeError(token, "未定义的变量名'" + name + "'；");
+        }
+        return result;
+    }
+
+    public void assign(Token token, Object newValue) {
+        if (value == UNDEFINED) {
+            throw new RuntimeError(token, "未定义变量'" + name + "'；");
+        }
+        if (assumption != null) assumption.invalidate();
+        value = newValue;
+    }
+
+    void define(Object newValue) {
+        if (value != UNDEFINED && assumption != null) assumption.invalidate();
+        value = newValue;
+    }
+}
@@ -1,9 +1,11 @@
 package com.lox;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+
+import com.lox.runtime.LoxNumbers;
+import com.lox.runtime.LoxString;
 
 /**
  * @author peiyou
@@ -14,10 +16,47 @@ import java.util.Map;
 public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     final Environment globals = new Environment();
-    private Environment environment = globals;
-    private final Map<Expr, Integer> locals = new HashMap<>();
+    // 调用帧：局部变量（见 Resolver）放在这里，当前函数的变量是 stack[fp + slot]，被捕获的变量在槽位里放
+    // Upvalue。sp 以上空闲。所有调用共用这一个数组，调用时不分配内存
+    Object[] stack = new Object[256];
+    int fp = 0;
+    int sp = 0;
+    // 当前函数的闭包捕获的变量
+    Upvalue[] upvalues = Upvalue.NONE;
+    // 分层执行的阈值：函数热度（调用次数 + 回边次数）超过后升级到节点树 / JIT，小于 0 表示不启用
+    int nodeThreshold = -1;
+    int jitThreshold = -1;
+    // 循环回边次数超过后做栈上替换，小于 0 表示不启用
+    int osrThreshold = -1;
+    // 打印每次升级
+    boolean traceTiers = false;
+    // 正在解释执行的函数，循环的回边次数记到它上面
+    private FunctionProfile currentProfile = null;
+
+    // 语句执行完之后的去向。break、continue 和 return 不抛异常，只设置 completion 后正常返回，
+    // 外层的块看到不是 NORMAL 就不再往下执行，交给循环或者函数调用处理
+    static final int NORMAL = 0;
+    static final int BREAK = 1;
+    static final int CONTINUE = 2;
+    static final int RETURN = 3;
+    // return f(...) 的尾调用还没执行，见 tailCall
+    static final int TAIL_CALL = 4;
+    int completion = NORMAL;
+    // completion 为 RETURN 时的返回值
+    Object returnValue = null;
+    // completion 为 TAIL_CALL 时要执行的函数和参数：不超过 4 个参数时放在 tailA0~tailA3，否则放在 tailArguments
+    private TailCallable tailCallee = null;
+    private List<Object> tailArguments = null;
+    private Object tailA0, tailA1, tailA2, tailA3;
+    // evaluateNumber 的结果类型；不是数字时值放在 nonNumber 里，用 takeNonNumber 取走
+    private static final int NOT_NUMBER = 0;
+    private static final int LONG = 1;
+    private static final int DOUBLE = 2;
+    private int numberKind = LONG;
+    private Object nonNumber = null;
 
     public Interpreter() {
+        globals.trackAssumptions();
         globals.define("clock", new LoxCallable() {
             @Override
             public int arity() {
@@ -26,6 +65,11 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
             @Override
             public Object call(Interpreter interpreter, List<Object> arguments) {
+                return call0(interpreter);
+            }
+
+            @Override
+            public Object call0(Interpreter interpreter) {
                 return (double)System.currentTimeMillis() / 1000.0;
             }
 
@@ -36,115 +80,335 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         });
     }
 
-    public void interpret(List<Stmt> statements) {
+    /**
+     * 执行顶层语句，frameSize 是 Resolver 算出的顶层调用帧大小
+     */
+    public void interpret(List<Stmt> statements, int frameSize) {
+        // 上一次输入出错时可能留下没有处理的 completion
+        completion = NORMAL;
+        int previous = pushFrame(frameSize);
         try {
             for (Stmt statement: statements) {
                 execute(statement);
             }
         } catch (RuntimeError error) {
             Lox.runtimeError(error);
+        } finally {
+            popFrame(previous);
+        }
+    }
+
+    /**
+     * 执行 NodeCompiler 编译好的脚本
+     */
+    void interpret(StmtNode.Body program, int frameSize) {
+        completion = NORMAL;
+        int previous = pushFrame(frameSize);
+        try {
+            program.execute();
+        } catch (RuntimeError error) {
+            Lox.runtimeError(error);
+        } finally {
+            popFrame(previous);
+        }
+    }
+
+    /**
+     * 在 sp 处分配 size 个槽位的调用帧，返回调用方的 fp，调用结束时交给 {@link #popFrame}
+     */
+    int pushFrame(int size) {
+        int previous = fp;
+        fp = sp;
+        sp = fp + size;
+        if (sp > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(sp, stack.length * 2));
         }
+        return previous;
     }
+
+    void popFrame(int previous) {
+        // 清空槽位，已经返回的调用不再引用这些对象
+        Arrays.fill(stack, fp, sp, null);
+        sp = fp;
+        fp = previous;
+    }
+
     @Override
     public Object visitBinaryExpr(Expr.Binary expr) {
-        Object left = evaluate(expr.left);
-        Object right = evaluate(expr.right);
+        switch (expr.operator.type) {
+            case MINUS:
+            case PLUS:
+            case SLASH:
+            case STAR: {
+                // 嵌套的算术表达式都在数字通道里算，只在结果离开这里时装箱一次。和 arithmetic 一样，
+                // 只是不多占一层 Java 栈帧
+                long left = evaluateNumber(expr.left);
+                int leftKind = numberKind;
+                if (leftKind == NOT_NUMBER) return binary(expr, takeNonNumber(), evaluate(expr.right));
+                long right = evaluateNumber(expr.right);
+                if (numberKind == NOT_NUMBER) return binary(expr, box(leftKind, left), takeNonNumber());
+                long result = arithmetic(expr.operator, leftKind, left, numberKind, right);
+                return box(numberKind, result);
+            }
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+            case EQUAL_EQUAL:
+            case BANG_EQUAL: {
+                long left = evaluateNumber(expr.left);
+                int leftKind = numberKind;
+                if (leftKind == NOT_NUMBER) return binary(expr, takeNonNumber(), evaluate(expr.right));
+                long right = evaluateNumber(expr.right);
+                if (numberKind == NOT_NUMBER) {
+                    Object value = takeNonNumber();
+                    // 数字和不是数字的值不相等，比较大小还按原来的规则（字符串比较或者报错）
+                    if (expr.operator.type == TokenType.EQUAL_EQUAL) return false;
+                    if (expr.operator.type == TokenType.BANG_EQUAL) return true;
+                    return binary(expr, box(leftKind, left), value);
+                }
+                return compare(expr.operator.type, leftKind, left, numberKind, right);
+            }
+        }
+        return binary(expr, evaluate(expr.left), evaluate(expr.right));
+    }
+
+    /**
+     * 求值一个结果要参与算术或比较的表达式，数字不装箱：numberKind 为 LONG 时返回值就是这个整数，
+     * 为 DOUBLE 时是浮点数的位（{@link Double#doubleToRawLongBits}）。加减乘除、取负和括号在这里递归，
+     * 中间结果都不装箱；结果不是数字时 numberKind 为 NOT_NUMBER，值由调用方用 takeNonNumber 取走，
+     * 按原来的规则处理
+     */
+    private long evaluateNumber(Expr expr) {
+        // 不用局部变量，解释执行时这一层的 Java 栈帧和 evaluate 差不多大，递归深度不受影响
+        switch (expr.kind) {
+            case Expr.GROUPING:
+                return evaluateNumber(((Expr.Grouping) expr).expression);
+            case Expr.BINARY:
+                switch (((Expr.Binary) expr).operator.type) {
+                    case MINUS:
+                    case PLUS:
+                    case SLASH:
+                    case STAR:
+                        return arithmetic((Expr.Binary) expr);
+                }
+                break;
+            case Expr.UNARY:
+                if (((Expr.Unary) expr).operator.type == TokenType.MINUS) return negate((Expr.Unary) expr);
+                break;
+        }
+        return number(expr.accept(this));
+    }
+
+    private long negate(Expr.Unary expr) {
+        long value = evaluateNumber(expr.right);
+        if (numberKind == LONG) {
+            if (!LoxNumbers.negateOverflows(value)) return -value;
+            numberKind = DOUBLE;
+            return Double.doubleToRawLongBits(-(double) value);
+        }
+        if (numberKind == NOT_NUMBER) checkNumberOperand(expr.operator, takeNonNumber());
+        return Double.doubleToRawLongBits(-Double.longBitsToDouble(value));
+    }
+
+    private long number(Object value) {
+        if (value instanceof Long) {
+            numberKind = LONG;
+            return (Long) value;
+        }
+        if (value instanceof Double) {
+            numberKind = DOUBLE;
+            return Double.doubleToRawLongBits((Double) value);
+        }
+        numberKind = NOT_NUMBER;
+        nonNumber = value;
+        return 0;
+    }
+
+    private static Object box(int kind, long value) {
+        if (kind == LONG) return value;
+        return Double.longBitsToDouble(value);
+    }
+
+    private static double toDouble(int kind, long value) {
+        if (kind == LONG) return value;
+        return Double.longBitsToDouble(value);
+    }
+
+    private Object takeNonNumber() {
+        Object value = nonNumber;
+        nonNumber = null;
+        return value;
+    }
+
+    /**
+     * 加减乘除。两边都是数字时直接算；有一边不是数字（字符串拼接或者类型错误）时装箱交给 binary
+     */
+    private long arithmetic(Expr.Binary expr) {
+        long left = evaluateNumber(expr.left);
+        int leftKind = numberKind;
+        if (leftKind == NOT_NUMBER) return number(binary(expr, takeNonNumber(), evaluate(expr.right)));
+        long right = evaluateNumber(expr.right);
+        if (numberKind == NOT_NUMBER) return number(binary(expr, box(leftKind, left), takeNonNumber()));
+        return arithmetic(expr.operator, leftKind, left, numberKind, right);
+    }
+
+    /**
+     * 两个整数的加减乘还是整数，溢出时和其余的情况一样按 double 算出浮点数，numberKind 设成结果的类型
+     */
+    private long arithmetic(Token operator, int leftKind, long left, int rightKind, long right) {
+        if (leftKind == LONG && rightKind == LONG) {
+            switch (operator.type) {
+                case MINUS:
+                    if (LoxNumbers.subtractOverflows(left, right)) break;
+                    return left - right;
+                case PLUS:
+                    if (LoxNumbers.addOverflows(left, right)) break;
+                    return left + right;
+                case STAR:
+                    if (LoxNumbers.multiplyOverflows(left, right)) break;
+                    return left * right;
+            }
+        }
+        double l = toDouble(leftKind, left);
+        double r = toDouble(rightKind, right);
+        numberKind = DOUBLE;
+        switch (operator.type) {
+            case MINUS:
+                return Double.doubleToRawLongBits(l - r);
+            case PLUS:
+                return Double.doubleToRawLongBits(l + r);
+            case STAR:
+                return Double.doubleToRawLongBits(l * r);
+            default:
+                if (r == 0) {
+                    throw new RuntimeError(operator, "被除数不能为0.");
+                }
+                return Double.doubleToRawLongBits(l / r);
+        }
+    }
+
+    /**
+     * 两个数字的比较，和 {@link LoxNumbers} 一样：有浮点数时按 double 比较，== 和 Double.equals 一样
+     * NaN 等于 NaN，0.0 和 -0.0 不相等
+     */
+    private static boolean compare(TokenType operator, int leftKind, long left, int rightKind, long right) {
+        if (leftKind == LONG && rightKind == LONG) {
+            switch (operator) {
+                case GREATER:
+                    return left > right;
+                case GREATER_EQUAL:
+                    return left >= right;
+                case LESS:
+                    return left < right;
+                case LESS_EQUAL:
+                    return left <= right;
+                case EQUAL_EQUAL:
+                    return left == right;
+                default:
+                    return left != right;
+            }
+        }
+        double l = toDouble(leftKind, left);
+        double r = toDouble(rightKind, right);
+        switch (operator) {
+            case GREATER:
+                return l > r;
+            case GREATER_EQUAL:
+                return l >= r;
+            case LESS:
+                return l < r;
+            case LESS_EQUAL:
+                return l <= r;
+            case EQUAL_EQUAL:
+                return Double.compare(l, r) == 0;
+            default:
+                return Double.compare(l, r) != 0;
+        }
+    }
+
+    /**
+     * 操作数已经求值的二元运算，数字通道遇到不是数字的操作数时也走这里
+     */
+    private Object binary(Expr.Binary expr, Object left, Object right) {
         switch (expr.operator.type) {
             case GREATER:
-                if (left instanceof String || right instanceof String) {
+                if (LoxString.isString(left) || LoxString.isString(right)) {
                     return left.toString().compareTo(right.toString()) > 0;
                 }
                 checkNumberOperands(expr.operator, left, right);
-                return (double) left > (double) right;
+                return LoxNumbers.greater(left, right);
             case GREATER_EQUAL:
-                if (left instanceof String || right instanceof String) {
+                if (LoxString.isString(left) || LoxString.isString(right)) {
                     return left.toString().compareTo(right.toString()) >= 0;
                 }
                 checkNumberOperands(expr.operator, left, right);
-                return (double) left >= (double) right;
+                return LoxNumbers.greaterEqual(left, right);
             case LESS:
-                if (left instanceof String || right instanceof String) {
+                if (LoxString.isString(left) || LoxString.isString(right)) {
                     return left.toString().compareTo(right.toString()) < 0;
                 }
                 checkNumberOperands(expr.operator, left, right);
-                return (double) left < (double) right;
+                return LoxNumbers.less(left, right);
             case LESS_EQUAL:
-                if (left instanceof String || right instanceof String) {
+                if (LoxString.isString(left) || LoxString.isString(right)) {
                     return left.toString().compareTo(right.toString()) <= 0;
                 }
                 checkNumberOperands(expr.operator, left, right);
-                return (double) left <= (double) right;
-            case BANG_EQUAL: return !isEqual(left, right);
-            case EQUAL_EQUAL: return isEqual(left, right);
+                return LoxNumbers.lessEqual(left, right);
+            case BANG_EQUAL: return !LoxNumbers.isEqual(left, right);
+            case EQUAL_EQUAL: return LoxNumbers.isEqual(left, right);
 
             case MINUS:
                 checkNumberOperands(expr.operator, left, right);
-                return (double) left - (double) right;
-            case PLUS:
-                if (left instanceof Double && right instanceof Double) {
-                    checkNumberOperands(expr.operator, left, right);
-                    return (double) left + (double) right;
-                }
-                if (left instanceof String && right instanceof String) {
-                    return (String) left + (String) right;
-                }
-                if (left instanceof String) {
-                    return (String) left + right;
-                }
-                if (right instanceof String) {
-                    return left + (String) right;
-                }
+                return LoxNumbers.subtract(left, right);
+            case PLUS: {
+                Object sum = LoxNumbers.add(left, right);
+                if (sum != null) return sum;
+                Object text = LoxString.concat(left, right);
+                if (text != null) return text;
                 throw new RuntimeError(expr.operator, "操作数两边必须是数字或字符串.");
+            }
             case SLASH:
                 checkNumberOperands(expr.operator, left, right);
-                if ((double)right == 0) {
+                if (LoxNumbers.isZero(right)) {
                     throw new RuntimeError(expr.operator, "被除数不能为0.");
                 }
-                return (double) left / (double) right;
+                return LoxNumbers.divide(left, right);
             case STAR:
                 checkNumberOperands(expr.operator, left, right);
-                return (double) left * (double) right;
+                return LoxNumbers.multiply(left, right);
 
             case COMMA:
                 return right;
             case LOGIC_AND:
-                isInteger(expr.operator, left, right);
-                return ((Double) left).longValue() & ((Double) right).longValue();
+                return checkInteger(expr.operator, LoxNumbers.bitAnd(left, right));
             case LOGIC_OR:
-                isInteger(expr.operator, left, right);
-                return ((Double) left).longValue() | ((Double) right).longValue();
+                return checkInteger(expr.operator, LoxNumbers.bitOr(left, right));
         }
         return null;
     }
 
-    private void isInteger(Token operator, Object left, Object right) {
-        if (left instanceof Double && right instanceof Double) {
-            double dL = (double) left;
-            double dR = (double) right;
-            if (dL == (long) dL && dR == (long)dR) {
-                return;
-            }
-        }
+    /**
+     * &amp; 和 | 的结果，为 null 时说明操作数不都是整数
+     */
+    private static Object checkInteger(Token operator, Object result) {
+        if (result != null) return result;
         throw new RuntimeError(operator, "Operand must be a integer.");
     }
+
     private void checkNumberOperand(Token operator, Object operand) {
-        if (operand instanceof Double) return;
+        if (LoxNumbers.isNumber(operand)) return;
         throw new RuntimeError(operator, "Operand must be a number.");
     }
 
     private void checkNumberOperands(Token operator,
                                      Object left, Object right) {
-        if (left instanceof Double && right instanceof Double) return;
+        if (LoxNumbers.isNumber(left) && LoxNumbers.isNumber(right)) return;
 
         throw new RuntimeError(operator, "Operands must be numbers.");
     }
 
-    private boolean isEqual(Object left, Object right) {
-        if (left == null && right == null) return true;
-        if (left == null) return false;
-        return left.equals(right);
-    }
-
     protected String stringify(Object object) {
         if (object == null) return "nil";
 
@@ -194,10 +458,9 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitSuperExpr(Expr.Super expr) {
-        int distance = locals.get(expr);
-        LoxClass superclass = (LoxClass) environment.getAt(distance, "super");
-        LoxInstance object = (LoxInstance) environment.getAt(distance - 1, "this");
-        LoxFunction method = superclass.findMethod(expr.method.lexeme);
+        LoxClass superclass = (LoxClass) upvalues[expr.slot].value;
+        LoxInstance object = (LoxInstance) local(expr.thisBinding, expr.thisSlot);
+        LoxFunction method = superclass.findMethod(expr.method.symbol);
         if (method == null) {
             throw new RuntimeError(expr.method,
                     "Undefined property '" + expr.method.lexeme + "'.");
@@ -207,18 +470,18 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitThisExpr(Expr.This expr) {
-        return lookUpVariable(expr.keyword, expr);
+        if (expr.binding == Resolver.GLOBAL) return globals.get(expr.keyword);
+        return local(expr.binding, expr.slot);
     }
 
     @Override
     public Object visitUnaryExpr(Expr.Unary expr) {
-        Object right = evaluate(expr.right);
-        switch (expr.operator.type) {
-            case BANG:
-                return !isTruthy(right);
-            case MINUS:
-                checkNumberOperand(expr.operator, right);
-                return -(double) right;
+        if (expr.operator.type == TokenType.MINUS) {
+            long value = negate(expr);
+            return box(numberKind, value);
+        }
+        if (expr.operator.type == TokenType.BANG) {
+            return !isTruthy(evaluate(expr.right));
         }
         return null;
     }
@@ -242,30 +505,75 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Object visitAssignExpr(Expr.Assign expr) {
         Object value = evaluate(expr.value);
-        Integer distance = locals.get(expr);
-        if (distance != null) {
-            environment.assignAt(distance, expr.name, value);
+        if (expr.binding == Resolver.GLOBAL) {
+            Global global = expr.global;
+            if (global == null) expr.global = global = globals.global(expr.name);
+            global.assign(expr.name, value);
         } else {
-            globals.assign(expr.name, value);
+            store(expr.binding, expr.slot, value);
         }
         return value;
     }
 
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
-        return lookUpVariable(expr.name, expr);
+        return lookUpVariable(expr);
     }
 
+    private Object lookUpVariable(Expr.Variable expr) {
+        if (expr.binding == Resolver.FRAME) return stack[fp + expr.slot];
+        if (expr.binding == Resolver.GLOBAL) return globalOf(expr).get(expr.name);
+        return local(expr.binding, expr.slot);
+    }
 
-    private Object lookUpVariable(Token name, Expr expr) {
-        Integer distance = locals.get(expr);
-        if (distance != null) {
-            return environment.getAt(distance, name.lexeme);
-        } else {
-            return globals.get(name);
+    /**
+     * 按 Resolver 给出的绑定读局部变量：当前帧的槽位、槽位里的 Upvalue，或者闭包捕获的 Upvalue
+     */
+    private Object local(int binding, int slot) {
+        switch (binding) {
+            case Resolver.FRAME: return stack[fp + slot];
+            case Resolver.CELL: return ((Upvalue) stack[fp + slot]).value;
+            default: return upvalues[slot].value;
         }
     }
 
+    private void store(int binding, int slot, Object value) {
+        switch (binding) {
+            case Resolver.FRAME:
+                stack[fp + slot] = value;
+                break;
+            case Resolver.CELL:
+                ((Upvalue) stack[fp + slot]).value = value;
+                break;
+            default:
+                upvalues[slot].value = value;
+        }
+    }
+
+    /**
+     * 创建闭包时按 Resolver 算好的顺序取出它捕获的变量：不小于 0 的是当前帧槽位里的 Upvalue，
+     * 其余的是当前函数自己捕获的
+     */
+    Upvalue[] capture(int[] captures) {
+        if (captures.length == 0) return Upvalue.NONE;
+        Upvalue[] result = new Upvalue[captures.length];
+        for (int i = 0; i < captures.length; i++) {
+            int capture = captures[i];
+            result[i] = capture >= 0 ? (Upvalue) stack[fp + capture] : upvalues[-1 - capture];
+        }
+        return result;
+    }
+
+    /**
+     * 全局变量的单元，第一次用到时查一次名字记在节点上，之后直接读写单元。
+     * 名字还没定义时记下的是未定义的单元，之后定义时填的是同一个单元
+     */
+    private Global globalOf(Expr.Variable expr) {
+        Global global = expr.global;
+        if (global == null) expr.global = global = globals.global(expr.name);
+        return global;
+    }
+
     @Override
     public Object visitCallExpr(Expr.Call expr) {
         Object callee = evaluate(expr.callee);
@@ -273,36 +581,134 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             if (expr.callee instanceof Expr.Get) {
                 Expr.Get get = (Expr.Get) expr.callee;
                 Expr.Variable variable = (Expr.Variable) get.object;
-                Object obj = lookUpVariable(variable.name, variable);
+                Object obj = lookUpVariable(variable);
                 if (obj instanceof LoxClass) {
                     LoxClass klass = (LoxClass) obj;
-                    LoxFunction staticMethod = klass.findStaticMethod(get.name.lexeme);
+                    LoxFunction staticMethod = klass.findStaticMethod(get.name.symbol);
                     if (staticMethod == null) {
                         throw new RuntimeError(expr.paren, "" + get.name.lexeme + "不是静态方法。");
                     }
-                    List<Object> arguments = new ArrayList<>();
-                    for (Expr argument: expr.arguments) {
-                        arguments.add(evaluate(argument));
-                    }
-                    if (arguments.size() != staticMethod.arity()) {
-                        throw new RuntimeError(expr.paren, "期待 " + staticMethod.arity() + " 个参数，但只传入了 " + arguments.size() + " 个。");
-                    }
-                    return staticMethod.call(this, arguments);
+                    callee = staticMethod;
                 }
             }
         }
+        // 常见的参数个数不分配参数列表，实参先于检查被调对象求值。这里直接走 callN 而不经过 call，
+        // 每层 Lox 调用少占一个 Java 栈帧
+        List<Expr> args = expr.arguments;
+        int argc = args.size();
+        if (argc <= 4) {
+            Object a0 = argc > 0 ? evaluate(args.get(0)) : null;
+            Object a1 = argc > 1 ? evaluate(args.get(1)) : null;
+            Object a2 = argc > 2 ? evaluate(args.get(2)) : null;
+            Object a3 = argc > 3 ? evaluate(args.get(3)) : null;
+            LoxCallable function = callable(callee, argc, expr.paren);
+            if (expr.tail && function instanceof TailCallable) {
+                return tailCall((TailCallable) function, a0, a1, a2, a3);
+            }
+            switch (argc) {
+                case 0:
+                    return function.call0(this);
+                case 1:
+                    return function.call1(this, a0);
+                case 2:
+                    return function.call2(this, a0, a1);
+                case 3:
+                    return function.call3(this, a0, a1, a2);
+                default:
+                    return function.call4(this, a0, a1, a2, a3);
+            }
+        }
         List<Object> arguments = new ArrayList<>();
         for (Expr argument: expr.arguments) {
             arguments.add(evaluate(argument));
         }
+        LoxCallable function = callable(callee, argc, expr.paren);
+        if (expr.tail) return tailCall(function, arguments);
+        return function.call(this, arguments);
+    }
+
+    /**
+     * 不超过 4 个参数的调用，argc 之后的参数位置是 null。检查参数个数后走 callN；tail 为 true 时是
+     * return f(...) 里的调用，见 {@link #tailCall}。节点树和 JIT 代码走这里
+     */
+    Object call(Object callee, int argc, Object a0, Object a1, Object a2, Object a3, Token paren, boolean tail) {
+        LoxCallable function = callable(callee, argc, paren);
+        if (tail && function instanceof TailCallable) {
+            return tailCall((TailCallable) function, a0, a1, a2, a3);
+        }
+        switch (argc) {
+            case 0:
+                return function.call0(this);
+            case 1:
+                return function.call1(this, a0);
+            case 2:
+                return function.call2(this, a0, a1);
+            case 3:
+                return function.call3(this, a0, a1, a2);
+            default:
+                return function.call4(this, a0, a1, a2, a3);
+        }
+    }
+
+    /**
+     * 检查 callee 能不能用 argc 个参数调用
+     */
+    private static LoxCallable callable(Object callee, int argc, Token paren) {
         if (!(callee instanceof LoxCallable)) {
-            throw new RuntimeError(expr.paren, "方法和类才支持调用.");
+            throw new RuntimeError(paren, "方法和类才支持调用.");
         }
         LoxCallable function = (LoxCallable) callee;
-        if (arguments.size() != function.arity()) {
-            throw new RuntimeError(expr.paren, "期待 " + function.arity() + " 个参数，但只传入了 " + arguments.size() + " 个。");
+        if (argc != function.arity()) {
+            throw new RuntimeError(paren, "期待 " + function.arity() + " 个参数，但只传入了 " + argc + " 个。");
         }
-        return function.call(this, arguments);
+        return function;
+    }
+
+    /**
+     * 尾位置上的调用。被调的是 Lox 函数时这里不调用，只记下函数和参数，completion 设成 TAIL_CALL
+     * 一路返回到函数调用处：当前函数的调用帧退掉以后由 {@link #runTailCalls} 接着执行，
+     * 所以尾递归（包括互相递归）多少层都不会加深 Java 栈和调用帧栈
+     */
+    Object tailCall(LoxCallable function, List<Object> arguments) {
+        if (!(function instanceof TailCallable)) return function.call(this, arguments);
+        tailCallee = (TailCallable) function;
+        tailArguments = arguments;
+        completion = TAIL_CALL;
+        return null;
+    }
+
+    /**
+     * 不超过 4 个参数的尾调用，参数记在字段里，不分配列表
+     */
+    private Object tailCall(TailCallable function, Object a0, Object a1, Object a2, Object a3) {
+        tailCallee = function;
+        tailA0 = a0;
+        tailA1 = a1;
+        tailA2 = a2;
+        tailA3 = a3;
+        completion = TAIL_CALL;
+        return null;
+    }
+
+    /**
+     * 函数调用处的蹦床：result 是刚执行完的函数体的结果，有尾调用时依次执行，返回最后一个函数的结果
+     */
+    Object runTailCalls(Object result) {
+        while (completion == TAIL_CALL) {
+            TailCallable callee = tailCallee;
+            tailCallee = null;
+            completion = NORMAL;
+            if (tailArguments != null) {
+                List<Object> arguments = tailArguments;
+                tailArguments = null;
+                result = callee.invoke(this, arguments);
+            } else {
+                Object a0 = tailA0, a1 = tailA1, a2 = tailA2, a3 = tailA3;
+                tailA0 = tailA1 = tailA2 = tailA3 = null;
+                result = callee.invoke(this, a0, a1, a2, a3);
+            }
+        }
+        return result;
     }
 
 
@@ -312,7 +718,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         if (object instanceof LoxInstance) {
             Object value = ((LoxInstance) object).get(expr.name);
             if (value instanceof LoxGetterFunction) {
-                return ((LoxGetterFunction) value).call(this, new ArrayList<>());
+                return ((LoxGetterFunction) value).call0(this);
             }
             return value;
         }
@@ -322,20 +728,16 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Object visitSelfIncOrDecrExpr(Expr.SelfIncOrDecr expr) {
         if (expr.variable instanceof Expr.Variable) {
-            Object o = lookUpVariable(expr.name, expr.variable);
-            if (o == null) throw new RuntimeError(expr.name, "变量'"+expr.name.lexeme+"'未初始化.");
-            if (o instanceof Double) {
-                double d = ((double) o);
-                if (expr.name.type == TokenType.PLUS_PLUS) {
-                    d = d + 1.0d;
-                } else {
-                    d = d - 1.0d;
-                }
-                Integer distance = locals.get(expr);
-                if (distance != null) {
-                    environment.assignAt(distance, expr.name, d);
+            Expr.Variable variable = (Expr.Variable) expr.variable;
+            Token name = variable.name;
+            Object o = lookUpVariable(variable);
+            if (o == null) throw new RuntimeError(expr.name, "变量'"+name.lexeme+"'未初始化.");
+            Object d = LoxNumbers.increment(o, expr.name.type == TokenType.PLUS_PLUS ? 1 : -1);
+            if (d != null) {
+                if (variable.binding == Resolver.GLOBAL) {
+                    globalOf(variable).assign(name, d);
                 } else {
-                    globals.assign(expr.name, d);
+                    store(variable.binding, variable.slot, d);
                 }
                 return o;
             } else {
@@ -347,7 +749,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitLambdaExpr(Expr.Lambda expr) {
-        return new LoxLambda(expr, environment);
+        return new LoxLambda(expr, capture(expr.upvalues), profileOf(expr));
     }
 
     protected Object evaluate(Expr expr) {
@@ -373,17 +775,28 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitVarStmt(Stmt.Var stmt) {
+        if (stmt.captured) {
+            // 先放好 Upvalue，初始化表达式里的 lambda 可以捕获这个变量自己
+            Upvalue cell = new Upvalue(null);
+            stack[fp + stmt.slot] = cell;
+            if (stmt.initializer != null) cell.value = evaluate(stmt.initializer);
+            return null;
+        }
         Object value = null;
         if (stmt.initializer != null) {
             value = evaluate(stmt.initializer);
         }
-        environment.define(stmt.name.lexeme, value);
+        if (stmt.slot >= 0) {
+            stack[fp + stmt.slot] = value;
+        } else {
+            globals.define(stmt.name, value);
+        }
         return null;
     }
 
     @Override
     public Void visitBlockStmt(Stmt.Block stmt) {
-        executeBlock(stmt.statements, new Environment(environment));
+        executeBlock(stmt.statements);
         return null;
     }
 
@@ -397,34 +810,46 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 throw new RuntimeError(stmt.superclass.name, "Superclass must be a class.");
             }
         }
-        environment.define(stmt.name.lexeme, null);
+        // 类名要在创建方法之前声明好，方法里可以捕获它
+        Upvalue cell = null;
+        if (stmt.captured) {
+            cell = new Upvalue(null);
+            stack[fp + stmt.slot] = cell;
+        } else if (stmt.slot < 0) {
+            globals.define(stmt.name, null);
+        }
 
         if (stmt.superclass != null) {
-            environment = new Environment(environment);
-            environment.define("super", superclass);
+            stack[fp + stmt.superSlot] = new Upvalue(superclass);
         }
-        Map<String, LoxFunction> methods = new HashMap<>();
+        SymbolMap<LoxFunction> methods = new SymbolMap<>();
         for (Stmt.Function method: stmt.methods) {
-            LoxFunction function = new LoxFunction(method, environment, method.name.lexeme.equals("init"));
-            methods.put(method.name.lexeme, function);
+            boolean isInitializer = method.name.lexeme.equals("init");
+            LoxFunction function = new LoxFunction(method, capture(method.upvalues), null, isInitializer,
+                    profileOf(method, isInitializer));
+            methods.put(method.name.symbol, function);
         }
 
-        Map<String, LoxFunction> staticMethods = new HashMap<>();
+        SymbolMap<LoxFunction> staticMethods = new SymbolMap<>();
         for (Stmt.Function method: stmt.staticMethods) {
-            LoxFunction function = new LoxFunction(method, environment, false);
-            staticMethods.put(method.name.lexeme, function);
+            LoxFunction function = new LoxFunction(method, capture(method.upvalues), null, false, profileOf(method, false));
+            staticMethods.put(method.name.symbol, function);
         }
 
-        Map<String, LoxFunction> getter = new HashMap<>();
+        SymbolMap<LoxFunction> getter = new SymbolMap<>();
         for (Stmt.Function method: stmt.getter) {
-            LoxFunction function = new LoxGetterFunction(method, environment, false);
-            getter.put(method.name.lexeme, function);
+            LoxFunction function = new LoxGetterFunction(method, capture(method.upvalues), null, false,
+                    profileOf(method, false));
+            getter.put(method.name.symbol, function);
         }
         LoxClass klass = new LoxClass(stmt.name.lexeme, methods, staticMethods, getter, (LoxClass) superclass);
-        if (superclass != null) {
-            environment = environment.enclosing;
+        if (cell != null) {
+            cell.value = klass;
+        } else if (stmt.slot >= 0) {
+            stack[fp + stmt.slot] = klass;
+        } else {
+            globals.assign(stmt.name, klass);
         }
-        environment.assign(stmt.name, klass);
         return null;
     }
 
@@ -440,34 +865,108 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitWhileStmt(Stmt.While stmt) {
-        while(isTruthy(evaluate(stmt.condition))) {
-            try {
+        LoopProfile loop = osrThreshold < 0 ? null : loopProfileOf(stmt);
+        if (loop != null && loop.ready(true)) {
+            loop.run(this);
+            return null;
+        }
+        int backEdges = 0;
+        try {
+            while(isTruthy(evaluate(stmt.condition))) {
+                backEdges++;
                 execute(stmt.body);
-            } catch (ReturnStmt r) {
-                throw r;
-            } catch (RuntimeError e) {
-                if (e.token.type == TokenType.BREAK) {
+                if (exitLoop()) break;
+                // 回边：循环够热时从循环头切换到编译好的版本，变量都还在当前调用帧里
+                if (loop != null && loop.backEdge(this, true, currentProfile)) {
+                    loop.run(this);
                     break;
                 }
             }
+        } finally {
+            if (currentProfile != null) currentProfile.addBackEdges(backEdges);
         }
         return null;
     }
 
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        if (stmt.initializer != null) execute(stmt.initializer);
+        runFor(stmt, false);
+        return null;
+    }
+
+    /**
+     * 去优化时从 for 循环中间接着执行：increment 为 true 表示这一轮的循环体已经执行完，先执行增量表达式
+     */
+    void resumeFor(Stmt.For stmt, boolean increment, FunctionProfile profile) {
+        FunctionProfile previous = currentProfile;
+        if (profile != null) currentProfile = profile;
+        try {
+            runFor(stmt, increment);
+        } finally {
+            currentProfile = previous;
+        }
+    }
+
+    /**
+     * for 循环除初始化语句以外的部分。continue 之后照样执行增量表达式
+     */
+    private void runFor(Stmt.For stmt, boolean increment) {
+        if (increment) nextIteration(stmt);
+        LoopProfile loop = osrThreshold < 0 ? null : loopProfileOf(stmt);
+        if (loop != null && loop.ready(true)) {
+            loop.run(this);
+            return;
+        }
+        int backEdges = 0;
+        try {
+            while (isTruthy(evaluate(stmt.condition))) {
+                backEdges++;
+                execute(stmt.body);
+                if (exitLoop()) break;
+                nextIteration(stmt);
+                if (loop != null && loop.backEdge(this, true, currentProfile)) {
+                    loop.run(this);
+                    break;
+                }
+            }
+        } finally {
+            if (currentProfile != null) currentProfile.addBackEdges(backEdges);
+        }
+    }
+
+    private void nextIteration(Stmt.For stmt) {
+        if (stmt.increment != null) evaluate(stmt.increment);
+    }
+
     @Override
     public Void visitBreakStmt(Stmt.Break stmt) {
-        throw new RuntimeError(stmt.token, "break 只能放在循环语法内。");
+        // Parser 目前把 continue 也解析成 Break，按 token 区分
+        completion = stmt.token.type == TokenType.CONTINUE ? CONTINUE : BREAK;
+        return null;
     }
 
     @Override
     public Void visitContinueStmt(Stmt.Continue stmt) {
-        throw new RuntimeError(stmt.token, "continue 只能放在循环语法内。");
+        completion = CONTINUE;
+        return null;
     }
 
     @Override
     public Void visitFunctionStmt(Stmt.Function stmt) {
-        LoxFunction function = new LoxFunction(stmt, environment, false);
-        environment.define(stmt.name.lexeme, function);
+        if (stmt.captured) {
+            // 先放好 Upvalue，递归调用自己的函数捕获的是它
+            Upvalue cell = new Upvalue(null);
+            stack[fp + stmt.slot] = cell;
+            cell.value = new LoxFunction(stmt, capture(stmt.upvalues), null, false, profileOf(stmt, false));
+            return null;
+        }
+        LoxFunction function = new LoxFunction(stmt, capture(stmt.upvalues), null, false, profileOf(stmt, false));
+        if (stmt.slot >= 0) {
+            stack[fp + stmt.slot] = function;
+        } else {
+            globals.define(stmt.name, function);
+        }
         return null;
     }
 
@@ -476,23 +975,88 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         Object value = null;
         if (stmt.value != null) {
             value = evaluate(stmt.value);
+            // 尾调用已经记在 completion 上
+            if (completion == TAIL_CALL) return null;
+        }
+        returnValue = value;
+        completion = RETURN;
+        return null;
+    }
+
+    public void executeBlock(List<Stmt> statements) {
+        for (int i = 0, n = statements.size(); i < n; i++) {
+            execute(statements.get(i));
+            if (completion != NORMAL) return;
         }
-        throw new ReturnStmt(stmt.token, value);
     }
 
-    public void executeBlock(List<Stmt> statements, Environment environment) {
-        Environment previous = this.environment;
+    /**
+     * 循环体执行完一次后调用：break 和 return 要离开循环，continue 和正常执行完接着下一轮。
+     * break 和 continue 到这个循环为止，return（包括尾调用）留给函数调用处理
+     */
+    boolean exitLoop() {
+        int signal = completion;
+        if (signal == NORMAL) return false;
+        if (signal == RETURN || signal == TAIL_CALL) return true;
+        completion = NORMAL;
+        return signal == BREAK;
+    }
+
+    /**
+     * 函数体执行完后调用。Resolver 不允许循环外的 break 和 continue，这里再兜底清掉，
+     * 不让它们越过函数边界结束调用方的循环；RETURN 和 TAIL_CALL 留给调用方处理
+     */
+    void endFunction() {
+        if (completion != RETURN && completion != TAIL_CALL) completion = NORMAL;
+    }
+
+    /**
+     * 函数体执行完、completion 为 RETURN 时取走返回值，completion 恢复成 NORMAL
+     */
+    Object takeReturnValue() {
+        Object value = returnValue;
+        returnValue = null;
+        completion = NORMAL;
+        return value;
+    }
+
+    /**
+     * 解释执行函数体，期间循环的回边次数记到 profile 上
+     */
+    void executeFunction(List<Stmt> body, FunctionProfile profile) {
+        FunctionProfile previous = currentProfile;
+        currentProfile = profile;
         try {
-            this.environment = environment;
-            for (Stmt statement: statements) {
-                execute(statement);
-            }
+            executeBlock(body);
         } finally {
-            this.environment = previous;
+            currentProfile = previous;
         }
     }
 
-    public void resolve(Expr expr, int depth) {
-        locals.put(expr, depth);
+    /**
+     * 同一声明共享的调用计数和编译结果，第一次用到时创建，记在语法树节点上
+     */
+    FunctionProfile profileOf(Stmt.Function declaration, boolean isInitializer) {
+        FunctionProfile profile = declaration.profile;
+        if (profile == null) declaration.profile = profile = FunctionProfile.of(declaration, isInitializer);
+        return profile;
+    }
+
+    FunctionProfile profileOf(Expr.Lambda lambda) {
+        FunctionProfile profile = lambda.profile;
+        if (profile == null) lambda.profile = profile = FunctionProfile.of(lambda);
+        return profile;
+    }
+
+    LoopProfile loopProfileOf(Stmt.While loop) {
+        LoopProfile profile = loop.profile;
+        if (profile == null) loop.profile = profile = new LoopProfile(loop);
+        return profile;
+    }
+
+    LoopProfile loopProfileOf(Stmt.For loop) {
+        LoopProfile profile = loop.profile;
+        if (profile == null) loop.profile = profile = new LoopProfile(loop);
+        return profile;
     }
 }
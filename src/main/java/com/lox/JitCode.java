@@ -0,0 +1,36 @@
+package com.lox;
+
+import java.util.List;
+
+/**
+ * JIT 生成的类的父类。生成的类由单独的类加载器定义，只能访问 public 成员，
+ * 所以这里和 {@link JitRuntime} 都是 public 的。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className JitCode
+ * @date 2026/10/18 16:35
+ **/
+public abstract class JitCode {
+    // Token、数字、字符串这些编译期常量，生成的代码按下标取
+    protected final Object[] constants;
+
+    protected JitCode(Object[] constants) {
+        this.constants = constants;
+    }
+
+    /**
+     * 执行函数体，upvalues 是闭包捕获的变量，receiver 是 bind 出来的方法的 this（其余为 null）。
+     * OSR 编译的循环传入的是解释器当前函数的 upvalues
+     */
+    public abstract Object invoke(Interpreter interpreter, Upvalue[] upvalues, Object receiver, List<Object> arguments);
+
+    /**
+     * 参数不超过 4 个的函数的入口，多出来的参数位置传 null。这样的函数体编译在这个方法里，
+     * 上面的 invoke 只是把列表拆开转过来；参数更多的函数和 OSR 循环不会走到这里
+     */
+    public Object invoke(Interpreter interpreter, Upvalue[] upvalues, Object receiver,
+                         Object a0, Object a1, Object a2, Object a3) {
+        throw new IllegalStateException("没有按参数个数编译的入口");
+    }
+}
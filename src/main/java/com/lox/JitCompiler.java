@@ -0,0 +1,1324 @@
+package com.lox;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.lox.jit.ClassFile;
+import com.lox.jit.Code;
+import com.lox.jit.JitBailout;
+import com.lox.jit.JitClassLoader;
+
+/**
+ * 把热点函数的函数体编译成 JVM 类，交给 HotSpot 继续优化。
+ * <p>
+ * 只编译"叶子"函数：函数体里没有嵌套的函数、lambda 和类。这样函数自己的参数和块内变量
+ * 不会被别的闭包捕获，Resolver 把它们都放在调用帧里，这里按帧内槽位一一对应到 JVM 局部变量，
+ * 方法的 this 也是其中之一；外层函数的变量和 super 按 Resolver 给出的下标从闭包的 {@link Upvalue} 数组里取。
+ * 运算、调用、属性访问都调用 {@link JitRuntime}，语义和报错与解释器一致。
+ * 遇到不支持的写法抛 {@link JitBailout}，函数继续解释执行。
+ * <p>
+ * 推测优化：语句开头检查参与算术和比较的局部变量是不是推测的数字类型（按 {@link TypeFeedback}，
+ * 默认是整数），检查通过后这条语句里的这些运算直接用 long 或 double 计算，不再做类型检查；
+ * 检查失败时在这条语句处去优化（见 {@link DeoptPoint}），记下变量实际的类型，重新编译时按新的类型推测。
+ * 没被重新赋值过的全局变量直接编译成常量，用 {@link Assumption} 保护，失效时走慢路径并丢掉这份代码。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className JitCompiler
+ * @date 2026/10/18 16:50
+ **/
+final class JitCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private static final String RUNTIME = "com/lox/JitRuntime";
+    private static final String JIT_CODE = "com/lox/JitCode";
+    private static final String UPVALUE = "com/lox/Upvalue";
+    private static final String TOKEN = "com/lox/Token";
+    private static final String ASSUMPTION = "com/lox/Assumption";
+    private static final String GLOBAL = "com/lox/Global";
+    private static final String DOUBLE = "java/lang/Double";
+    private static final String LONG = "java/lang/Long";
+    private static final String NUMBER = "java/lang/Number";
+    private static final String LOX_NUMBERS = "com/lox/runtime/LoxNumbers";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String O = "Ljava/lang/Object;";
+    private static final String T = "Lcom/lox/Token;";
+    private static final String I = "Lcom/lox/Interpreter;";
+    private static final String U = "Lcom/lox/Upvalue;";
+    private static final String J = "Lcom/lox/JitCode;";
+    private static final String G = "Lcom/lox/Global;";
+    private static final String INVOKE_DESCRIPTOR = "(" + I + "[" + U + O + "Ljava/util/List;)" + O;
+    // 参数不超过 4 个的函数的入口，见 JitCode
+    private static final String FIXED_INVOKE_DESCRIPTOR = "(" + I + "[" + U + O + O + O + O + O + ")" + O;
+    private static final int MAX_FIXED_ARGUMENTS = 4;
+
+    // invoke 方法的参数槽
+    private static final int THIS_SLOT = 0;
+    private static final int INTERPRETER_SLOT = 1;
+    private static final int UPVALUES_SLOT = 2;
+    private static final int RECEIVER_SLOT = 3;
+    // 按参数个数编译的 invoke 里 4~7 依次是参数
+    private static final int ARGUMENTS_SLOT = 4;
+
+    private final Interpreter interpreter;
+    private final String name;
+    private final List<Token> params;
+    private final List<Stmt> statements;
+    private final boolean isInitializer;
+    // 为 true 时编译的是 OSR 用的单个循环：没有参数作用域，return 用异常交给外层函数
+    private final boolean loopOnly;
+    // 推测失败时通知它丢掉这份代码
+    private final Deoptimizable owner;
+    // 编译的函数；OSR 编译的循环为 null
+    private final FunctionProfile function;
+    // 局部变量推测为哪种数字
+    private final TypeFeedback types;
+
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndex = new IdentityHashMap<>();
+    // 正在编译的块，从外到内，每层记着其中已经声明的变量：调用帧槽位 -> JVM 局部变量槽
+    private final List<Map<Integer, Integer>> scopes = new ArrayList<>();
+    private final Deque<Loop> loops = new ArrayDeque<>();
+    // 正在编译的语句位置，从外到内，去优化时据此在解释器里接着执行
+    private final List<Position> positions = new ArrayList<>();
+    // 当前语句里推测为数字的局部变量读取 -> ExprNode.LONG 或 ExprNode.DOUBLE
+    private final Map<Expr, Integer> numeric = new IdentityHashMap<>();
+
+    // 整数运算溢出时跳到的位置，下标是当时栈上还没用掉的操作数个数，见 compileChecked
+    private List<Code.Label> overflows;
+    private int pending;
+    // 溢出后按装箱的对象重算表达式时为 true，这时不再按推测的数字编译
+    private boolean boxed;
+    // 溢出检查时暂存两个 long 操作数的 JVM 局部变量（各占两个槽位），-1 表示还没分配
+    private int scratch = -1;
+
+    private ClassFile classFile;
+    private Code code;
+
+    private static final class Loop {
+        final Code.Label start = new Code.Label();
+        final Code.Label end = new Code.Label();
+        // continue 跳到这里：while 是循环头，for 是增量表达式
+        final Code.Label next;
+
+        Loop(boolean hasIncrement) {
+            this.next = hasIncrement ? new Code.Label() : start;
+        }
+    }
+
+    /**
+     * 一个语句序列（index 是正在编译的语句）或者一个循环（loop 不为 null）
+     */
+    private static final class Position {
+        final List<Stmt> statements;
+        final Stmt loop;
+        int index = 0;
+        // for 循环已经进入循环体：从这里去优化时，解释器要先执行增量表达式再回到循环头
+        boolean increment = false;
+
+        Position(List<Stmt> statements, Stmt loop) {
+            this.statements = statements;
+            this.loop = loop;
+        }
+    }
+
+    JitCompiler(Interpreter interpreter, FunctionProfile profile) {
+        this.interpreter = interpreter;
+        this.name = profile.name;
+        this.params = profile.params;
+        this.statements = profile.statements;
+        this.isInitializer = profile.isInitializer;
+        this.loopOnly = false;
+        this.owner = profile;
+        this.function = profile;
+        this.types = profile.types;
+    }
+
+    /**
+     * 编译 OSR 用的循环，生成的代码在循环所在的调用帧里从循环头开始执行
+     */
+    JitCompiler(Interpreter interpreter, LoopProfile loop) {
+        this.interpreter = interpreter;
+        this.name = "loop";
+        this.params = Collections.emptyList();
+        this.statements = Collections.singletonList(loop.loop);
+        this.isInitializer = false;
+        this.loopOnly = true;
+        this.owner = loop;
+        this.function = null;
+        this.types = loop.types;
+    }
+
+    JitCode compile() {
+        // 每次编译的类单独放在一个加载器里，去优化丢掉代码之后类和加载器都能被回收，类名也就不会冲突
+        String className = "com/lox/jit/generated/" + name;
+        classFile = new ClassFile(ClassFile.ACC_PUBLIC | ClassFile.ACC_FINAL | ClassFile.ACC_SUPER, className, JIT_CODE);
+
+        Code constructor = classFile.newCode(2);
+        constructor.aload(0);
+        constructor.aload(1);
+        constructor.invokespecial(JIT_CODE, "<init>", "([" + O + ")V");
+        constructor.vreturn();
+        classFile.addMethod(ClassFile.ACC_PUBLIC, "<init>", "([" + O + ")V", constructor);
+
+        // 参数不超过 4 个时函数体编译进按参数个数的 invoke，参数本来就在 JVM 局部变量里，
+        // 按列表传参的 invoke 只是转发过去
+        boolean fixed = !loopOnly && params.size() <= MAX_FIXED_ARGUMENTS;
+        code = classFile.newCode(fixed ? ARGUMENTS_SLOT + MAX_FIXED_ARGUMENTS : ARGUMENTS_SLOT + 1);
+        if (!loopOnly) {
+            if (function.boxedParams.length > 0) throw new JitBailout("参数被闭包捕获");
+            Map<Integer, Integer> paramSlots = new HashMap<>();
+            scopes.add(paramSlots);
+            // 帧里的前几个槽位依次是 this（方法才有）和参数
+            int base = 0;
+            if (function.hasThis) {
+                int slot = code.newLocal();
+                code.aload(RECEIVER_SLOT);
+                code.astore(slot);
+                paramSlots.put(base++, slot);
+            }
+            for (int i = 0; i < params.size(); i++) {
+                if (fixed) {
+                    paramSlots.put(base + i, ARGUMENTS_SLOT + i);
+                    continue;
+                }
+                int slot = code.newLocal();
+                code.aload(ARGUMENTS_SLOT);
+                code.iconst(i);
+                code.invokeinterface("java/util/List", "get", "(I)" + O);
+                code.astore(slot);
+                paramSlots.put(base + i, slot);
+            }
+        }
+        compileStatements(statements);
+        // 没有 return 时：初始化方法返回 this，其余返回 nil
+        if (isInitializer) {
+            code.aload(RECEIVER_SLOT);
+        } else {
+            code.aconstNull();
+        }
+        code.areturn();
+        if (fixed) {
+            classFile.addMethod(ClassFile.ACC_PUBLIC, "invoke", FIXED_INVOKE_DESCRIPTOR, code);
+            listBridge(className);
+        } else {
+            classFile.addMethod(ClassFile.ACC_PUBLIC, "invoke", INVOKE_DESCRIPTOR, code);
+        }
+
+        // VerifyError 之类的 LinkageError 说明生成的 class 文件有错，不当作 JitBailout 吞掉
+        JitClassLoader loader = new JitClassLoader(JitCompiler.class.getClassLoader());
+        try {
+            Class<?> type = loader.define(className, classFile.toByteArray());
+            return (JitCode) type.getConstructor(Object[].class).newInstance((Object) constants.toArray());
+        } catch (ReflectiveOperationException e) {
+            throw new JitBailout(e.toString());
+        }
+    }
+
+    /**
+     * 按列表传参的 invoke：把参数从列表里取出来，转给按参数个数编译的 invoke
+     */
+    private void listBridge(String className) {
+        Code bridge = classFile.newCode(ARGUMENTS_SLOT + 1);
+        bridge.aload(THIS_SLOT);
+        bridge.aload(INTERPRETER_SLOT);
+        bridge.aload(UPVALUES_SLOT);
+        bridge.aload(RECEIVER_SLOT);
+        for (int i = 0; i < MAX_FIXED_ARGUMENTS; i++) {
+            if (i < params.size()) {
+                bridge.aload(ARGUMENTS_SLOT);
+                bridge.iconst(i);
+                bridge.invokeinterface("java/util/List", "get", "(I)" + O);
+            } else {
+                bridge.aconstNull();
+            }
+        }
+        bridge.invokevirtual(className, "invoke", FIXED_INVOKE_DESCRIPTOR);
+        bridge.areturn();
+        classFile.addMethod(ClassFile.ACC_PUBLIC, "invoke", INVOKE_DESCRIPTOR, bridge);
+    }
+
+    // ---------------------------------------------------------------- 辅助
+
+    private void compile(Expr expr) {
+        expr.accept(this);
+    }
+
+    private void compileStatements(List<Stmt> statements) {
+        Position position = new Position(statements, null);
+        positions.add(position);
+        for (int i = 0; i < statements.size(); i++) {
+            position.index = i;
+            Stmt statement = statements.get(i);
+            statement.accept(this);
+            // return/break 之后的语句执行不到，不再生成
+            if (statement instanceof Stmt.Return || statement instanceof Stmt.Break
+                    || statement instanceof Stmt.Continue) {
+                break;
+            }
+        }
+        positions.remove(positions.size() - 1);
+    }
+
+    /**
+     * if/while 的分支不是块时也当成只有一条语句的序列，这样去优化时能找到它之后的位置
+     */
+    private void compileNested(Stmt statement) {
+        compileStatements(Collections.singletonList(statement));
+    }
+
+    private void constant(Object value) {
+        Integer index = constantIndex.get(value);
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            constantIndex.put(value, index);
+        }
+        code.aload(THIS_SLOT);
+        code.getfield(JIT_CODE, "constants", "[" + O);
+        code.iconst(index);
+        code.aaload();
+    }
+
+    private void token(Token token) {
+        constant(token);
+        code.checkcast(TOKEN);
+    }
+
+    /**
+     * 全局变量的单元在编译时就查好，作为常量放进生成的类里
+     */
+    private void global(Token name) {
+        constant(interpreter.globals.global(name));
+        code.checkcast(GLOBAL);
+    }
+
+    private void runtime(String name, String descriptor) {
+        code.invokestatic(RUNTIME, name, descriptor);
+    }
+
+    /**
+     * 编译的代码里声明的调用帧变量返回 JVM 槽，否则返回 null：Upvalue 里的变量、全局变量，
+     * 以及 OSR 编译的循环外面声明的变量（仍在解释器的调用帧里）
+     */
+    private Integer localSlot(int binding, int frameSlot) {
+        if (binding != Resolver.FRAME) return null;
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Integer slot = scopes.get(i).get(frameSlot);
+            if (slot != null) return slot;
+        }
+        if (!loopOnly) throw new JitBailout("作用域和 Resolver 不一致: 槽位 " + frameSlot);
+        return null;
+    }
+
+    /**
+     * 读变量：本函数的局部变量在 JVM 槽里，外层函数的在闭包的 Upvalue 里，
+     * OSR 循环外面的局部变量在解释器的调用帧里，其余是全局变量
+     */
+    private void load(Token name, int binding, int slot) {
+        Integer local = localSlot(binding, slot);
+        if (local != null) {
+            code.aload(local);
+        } else if (binding == Resolver.FRAME) {
+            code.aload(INTERPRETER_SLOT);
+            code.iconst(slot);
+            runtime("frameGet", "(" + I + "I)" + O);
+        } else if (binding == Resolver.GLOBAL) {
+            loadGlobal(name);
+        } else {
+            cell(binding, slot);
+            code.getfield(UPVALUE, "value", O);
+        }
+    }
+
+    /**
+     * 把被捕获的变量所在的 Upvalue 放到栈上：闭包里的直接按下标取；CELL 只会出现在 OSR 编译的循环里，
+     * 是外层函数自己被捕获的变量，Upvalue 在解释器的调用帧里
+     */
+    private void cell(int binding, int slot) {
+        if (binding == Resolver.UPVALUE) {
+            code.aload(UPVALUES_SLOT);
+            code.iconst(slot);
+            code.aaload();
+        } else {
+            code.aload(INTERPRETER_SLOT);
+            code.iconst(slot);
+            runtime("frameCell", "(" + I + "I)" + U);
+        }
+    }
+
+    /**
+     * 没被重新赋值过的全局变量直接取编译时的值，假设失效后走慢路径，同时丢掉这份代码
+     */
+    private void loadGlobal(Token name) {
+        Assumption assumption = interpreter.globals.stable(name);
+        if (assumption == null) {
+            global(name);
+            token(name);
+            code.invokevirtual(GLOBAL, "get", "(" + T + ")" + O);
+            return;
+        }
+        Code.Label slow = new Code.Label();
+        Code.Label done = new Code.Label();
+        constant(assumption);
+        code.checkcast(ASSUMPTION);
+        code.invokevirtual(ASSUMPTION, "isValid", "()Z");
+        code.ifeq(slow);
+        constant(interpreter.globals.value(name));
+        code.goTo(done);
+        code.bind(slow);
+        constant(owner);
+        code.aload(THIS_SLOT);
+        code.aload(INTERPRETER_SLOT);
+        global(name);
+        token(name);
+        runtime("globalChanged", "(" + O + J + I + G + T + ")" + O);
+        code.bind(done);
+    }
+
+    private void binary(String helper, Expr.Binary expr) {
+        compile(expr.left);
+        compile(expr.right);
+        token(expr.operator);
+        runtime(helper, "(" + O + O + T + ")" + O);
+    }
+
+    private void truthy() {
+        runtime("isTruthy", "(" + O + ")Z");
+    }
+
+    /**
+     * 条件为假时跳到 falseLabel。两边都是数字的比较直接比较 double，不生成 Boolean
+     */
+    private void compileCondition(Expr condition, Code.Label falseLabel) {
+        Expr expr = unwrap(condition);
+        if (expr instanceof Expr.Binary && isNumericComparison((Expr.Binary) expr)) {
+            Expr.Binary comparison = (Expr.Binary) expr;
+            compileChecked(() -> compileComparison(comparison, falseLabel), () -> {
+                compile(comparison);
+                truthy();
+                code.ifeq(falseLabel);
+            });
+        } else {
+            compile(condition);
+            truthy();
+            code.ifeq(falseLabel);
+        }
+    }
+
+    // ---------------------------------------------------------------- 类型推测
+
+    private static Expr unwrap(Expr expr) {
+        while (expr instanceof Expr.Grouping) {
+            expr = ((Expr.Grouping) expr).expression;
+        }
+        return expr;
+    }
+
+    private static boolean isArithmetic(TokenType type) {
+        return type == TokenType.PLUS || type == TokenType.MINUS || type == TokenType.STAR
+                || type == TokenType.SLASH;
+    }
+
+    private static boolean isBitwise(TokenType type) {
+        return type == TokenType.LOGIC_AND || type == TokenType.LOGIC_OR;
+    }
+
+    private static boolean isComparison(TokenType type) {
+        return type == TokenType.GREATER || type == TokenType.GREATER_EQUAL
+                || type == TokenType.LESS || type == TokenType.LESS_EQUAL;
+    }
+
+    /**
+     * 在 numbers 的推测下 expr 的值一定是数字时返回 ExprNode.LONG、ExprNode.DOUBLE 或
+     * TypeFeedback.NUMBER，否则返回 0。数字字面量、推测的变量以及它们的四则运算和取负是数字：
+     * 除法的结果是浮点数，其余见 {@link #combine}；&amp; 和 | 只有两边都是整数时才算
+     */
+    private static int numberKind(Expr expr, Map<Expr, Integer> numbers) {
+        expr = unwrap(expr);
+        if (expr instanceof Expr.Literal) {
+            Object value = ((Expr.Literal) expr).value;
+            if (value instanceof Long) return ExprNode.LONG;
+            return value instanceof Double ? ExprNode.DOUBLE : 0;
+        }
+        if (expr instanceof Expr.Variable) {
+            Integer kind = numbers.get(expr);
+            return kind != null ? kind : 0;
+        }
+        if (expr instanceof Expr.Unary) {
+            Expr.Unary unary = (Expr.Unary) expr;
+            return unary.operator.type == TokenType.MINUS ? numberKind(unary.right, numbers) : 0;
+        }
+        if (expr instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) expr;
+            TokenType type = binary.operator.type;
+            if (!isArithmetic(type) && !isBitwise(type)) return 0;
+            int left = numberKind(binary.left, numbers);
+            int right = numberKind(binary.right, numbers);
+            if (left == 0 || right == 0) return 0;
+            if (type == TokenType.SLASH) return ExprNode.DOUBLE;
+            if (isBitwise(type)) return left == ExprNode.LONG && right == ExprNode.LONG ? ExprNode.LONG : 0;
+            return combine(left, right);
+        }
+        return 0;
+    }
+
+    /**
+     * 两个数字做加减乘或比较时按哪种计算：都是整数按 long，有一边是浮点数按 double；
+     * 一边是 NUMBER 另一边不是浮点数时结果的类型不确定，返回 0
+     */
+    private static int combine(int left, int right) {
+        if (left == 0 || right == 0) return 0;
+        if (left == ExprNode.LONG && right == ExprNode.LONG) return ExprNode.LONG;
+        if (left == ExprNode.DOUBLE || right == ExprNode.DOUBLE) return ExprNode.DOUBLE;
+        return 0;
+    }
+
+    /**
+     * 能直接算出来再装箱的表达式：结果确定是整数或浮点数
+     */
+    private boolean isNumeric(Expr expr) {
+        if (boxed) return false;
+        int kind = numberKind(expr, numeric);
+        return kind == ExprNode.LONG || kind == ExprNode.DOUBLE;
+    }
+
+    private boolean isNumericComparison(Expr.Binary expr) {
+        return !boxed && isComparison(expr.operator.type)
+                && combine(numberKind(expr.left, numeric), numberKind(expr.right, numeric)) != 0;
+    }
+
+    /**
+     * 语句开头的类型检查。expr 里作为算术或比较操作数、且另一边也是数字的局部变量推测为数字，
+     * 检查它们确实是推测的 Long、Double 或者至少是数字，否则去优化。本语句编译完后要调用 {@code numeric.clear()}
+     */
+    private void guard(Expr expr) {
+        numeric.clear();
+        if (expr == null) return;
+        Map<Expr, Integer> candidates = new IdentityHashMap<>();
+        collectOperands(expr, false, new HashSet<>(), candidates);
+        if (candidates.isEmpty()) return;
+        markNumeric(expr, candidates);
+        if (numeric.isEmpty()) return;
+
+        // JVM 局部变量槽 -> 读取的变量
+        Map<Integer, Expr.Variable> slots = new TreeMap<>();
+        for (Expr read : numeric.keySet()) {
+            Expr.Variable variable = (Expr.Variable) read;
+            slots.put(localSlot(variable.binding, variable.slot), variable);
+        }
+        Code.Label deopt = new Code.Label();
+        Code.Label passed = new Code.Label();
+        int[] guarded = new int[slots.size()];
+        List<String> names = new ArrayList<>();
+        for (Map.Entry<Integer, Expr.Variable> entry : slots.entrySet()) {
+            Expr.Variable variable = entry.getValue();
+            code.aload(entry.getKey());
+            int kind = numeric.get(variable);
+            code.instanceOf(kind == ExprNode.LONG ? LONG : kind == ExprNode.DOUBLE ? DOUBLE : NUMBER);
+            code.ifeq(deopt);
+            guarded[names.size()] = variable.slot;
+            names.add(variable.name.lexeme);
+        }
+        code.goTo(passed);
+        code.bind(deopt);
+        deoptimize("变量 " + String.join(", ", names) + " 不是推测的数字类型", guarded);
+        code.bind(passed);
+    }
+
+    /**
+     * 按求值顺序收集作为算术或比较操作数的局部变量读取，连同类型反馈给出的推测类型。
+     * 本语句里先被赋值再读取的不算，语句开头的检查管不到它；反馈说不要再推测的也不算
+     */
+    private void collectOperands(Expr expr, boolean operand, Set<Integer> written, Map<Expr, Integer> candidates) {
+        if (expr instanceof Expr.Variable) {
+            if (!operand) return;
+            Expr.Variable variable = (Expr.Variable) expr;
+            Integer slot = localSlot(variable.binding, variable.slot);
+            if (slot == null || written.contains(slot)) return;
+            int kind = types.kindOf(variable.slot);
+            if (kind != ExprNode.GENERIC) candidates.put(expr, kind);
+        } else if (expr instanceof Expr.Grouping) {
+            collectOperands(((Expr.Grouping) expr).expression, operand, written, candidates);
+        } else if (expr instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) expr;
+            TokenType type = binary.operator.type;
+            boolean operands = isComparison(type) || isArithmetic(type) || isBitwise(type);
+            // 和字符串字面量相加是拼接，不推测
+            if (type == TokenType.PLUS && (isString(binary.left) || isString(binary.right))) operands = false;
+            collectOperands(binary.left, operands, written, candidates);
+            collectOperands(binary.right, operands, written, candidates);
+        } else if (expr instanceof Expr.Unary) {
+            Expr.Unary unary = (Expr.Unary) expr;
+            collectOperands(unary.right, unary.operator.type == TokenType.MINUS, written, candidates);
+        } else if (expr instanceof Expr.Assign) {
+            Expr.Assign assign = (Expr.Assign) expr;
+            collectOperands(assign.value, false, written, candidates);
+            Integer slot = localSlot(assign.binding, assign.slot);
+            if (slot != null) written.add(slot);
+        } else if (expr instanceof Expr.SelfIncOrDecr) {
+            Expr.SelfIncOrDecr increment = (Expr.SelfIncOrDecr) expr;
+            if (increment.variable instanceof Expr.Variable) {
+                Expr.Variable variable = (Expr.Variable) increment.variable;
+                Integer slot = localSlot(variable.binding, variable.slot);
+                if (slot != null) written.add(slot);
+            }
+        } else if (expr instanceof Expr.Logical) {
+            collectOperands(((Expr.Logical) expr).left, false, written, candidates);
+            collectOperands(((Expr.Logical) expr).right, false, written, candidates);
+        } else if (expr instanceof Expr.Ternary) {
+            Expr.Ternary ternary = (Expr.Ternary) expr;
+            collectOperands(ternary.condition, false, written, candidates);
+            collectOperands(ternary.left, false, written, candidates);
+            collectOperands(ternary.right, false, written, candidates);
+        } else if (expr instanceof Expr.Call) {
+            Expr.Call call = (Expr.Call) expr;
+            collectOperands(call.callee, false, written, candidates);
+            for (Expr argument : call.arguments) {
+                collectOperands(argument, false, written, candidates);
+            }
+        } else if (expr instanceof Expr.Get) {
+            collectOperands(((Expr.Get) expr).object, false, written, candidates);
+        } else if (expr instanceof Expr.Set) {
+            collectOperands(((Expr.Set) expr).object, false, written, candidates);
+            collectOperands(((Expr.Set) expr).value, false, written, candidates);
+        }
+    }
+
+    private static boolean isString(Expr expr) {
+        expr = unwrap(expr);
+        return expr instanceof Expr.Literal && ((Expr.Literal) expr).value instanceof String;
+    }
+
+    /**
+     * 只保留真正能直接计算的运算里的变量：两边在候选推测下都是数字
+     */
+    private void markNumeric(Expr expr, Map<Expr, Integer> candidates) {
+        if (expr instanceof Expr.Grouping) {
+            markNumeric(((Expr.Grouping) expr).expression, candidates);
+        } else if (expr instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) expr;
+            if (numberKind(binary, candidates) != 0 || isComparison(binary.operator.type)
+                    && combine(numberKind(binary.left, candidates), numberKind(binary.right, candidates)) != 0) {
+                useNumeric(binary.left, candidates);
+                useNumeric(binary.right, candidates);
+                return;
+            }
+            markNumeric(binary.left, candidates);
+            markNumeric(binary.right, candidates);
+        } else if (expr instanceof Expr.Unary) {
+            markNumeric(((Expr.Unary) expr).right, candidates);
+        } else if (expr instanceof Expr.Assign) {
+            markNumeric(((Expr.Assign) expr).value, candidates);
+        } else if (expr instanceof Expr.Logical) {
+            markNumeric(((Expr.Logical) expr).left, candidates);
+            markNumeric(((Expr.Logical) expr).right, candidates);
+        } else if (expr instanceof Expr.Ternary) {
+            Expr.Ternary ternary = (Expr.Ternary) expr;
+            markNumeric(ternary.condition, candidates);
+            markNumeric(ternary.left, candidates);
+            markNumeric(ternary.right, candidates);
+        } else if (expr instanceof Expr.Call) {
+            Expr.Call call = (Expr.Call) expr;
+            markNumeric(call.callee, candidates);
+            for (Expr argument : call.arguments) {
+                markNumeric(argument, candidates);
+            }
+        } else if (expr instanceof Expr.Get) {
+            markNumeric(((Expr.Get) expr).object, candidates);
+        } else if (expr instanceof Expr.Set) {
+            markNumeric(((Expr.Set) expr).object, candidates);
+            markNumeric(((Expr.Set) expr).value, candidates);
+        }
+    }
+
+    private void useNumeric(Expr expr, Map<Expr, Integer> candidates) {
+        expr = unwrap(expr);
+        if (expr instanceof Expr.Variable) {
+            numeric.put(expr, candidates.get(expr));
+        } else if (expr instanceof Expr.Unary) {
+            useNumeric(((Expr.Unary) expr).right, candidates);
+        } else if (expr instanceof Expr.Binary) {
+            useNumeric(((Expr.Binary) expr).left, candidates);
+            useNumeric(((Expr.Binary) expr).right, candidates);
+        }
+    }
+
+    /**
+     * 在当前语句处去优化：把本函数作用域里的 JVM 局部变量交给 {@link DeoptPoint}，由解释器接着执行。
+     * guarded 是检查过类型的变量在调用帧里的槽位
+     */
+    private void deoptimize(String reason, int[] guarded) {
+        DeoptPoint.Frame[] frames = new DeoptPoint.Frame[positions.size()];
+        for (int i = 0; i < frames.length; i++) {
+            Position position = positions.get(i);
+            // 外层的序列里正在执行的那条语句（块、if、while）完成后从下一条继续
+            int next = i == frames.length - 1 ? position.index : position.index + 1;
+            frames[i] = new DeoptPoint.Frame(position.statements, next, position.loop, position.increment);
+        }
+        List<Integer> frameSlots = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        for (Map<Integer, Integer> scope : scopes) {
+            for (Map.Entry<Integer, Integer> entry : scope.entrySet()) {
+                frameSlots.add(entry.getKey());
+                slots.add(entry.getValue());
+            }
+        }
+        int[] variables = new int[frameSlots.size()];
+        for (int i = 0; i < variables.length; i++) {
+            variables[i] = frameSlots.get(i);
+        }
+        constant(new DeoptPoint(owner, function, isInitializer, frames, variables, guarded, types, reason));
+        code.aload(THIS_SLOT);
+        code.aload(INTERPRETER_SLOT);
+        code.aload(UPVALUES_SLOT);
+        code.aload(RECEIVER_SLOT);
+        code.iconst(slots.size());
+        code.anewarray(OBJECT);
+        for (int i = 0; i < slots.size(); i++) {
+            code.dup();
+            code.iconst(i);
+            code.aload(slots.get(i));
+            code.aastore();
+        }
+        runtime("deoptimize", "(" + O + J + I + "[" + U + O + "[" + O + ")" + O);
+        code.areturn();
+    }
+
+    /**
+     * 推测为数字的表达式，结果是栈上的 long 或 double，返回 ExprNode.LONG 或 ExprNode.DOUBLE。
+     * NUMBER 变量按 double 取出
+     */
+    private int compileNumber(Expr expr) {
+        expr = unwrap(expr);
+        if (expr instanceof Expr.Literal) {
+            Object value = ((Expr.Literal) expr).value;
+            if (value instanceof Long) {
+                code.ldcLong((Long) value);
+                return ExprNode.LONG;
+            }
+            code.ldcDouble((Double) value);
+            return ExprNode.DOUBLE;
+        }
+        if (expr instanceof Expr.Variable) {
+            Expr.Variable variable = (Expr.Variable) expr;
+            load(variable.name, variable.binding, variable.slot);
+            int kind = numeric.get(expr);
+            if (kind == ExprNode.LONG) {
+                code.checkcast(LONG);
+                code.invokevirtual(LONG, "longValue", "()J");
+                return ExprNode.LONG;
+            }
+            String type = kind == ExprNode.DOUBLE ? DOUBLE : NUMBER;
+            code.checkcast(type);
+            code.invokevirtual(type, "doubleValue", "()D");
+            return ExprNode.DOUBLE;
+        }
+        if (expr instanceof Expr.Unary) {
+            int kind = compileNumber(((Expr.Unary) expr).right);
+            if (kind == ExprNode.LONG) {
+                int temp = scratch();
+                code.lstore(temp);
+                code.lload(temp);
+                code.invokestatic(LOX_NUMBERS, "negateOverflows", "(J)Z");
+                code.ifne(overflow());
+                code.lload(temp);
+                code.lneg();
+            } else {
+                code.dneg();
+            }
+            return kind;
+        }
+        Expr.Binary binary = (Expr.Binary) expr;
+        int kind = numberKind(binary, numeric);
+        compileOperands(binary, kind);
+        if (kind == ExprNode.LONG) {
+            switch (binary.operator.type) {
+                case PLUS: checkOverflow("addOverflows"); code.ladd(); break;
+                case MINUS: checkOverflow("subtractOverflows"); code.lsub(); break;
+                case STAR: checkOverflow("multiplyOverflows"); code.lmul(); break;
+                case LOGIC_AND: code.land(); break;
+                default: code.lor(); break;
+            }
+        } else {
+            switch (binary.operator.type) {
+                case PLUS: code.dadd(); break;
+                case MINUS: code.dsub(); break;
+                case STAR: code.dmul(); break;
+                default:
+                    token(binary.operator);
+                    runtime("divide", "(DD" + T + ")D");
+                    break;
+            }
+        }
+        return kind;
+    }
+
+    /**
+     * 按 kind 计算的操作数：整数参与浮点运算时转成 double
+     */
+    private void compileOperand(Expr expr, int kind) {
+        if (compileNumber(expr) != kind) code.l2d();
+    }
+
+    /**
+     * 两个操作数依次压栈。编译右边时左边的结果还留在栈上，溢出时要弹掉
+     */
+    private void compileOperands(Expr.Binary expr, int kind) {
+        compileOperand(expr.left, kind);
+        pending++;
+        compileOperand(expr.right, kind);
+        pending--;
+    }
+
+    /**
+     * 栈顶两个 long 做 helper 对应的运算会溢出时跳到 {@link #overflow}，否则把它们原样留在栈上
+     */
+    private void checkOverflow(String helper) {
+        int temp = scratch();
+        code.lstore(temp + 2);
+        code.lstore(temp);
+        code.lload(temp);
+        code.lload(temp + 2);
+        code.invokestatic(LOX_NUMBERS, helper, "(JJ)Z");
+        code.ifne(overflow());
+        code.lload(temp);
+        code.lload(temp + 2);
+    }
+
+    private int scratch() {
+        if (scratch < 0) {
+            scratch = code.newLocal();
+            for (int i = 1; i < 4; i++) {
+                code.newLocal();
+            }
+        }
+        return scratch;
+    }
+
+    /**
+     * 当前位置溢出时跳到的标签，栈上还剩 pending 个操作数
+     */
+    private Code.Label overflow() {
+        while (overflows.size() <= pending) {
+            overflows.add(null);
+        }
+        Code.Label label = overflows.get(pending);
+        if (label == null) {
+            label = new Code.Label();
+            overflows.set(pending, label);
+        }
+        return label;
+    }
+
+    /**
+     * 编译 fast 这段按推测直接计算数字的代码。其中整数的加减乘或取负溢出时，丢掉栈上的中间结果，
+     * 改用 slow 按装箱的对象重算一遍，结果和解释器一样变成浮点数。推测为数字的表达式里只有字面量、
+     * 变量和运算，重算没有副作用。两段代码之后落到同一个位置
+     */
+    private void compileChecked(Runnable fast, Runnable slow) {
+        overflows = new ArrayList<>();
+        pending = 0;
+        fast.run();
+        List<Code.Label> sites = overflows;
+        overflows = null;
+        if (sites.isEmpty()) return;
+        Code.Label end = new Code.Label();
+        code.goTo(end);
+        // 从栈上剩得最多的位置开始，每弹掉一个操作数就落到下一个位置
+        for (int i = sites.size() - 1; i >= 0; i--) {
+            if (sites.get(i) != null) code.bind(sites.get(i));
+            if (i > 0) code.pop2();
+        }
+        boxed = true;
+        slow.run();
+        boxed = false;
+        code.bind(end);
+    }
+
+    private void box(int kind) {
+        if (kind == ExprNode.LONG) {
+            code.invokestatic(LONG, "valueOf", "(J)Ljava/lang/Long;");
+        } else {
+            code.invokestatic(DOUBLE, "valueOf", "(D)Ljava/lang/Double;");
+        }
+    }
+
+    /**
+     * 两边都是数字的比较，不成立时跳到 falseLabel。两边都是整数时比较 long，否则比较 double，
+     * NaN 参与的比较都不成立
+     */
+    private void compileComparison(Expr.Binary expr, Code.Label falseLabel) {
+        boolean longs = numberKind(expr.left, numeric) == ExprNode.LONG
+                && numberKind(expr.right, numeric) == ExprNode.LONG;
+        int kind = longs ? ExprNode.LONG : ExprNode.DOUBLE;
+        compileOperands(expr, kind);
+        if (longs) {
+            code.lcmp();
+            switch (expr.operator.type) {
+                case LESS: code.ifge(falseLabel); break;
+                case LESS_EQUAL: code.ifgt(falseLabel); break;
+                case GREATER: code.ifle(falseLabel); break;
+                default: code.iflt(falseLabel); break;
+            }
+            return;
+        }
+        switch (expr.operator.type) {
+            case LESS: code.dcmpg(); code.ifge(falseLabel); break;
+            case LESS_EQUAL: code.dcmpg(); code.ifgt(falseLabel); break;
+            case GREATER: code.dcmpl(); code.ifle(falseLabel); break;
+            default: code.dcmpl(); code.iflt(falseLabel); break;
+        }
+    }
+
+    // ---------------------------------------------------------------- 表达式
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        compile(expr.value);
+        Integer slot = localSlot(expr.binding, expr.slot);
+        if (slot != null) {
+            code.dup();
+            code.astore(slot);
+        } else if (expr.binding == Resolver.FRAME) {
+            code.aload(INTERPRETER_SLOT);
+            code.iconst(expr.slot);
+            runtime("frameSet", "(" + O + I + "I)" + O);
+        } else if (expr.binding == Resolver.GLOBAL) {
+            global(expr.name);
+            token(expr.name);
+            runtime("assignGlobal", "(" + O + G + T + ")" + O);
+        } else {
+            cell(expr.binding, expr.slot);
+            runtime("assignCell", "(" + O + U + ")" + O);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        if (isNumeric(expr)) {
+            compileChecked(() -> box(compileNumber(expr)), () -> compile(expr));
+            return null;
+        }
+        if (isNumericComparison(expr)) {
+            Code.Label falseLabel = new Code.Label();
+            Code.Label end = new Code.Label();
+            compileCondition(expr, falseLabel);
+            code.getstatic("java/lang/Boolean", "TRUE", "Ljava/lang/Boolean;");
+            code.goTo(end);
+            code.bind(falseLabel);
+            code.getstatic("java/lang/Boolean", "FALSE", "Ljava/lang/Boolean;");
+            code.bind(end);
+            return null;
+        }
+        switch (expr.operator.type) {
+            case GREATER: binary("greater", expr); return null;
+            case GREATER_EQUAL: binary("greaterEqual", expr); return null;
+            case LESS: binary("less", expr); return null;
+            case LESS_EQUAL: binary("lessEqual", expr); return null;
+            case MINUS: binary("subtract", expr); return null;
+            case PLUS: binary("add", expr); return null;
+            case SLASH: binary("divide", expr); return null;
+            case STAR: binary("multiply", expr); return null;
+            case LOGIC_AND: binary("bitAnd", expr); return null;
+            case LOGIC_OR: binary("bitOr", expr); return null;
+            case BANG_EQUAL:
+                compile(expr.left);
+                compile(expr.right);
+                runtime("notEqual", "(" + O + O + ")" + O);
+                return null;
+            case EQUAL_EQUAL:
+                compile(expr.left);
+                compile(expr.right);
+                runtime("equal", "(" + O + O + ")" + O);
+                return null;
+            case COMMA:
+                compile(expr.left);
+                code.pop();
+                compile(expr.right);
+                return null;
+        }
+        throw new JitBailout("未知运算符 " + expr.operator.lexeme);
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        compile(expr.callee);
+        if (expr.callee instanceof Expr.Get && ((Expr.Get) expr.callee).object instanceof Expr.Variable) {
+            // callee 为 nil 时按 Klass.method 查静态方法
+            Expr.Get get = (Expr.Get) expr.callee;
+            Expr.Variable receiver = (Expr.Variable) get.object;
+            Code.Label found = new Code.Label();
+            code.dup();
+            code.ifnonnull(found);
+            code.pop();
+            load(receiver.name, receiver.binding, receiver.slot);
+            token(get.name);
+            token(expr.paren);
+            runtime("staticMethod", "(" + O + T + T + ")" + O);
+            code.bind(found);
+        }
+        // OSR 编译的循环里的 return 另有 returnFromLoop 处理，这里照常调用
+        String method = expr.tail && !loopOnly ? "tailCall" : "call";
+        int argc = expr.arguments.size();
+        if (argc <= MAX_FIXED_ARGUMENTS) {
+            // 参数直接留在操作数栈上，不够 4 个的补 null
+            code.iconst(argc);
+            for (int i = 0; i < MAX_FIXED_ARGUMENTS; i++) {
+                if (i < argc) {
+                    compile(expr.arguments.get(i));
+                } else {
+                    code.aconstNull();
+                }
+            }
+            token(expr.paren);
+            code.aload(INTERPRETER_SLOT);
+            runtime(method, "(" + O + "I" + O + O + O + O + T + I + ")" + O);
+            return null;
+        }
+        code.iconst(argc);
+        code.anewarray(OBJECT);
+        for (int i = 0; i < argc; i++) {
+            code.dup();
+            code.iconst(i);
+            compile(expr.arguments.get(i));
+            code.aastore();
+        }
+        token(expr.paren);
+        code.aload(INTERPRETER_SLOT);
+        runtime(method, "(" + O + "[" + O + T + I + ")" + O);
+        return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        compile(expr.object);
+        token(expr.name);
+        code.aload(INTERPRETER_SLOT);
+        runtime("get", "(" + O + T + I + ")" + O);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            code.aconstNull();
+        } else if (expr.value instanceof Boolean) {
+            code.getstatic("java/lang/Boolean", (Boolean) expr.value ? "TRUE" : "FALSE", "Ljava/lang/Boolean;");
+        } else if (expr.value instanceof String) {
+            code.ldcString((String) expr.value);
+        } else {
+            constant(expr.value);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        Code.Label end = new Code.Label();
+        compile(expr.left);
+        code.dup();
+        truthy();
+        if (expr.operator.type == TokenType.OR) {
+            code.ifne(end);
+        } else {
+            code.ifeq(end);
+        }
+        code.pop();
+        compile(expr.right);
+        code.bind(end);
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        compile(expr.object);
+        token(expr.name);
+        runtime("checkInstance", "(" + O + T + ")" + O);
+        compile(expr.value);
+        token(expr.name);
+        runtime("set", "(" + O + O + T + ")" + O);
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        load(expr.keyword, expr.binding, expr.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+        cell(Resolver.UPVALUE, expr.slot);
+        code.getfield(UPVALUE, "value", O);
+        load(expr.keyword, expr.thisBinding, expr.thisSlot);
+        token(expr.method);
+        runtime("superMethod", "(" + O + O + T + ")" + O);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        if (isNumeric(expr)) {
+            compileChecked(() -> box(compileNumber(expr)), () -> compile(expr));
+            return null;
+        }
+        compile(expr.right);
+        switch (expr.operator.type) {
+            case BANG:
+                runtime("not", "(" + O + ")" + O);
+                return null;
+            case MINUS:
+                token(expr.operator);
+                runtime("negate", "(" + O + T + ")" + O);
+                return null;
+        }
+        throw new JitBailout("未知运算符 " + expr.operator.lexeme);
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr) {
+        Code.Label elseBranch = new Code.Label();
+        Code.Label end = new Code.Label();
+        compileCondition(expr.condition, elseBranch);
+        compile(expr.left);
+        code.goTo(end);
+        code.bind(elseBranch);
+        compile(expr.right);
+        code.bind(end);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        load(expr.name, expr.binding, expr.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitSelfIncOrDecrExpr(Expr.SelfIncOrDecr expr) {
+        if (!(expr.variable instanceof Expr.Variable)) {
+            token(expr.name);
+            code.ldcString(expr.name.lexeme + "只能对变量进行" + expr.name.lexeme + "操作。");
+            runtime("fail", "(" + T + "Ljava/lang/String;)" + O);
+            return null;
+        }
+        Expr.Variable variable = (Expr.Variable) expr.variable;
+        Token name = variable.name;
+        int delta = expr.name.type == TokenType.PLUS_PLUS ? 1 : -1;
+        int binding = variable.binding;
+        Integer slot = localSlot(binding, variable.slot);
+        if (slot != null) {
+            // 旧值留在栈上作为结果
+            code.aload(slot);
+            code.dup();
+            token(expr.name);
+            token(name);
+            code.iconst(delta);
+            runtime("increment", "(" + O + T + T + "I)" + O);
+            code.astore(slot);
+        } else if (binding == Resolver.FRAME) {
+            code.aload(INTERPRETER_SLOT);
+            code.iconst(variable.slot);
+            token(name);
+            token(expr.name);
+            code.iconst(delta);
+            runtime("incrementFrame", "(" + I + "I" + T + T + "I)" + O);
+        } else if (binding == Resolver.GLOBAL) {
+            global(name);
+            token(name);
+            token(expr.name);
+            code.iconst(delta);
+            runtime("incrementGlobal", "(" + G + T + T + "I)" + O);
+        } else {
+            cell(binding, variable.slot);
+            token(name);
+            token(expr.name);
+            code.iconst(delta);
+            runtime("incrementCell", "(" + U + T + T + "I)" + O);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLambdaExpr(Expr.Lambda expr) {
+        throw new JitBailout("不编译含有 lambda 的函数");
+    }
+
+    // ---------------------------------------------------------------- 语句
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        scopes.add(new HashMap<>());
+        compileStatements(stmt.statements);
+        scopes.remove(scopes.size() - 1);
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        throw new JitBailout("不编译含有类声明的函数");
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        guard(stmt.expression);
+        compile(stmt.expression);
+        numeric.clear();
+        code.pop();
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        throw new JitBailout("不编译含有嵌套函数的函数");
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        Code.Label elseBranch = new Code.Label();
+        Code.Label end = new Code.Label();
+        guard(stmt.condition);
+        compileCondition(stmt.condition, elseBranch);
+        numeric.clear();
+        compileNested(stmt.thenBranch);
+        code.goTo(end);
+        code.bind(elseBranch);
+        if (stmt.elseBranch != null) {
+            compileNested(stmt.elseBranch);
+        }
+        code.bind(end);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        guard(stmt.expression);
+        compile(stmt.expression);
+        numeric.clear();
+        code.aload(INTERPRETER_SLOT);
+        runtime("print", "(" + O + I + ")V");
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer != null) {
+            guard(stmt.initializer);
+            compile(stmt.initializer);
+            numeric.clear();
+        } else {
+            code.aconstNull();
+        }
+        if (scopes.isEmpty()) throw new JitBailout("循环体直接声明变量");
+        if (stmt.slot < 0 || stmt.captured) throw new JitBailout("变量被闭包捕获: " + stmt.name.lexeme);
+        int slot = code.newLocal();
+        code.astore(slot);
+        scopes.get(scopes.size() - 1).put(stmt.slot, slot);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        Loop loop = new Loop(false);
+        code.bind(loop.start);
+        // 每次回到循环头都检查；去优化时从这个 while 语句重新开始执行，效果和回到循环头一样
+        guard(stmt.condition);
+        compileCondition(stmt.condition, loop.end);
+        numeric.clear();
+        loops.push(loop);
+        positions.add(new Position(null, stmt));
+        compileNested(stmt.body);
+        positions.remove(positions.size() - 1);
+        loops.pop();
+        code.goTo(loop.start);
+        code.bind(loop.end);
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        // OSR 编译的正是这个循环时，初始化语句已经在解释器里执行过，循环变量留在调用帧里
+        boolean entry = loopOnly && statements.get(0) == stmt;
+        scopes.add(new HashMap<>());
+        // 初始化语句里去优化时从整个 for 语句重新开始执行
+        if (!entry && stmt.initializer != null) stmt.initializer.accept(this);
+        Loop loop = new Loop(true);
+        Position position = new Position(null, stmt);
+        positions.add(position);
+        code.bind(loop.start);
+        guard(stmt.condition);
+        compileCondition(stmt.condition, loop.end);
+        numeric.clear();
+        position.increment = true;
+        loops.push(loop);
+        compileNested(stmt.body);
+        loops.pop();
+        code.bind(loop.next);
+        if (stmt.increment != null) {
+            guard(stmt.increment);
+            compile(stmt.increment);
+            numeric.clear();
+            code.pop();
+        }
+        positions.remove(positions.size() - 1);
+        code.goTo(loop.start);
+        code.bind(loop.end);
+        scopes.remove(scopes.size() - 1);
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        if (loops.isEmpty()) throw new JitBailout("循环外的 break");
+        // Parser 目前把 continue 也解析成 Break，按 token 区分
+        if (stmt.token.type == TokenType.CONTINUE) {
+            code.goTo(loops.peek().next);
+        } else {
+            code.goTo(loops.peek().end);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitContinueStmt(Stmt.Continue stmt) {
+        if (loops.isEmpty()) throw new JitBailout("循环外的 continue");
+        code.goTo(loops.peek().next);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value != null) {
+            guard(stmt.value);
+            compile(stmt.value);
+            numeric.clear();
+        } else if (isInitializer) {
+            // 初始化方法里的 return; 返回 this
+            code.aload(RECEIVER_SLOT);
+        } else {
+            code.aconstNull();
+        }
+        if (loopOnly) {
+            // 循环外面的函数还在解释执行，和解释器一样通过 completion 把值带出去
+            code.aload(INTERPRETER_SLOT);
+            runtime("returnFromLoop", "(" + O + I + ")" + O);
+        }
+        code.areturn();
+        return null;
+    }
+}
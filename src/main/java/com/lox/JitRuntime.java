@@ -0,0 +1,306 @@
+package com.lox;
+
+import java.util.Arrays;
+
+import com.lox.runtime.LoxNumbers;
+import com.lox.runtime.LoxString;
+
+/**
+ * JIT 生成的代码调用的运行时函数。语义和报错信息都和 {@link Interpreter} 保持一致，
+ * 方法都很短，HotSpot 编译生成代码时会把它们内联进去。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className JitRuntime
+ * @date 2026/10/18 16:40
+ **/
+public final class JitRuntime {
+
+    private JitRuntime() {}
+
+    // ---------------------------------------------------------------- 运算
+
+    public static Object add(Object left, Object right, Token operator) {
+        Object sum = LoxNumbers.add(left, right);
+        if (sum != null) return sum;
+        Object text = LoxString.concat(left, right);
+        if (text != null) return text;
+        throw new RuntimeError(operator, "操作数两边必须是数字或字符串.");
+    }
+
+    public static Object subtract(Object left, Object right, Token operator) {
+        ExprNode.checkNumberOperands(operator, left, right);
+        return LoxNumbers.subtract(left, right);
+    }
+
+    public static Object multiply(Object left, Object right, Token operator) {
+        ExprNode.checkNumberOperands(operator, left, right);
+        return LoxNumbers.multiply(left, right);
+    }
+
+    public static Object divide(Object left, Object right, Token operator) {
+        ExprNode.checkNumberOperands(operator, left, right);
+        if (LoxNumbers.isZero(right)) {
+            throw new RuntimeError(operator, "被除数不能为0.");
+        }
+        return LoxNumbers.divide(left, right);
+    }
+
+    /**
+     * 两边推测为数字的除法
+     */
+    public static double divide(double left, double right, Token operator) {
+        if (right == 0) {
+            throw new RuntimeError(operator, "被除数不能为0.");
+        }
+        return left / right;
+    }
+
+    public static Object greater(Object left, Object right, Token operator) {
+        if (LoxString.isString(left) || LoxString.isString(right)) {
+            return left.toString().compareTo(right.toString()) > 0;
+        }
+        ExprNode.checkNumberOperands(operator, left, right);
+        return LoxNumbers.greater(left, right);
+    }
+
+    public static Object greaterEqual(Object left, Object right, Token operator) {
+        if (LoxString.isString(left) || LoxString.isString(right)) {
+            return left.toString().compareTo(right.toString()) >= 0;
+        }
+        ExprNode.checkNumberOperands(operator, left, right);
+        return LoxNumbers.greaterEqual(left, right);
+    }
+
+    public static Object less(Object left, Object right, Token operator) {
+        if (LoxString.isString(left) || LoxString.isString(right)) {
+            return left.toString().compareTo(right.toString()) < 0;
+        }
+        ExprNode.checkNumberOperands(operator, left, right);
+        return LoxNumbers.less(left, right);
+    }
+
+    public static Object lessEqual(Object left, Object right, Token operator) {
+        if (LoxString.isString(left) || LoxString.isString(right)) {
+            return left.toString().compareTo(right.toString()) <= 0;
+        }
+        ExprNode.checkNumberOperands(operator, left, right);
+        return LoxNumbers.lessEqual(left, right);
+    }
+
+    public static Object equal(Object left, Object right) {
+        return ExprNode.isEqual(left, right);
+    }
+
+    public static Object notEqual(Object left, Object right) {
+        return !ExprNode.isEqual(left, right);
+    }
+
+    public static Object bitAnd(Object left, Object right, Token operator) {
+        return ExprNode.checkInteger(operator, LoxNumbers.bitAnd(left, right));
+    }
+
+    public static Object bitOr(Object left, Object right, Token operator) {
+        return ExprNode.checkInteger(operator, LoxNumbers.bitOr(left, right));
+    }
+
+    public static Object not(Object value) {
+        return !ExprNode.isTruthy(value);
+    }
+
+    public static Object negate(Object value, Token operator) {
+        Object result = LoxNumbers.negate(value);
+        if (result == null) {
+            throw new RuntimeError(operator, "Operand must be a number.");
+        }
+        return result;
+    }
+
+    public static boolean isTruthy(Object value) {
+        return ExprNode.isTruthy(value);
+    }
+
+    // ---------------------------------------------------------------- 变量
+
+    public static Object assignGlobal(Object value, Global global, Token name) {
+        global.assign(name, value);
+        return value;
+    }
+
+    /**
+     * OSR 编译的循环读写循环外面声明的局部变量，它们还在解释器当前的调用帧里
+     */
+    public static Object frameGet(Interpreter interpreter, int slot) {
+        return interpreter.stack[interpreter.fp + slot];
+    }
+
+    public static Object frameSet(Object value, Interpreter interpreter, int slot) {
+        interpreter.stack[interpreter.fp + slot] = value;
+        return value;
+    }
+
+    public static Object incrementFrame(Interpreter interpreter, int slot, Token name, Token operator, int delta) {
+        int index = interpreter.fp + slot;
+        Object value = interpreter.stack[index];
+        interpreter.stack[index] = ExprNode.increment(operator, name, value, delta);
+        return value;
+    }
+
+    /**
+     * OSR 编译的循环用到外层函数自己被捕获的变量，Upvalue 在解释器当前的调用帧里
+     */
+    public static Upvalue frameCell(Interpreter interpreter, int slot) {
+        return (Upvalue) interpreter.stack[interpreter.fp + slot];
+    }
+
+    public static Object assignCell(Object value, Upvalue cell) {
+        cell.value = value;
+        return value;
+    }
+
+    /**
+     * JVM 局部变量上的 ++/--，返回新值，旧值由生成的代码留在栈上
+     */
+    public static Object increment(Object value, Token operator, Token name, int delta) {
+        return ExprNode.increment(operator, name, value, delta);
+    }
+
+    public static Object incrementCell(Upvalue cell, Token name, Token operator, int delta) {
+        Object value = cell.value;
+        cell.value = ExprNode.increment(operator, name, value, delta);
+        return value;
+    }
+
+    public static Object incrementGlobal(Global global, Token name, Token operator, int delta) {
+        Object value = global.get(name);
+        global.assign(name, ExprNode.increment(operator, name, value, delta));
+        return value;
+    }
+
+    // ---------------------------------------------------------------- 调用和对象
+
+    public static Object call(Object callee, Object[] arguments, Token paren, Interpreter interpreter) {
+        if (!(callee instanceof LoxCallable)) {
+            throw new RuntimeError(paren, "方法和类才支持调用.");
+        }
+        LoxCallable function = (LoxCallable) callee;
+        if (arguments.length != function.arity()) {
+            throw new RuntimeError(paren, "期待 " + function.arity() + " 个参数，但只传入了 " + arguments.length + " 个。");
+        }
+        return function.call(interpreter, Arrays.asList(arguments));
+    }
+
+    /**
+     * 不超过 4 个参数的调用，参数直接放在操作数栈上，多出来的位置是 null，见 {@link Interpreter#call}
+     */
+    public static Object call(Object callee, int argc, Object a0, Object a1, Object a2, Object a3,
+                              Token paren, Interpreter interpreter) {
+        return interpreter.call(callee, argc, a0, a1, a2, a3, paren, false);
+    }
+
+    public static Object tailCall(Object callee, int argc, Object a0, Object a1, Object a2, Object a3,
+                                  Token paren, Interpreter interpreter) {
+        return interpreter.call(callee, argc, a0, a1, a2, a3, paren, true);
+    }
+
+    /**
+     * return f(...) 里的调用，交给 {@link Interpreter#tailCall}，由调用编译代码的 LoxFunction 接着执行
+     */
+    public static Object tailCall(Object callee, Object[] arguments, Token paren, Interpreter interpreter) {
+        if (!(callee instanceof LoxCallable)) {
+            throw new RuntimeError(paren, "方法和类才支持调用.");
+        }
+        LoxCallable function = (LoxCallable) callee;
+        if (arguments.length != function.arity()) {
+            throw new RuntimeError(paren, "期待 " + function.arity() + " 个参数，但只传入了 " + arguments.length + " 个。");
+        }
+        return interpreter.tailCall(function, Arrays.asList(arguments));
+    }
+
+    /**
+     * callee 求值为 nil 时按 Klass.method 查静态方法，见 Interpreter.visitCallExpr
+     */
+    public static Object staticMethod(Object receiver, Token name, Token paren) {
+        if (!(receiver instanceof LoxClass)) return null;
+        LoxFunction staticMethod = ((LoxClass) receiver).findStaticMethod(name.symbol);
+        if (staticMethod == null) {
+            throw new RuntimeError(paren, name.lexeme + "不是静态方法。");
+        }
+        return staticMethod;
+    }
+
+    public static Object get(Object object, Token name, Interpreter interpreter) {
+        if (object instanceof LoxInstance) {
+            Object value = ((LoxInstance) object).get(name);
+            if (value instanceof LoxGetterFunction) {
+                return ((LoxGetterFunction) value).call0(interpreter);
+            }
+            return value;
+        }
+        return null;
+    }
+
+    public static Object checkInstance(Object object, Token name) {
+        if (!(object instanceof LoxInstance)) {
+            throw new RuntimeError(name, "Only instances have fields.");
+        }
+        return object;
+    }
+
+    public static Object set(Object instance, Object value, Token name) {
+        ((LoxInstance) instance).set(name, value);
+        return value;
+    }
+
+    public static Object superMethod(Object superclass, Object object, Token method) {
+        LoxFunction function = ((LoxClass) superclass).findMethod(method.symbol);
+        if (function == null) {
+            throw new RuntimeError(method, "Undefined property '" + method.lexeme + "'.");
+        }
+        return function.bind((LoxInstance) object);
+    }
+
+    // ---------------------------------------------------------------- 推测失败
+
+    /**
+     * 语句开头的类型检查失败：丢掉这份代码，从这条语句开始解释执行，返回函数的返回值
+     */
+    public static Object deoptimize(Object point, JitCode from, Interpreter interpreter,
+                                    Upvalue[] upvalues, Object receiver, Object[] values) {
+        DeoptPoint deopt = (DeoptPoint) point;
+        deopt.observeTypes(values);
+        deopt.owner.deoptimize(interpreter, from, deopt.reason);
+        return deopt.resume(interpreter, upvalues, receiver, values);
+    }
+
+    /**
+     * 编译成常量的全局变量被重新赋值了：这次照常取值，同时丢掉这份代码，下次重新编译
+     */
+    public static Object globalChanged(Object owner, JitCode from, Interpreter interpreter, Global global, Token name) {
+        ((Deoptimizable) owner).deoptimize(interpreter, from, "全局变量 " + name.lexeme + " 被重新赋值");
+        return global.get(name);
+    }
+
+    // ---------------------------------------------------------------- 其他
+
+    /**
+     * OSR 编译的循环里的 return：和解释器一样记到 completion 上，由外层的函数调用取走。
+     * 声明成返回 Object 方便生成代码
+     */
+    public static Object returnFromLoop(Object value, Interpreter interpreter) {
+        interpreter.returnValue = value;
+        interpreter.completion = Interpreter.RETURN;
+        return value;
+    }
+
+    public static void print(Object value, Interpreter interpreter) {
+        System.out.println(interpreter.stringify(value));
+    }
+
+    /**
+     * 执行到这里必然报错的表达式，声明成返回 Object 方便生成代码
+     */
+    public static Object fail(Token token, String message) {
+        throw new RuntimeError(token, message);
+    }
+}
@@ -0,0 +1,98 @@
+package com.lox;
+
+import java.util.Collections;
+
+import com.lox.jit.JitBailout;
+
+/**
+ * 一个 while 或 for 循环对应一份，记录回边次数，用于栈上替换（OSR）。
+ * <p>
+ * 顶层脚本里的大循环只执行一次，函数级的分层永远轮不到它。循环体每执行完一次就记一次回边，
+ * 超过阈值后把整个循环编译好（优先 JIT，不能 JIT 时用节点树），然后在回边处从循环头接着执行
+ * 编译后的版本（for 循环不包括已经执行过的初始化语句）。两种版本都直接使用解释器当前的调用帧和
+ * 当前函数的 upvalues，所以不需要额外搬运变量。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className LoopProfile
+ * @date 2026/10/18 18:20
+ **/
+final class LoopProfile implements Deoptimizable {
+    static final int DEFAULT_OSR_THRESHOLD = 2000;
+
+    // Stmt.While 或 Stmt.For
+    final Stmt loop;
+    int backEdges = 0;
+    // JIT 编译好的整个循环
+    JitCode code = null;
+    // 不能 JIT 时的节点树版本
+    StmtNode node = null;
+    private boolean jitFailed = false;
+    // JIT 推测局部变量类型用的反馈，去优化时更新
+    final TypeFeedback types = new TypeFeedback();
+
+    LoopProfile(Stmt loop) {
+        this.loop = loop;
+    }
+
+    /**
+     * 已经有可以直接执行的版本
+     */
+    boolean ready(boolean allowNodes) {
+        return code != null || (allowNodes && node != null);
+    }
+
+    /**
+     * 记一次回边。返回 true 时调用方应当改用 {@link #run} 从循环头继续执行。
+     * allowNodes 为 false 表示调用方本来就在执行节点树，只有 JIT 版本才值得切换。
+     * function 是循环所在的函数，节点树版本的回边次数记到它上面。
+     */
+    boolean backEdge(Interpreter interpreter, boolean allowNodes, FunctionProfile function) {
+        if (ready(allowNodes)) return true;
+        if (interpreter.osrThreshold < 0) return false;
+        if (backEdges < Integer.MAX_VALUE) backEdges++;
+        if (backEdges < interpreter.osrThreshold) return false;
+        if (!jitFailed && interpreter.jitThreshold >= 0) {
+            try {
+                code = new JitCompiler(interpreter, this).compile();
+                trace(interpreter, "JIT");
+                return true;
+            } catch (JitBailout e) {
+                jitFailed = true;
+                if (interpreter.traceTiers) {
+                    System.err.println("[osr] 循环无法 JIT：" + e.getMessage());
+                }
+            }
+        }
+        if (allowNodes && interpreter.nodeThreshold >= 0) {
+            node = new NodeCompiler(interpreter, false).compileLoop(loop, function);
+            trace(interpreter, "NODES");
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void deoptimize(Interpreter interpreter, JitCode from, String reason) {
+        if (code != from) return;
+        code = null;
+        // 和 FunctionProfile 一样不重新计数，下一次回边时按更新过的类型反馈重新编译
+        if (interpreter.traceTiers) {
+            System.err.println("[deopt] loop JIT -> " + (node != null ? "NODES" : "INTERPRETER") + "：" + reason);
+        }
+    }
+
+    void run(Interpreter interpreter) {
+        if (code != null) {
+            code.invoke(interpreter, interpreter.upvalues, null, Collections.emptyList());
+        } else {
+            node.execute();
+        }
+    }
+
+    private void trace(Interpreter interpreter, String tier) {
+        if (interpreter.traceTiers) {
+            System.err.println("[osr] loop -> " + tier + " (back-edges=" + backEdges + ")");
+        }
+    }
+}
@@ -6,8 +6,13 @@ import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 
+import com.lox.opt.Optimizer;
+import com.lox.vm.InterpretResult;
+import com.lox.vm.VM;
+
 /**
  * @author peiyou
  * @version 1.0
@@ -24,14 +29,48 @@ public class Lox {
 
     private static final Interpreter interpreter = new Interpreter();
     private static final ReplInterpreter replInterpreter = new ReplInterpreter();
+    // 使用 --vm 启动时用字节码虚拟机执行，否则用树遍历解释器
+    private static VM vm = null;
+    // 使用 --nodes 启动时先把语法树编译成节点树再执行
+    private static boolean nodes = false;
 
     public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("使用：jlox [script]");
+        List<String> files = new ArrayList<>();
+        int framesMax = VM.FRAMES_MAX;
+        for (String arg : args) {
+            if (arg.equals("--vm")) {
+                vm = new VM();
+            } else if (arg.startsWith("--vm-frames=")) {
+                // 虚拟机的最大调用深度
+                framesMax = Integer.parseInt(arg.substring("--vm-frames=".length()));
+            } else if (arg.equals("--nodes")) {
+                nodes = true;
+            } else if (arg.equals("--jit")) {
+                interpreter.jitThreshold = FunctionProfile.DEFAULT_JIT_THRESHOLD;
+                interpreter.osrThreshold = LoopProfile.DEFAULT_OSR_THRESHOLD;
+            } else if (arg.equals("--tiered")) {
+                interpreter.nodeThreshold = FunctionProfile.DEFAULT_NODE_THRESHOLD;
+                interpreter.jitThreshold = FunctionProfile.DEFAULT_JIT_THRESHOLD;
+                interpreter.osrThreshold = LoopProfile.DEFAULT_OSR_THRESHOLD;
+            } else if (arg.startsWith("--tiered=")) {
+                // --tiered=节点树阈值,JIT阈值,OSR阈值
+                String[] thresholds = arg.substring("--tiered=".length()).split(",");
+                interpreter.nodeThreshold = Integer.parseInt(thresholds[0]);
+                interpreter.jitThreshold = thresholds.length > 1 ? Integer.parseInt(thresholds[1]) : -1;
+                interpreter.osrThreshold = thresholds.length > 2 ? Integer.parseInt(thresholds[2]) : -1;
+            } else if (arg.equals("--tier-trace")) {
+                interpreter.traceTiers = true;
+            } else {
+                files.add(arg);
+            }
+        }
+        if (vm != null) vm.setFramesMax(framesMax);
+        if (files.size() > 1) {
+            System.out.println("使用：jlox [--vm [--vm-frames=n] | --nodes] [--jit | --tiered[=n,j,o]] [--tier-trace] [script]");
             System.exit(64);
-        } else if (args.length == 1) {
+        } else if (files.size() == 1) {
             repl = false;
-            runFile(args[0]);
+            runFile(files.get(0));
         } else {
             runPrompt();
         }
@@ -148,13 +187,38 @@ public class Lox {
         Parser parser = new Parser(tokens);
         List<Stmt> statements = parser.parse();
         if (hadError) return;
-        Resolver resolver = new Resolver(interpreter);
-        if (hadError) return;
+        Resolver resolver = new Resolver();
         resolver.resolve(statements);
-        interpreter.interpret(statements);
+        if (hadError) return;
+        new Optimizer().optimize(statements);
+        if (vm != null) {
+            if (vm.interpret(statements) == InterpretResult.RUNTIME_ERROR) {
+                hadRuntimeError = true;
+            }
+            return;
+        }
+        if (nodes) {
+            interpreter.interpret(new NodeCompiler(interpreter, true).compile(statements), resolver.frameSize());
+            return;
+        }
+        interpreter.interpret(statements, resolver.frameSize());
 //        System.out.println(new AstPrinter().print(expression));
     }
 
+    /**
+     * 扫描、解析、做静态检查并像 run 一样优化，有错误时打印出来并返回 null。供 com.tool 里的工具使用
+     */
+    public static List<Stmt> parse(String source) {
+        hadError = false;
+        Scanner scanner = new Scanner(source);
+        List<Stmt> statements = new Parser(scanner.scanTokens()).parse();
+        if (hadError) return null;
+        new Resolver().resolve(statements);
+        if (hadError) return null;
+        new Optimizer().optimize(statements);
+        return statements;
+    }
+
     static void error(int line, String message) {
         report(line, "", message);
     }
@@ -166,7 +230,7 @@ public class Lox {
         hadError = true;
     }
 
-    static void error(Token token, String message) {
+    public static void error(Token token, String message) {
         if (token.type == TokenType.EOF) {
             report(token.line, " at end", message);
         } else {
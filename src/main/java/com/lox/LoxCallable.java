@@ -1,5 +1,7 @@
 package com.lox;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -25,4 +27,29 @@ public interface LoxCallable {
      * @return
      */
     Object call(Interpreter interpreter, List<Object>arguments);
+
+    /*
+     * 0~4 个参数的调用入口，调用方已经检查过参数个数。默认转成 call，
+     * Lox 函数、lambda 和类覆盖它们，参数直接放进调用帧，不分配参数列表
+     */
+
+    default Object call0(Interpreter interpreter) {
+        return call(interpreter, Collections.emptyList());
+    }
+
+    default Object call1(Interpreter interpreter, Object a0) {
+        return call(interpreter, Collections.singletonList(a0));
+    }
+
+    default Object call2(Interpreter interpreter, Object a0, Object a1) {
+        return call(interpreter, Arrays.asList(a0, a1));
+    }
+
+    default Object call3(Interpreter interpreter, Object a0, Object a1, Object a2) {
+        return call(interpreter, Arrays.asList(a0, a1, a2));
+    }
+
+    default Object call4(Interpreter interpreter, Object a0, Object a1, Object a2, Object a3) {
+        return call(interpreter, Arrays.asList(a0, a1, a2, a3));
+    }
 }
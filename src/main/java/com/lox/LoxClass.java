@@ -1,7 +1,6 @@
 package com.lox;
 
 import java.util.List;
-import java.util.Map;
 
 /**
  * @author peiyou
@@ -13,15 +12,16 @@ public class LoxClass implements LoxCallable {
 
     final String name;
 
-    private final Map<String, LoxFunction> methods;
+    // 方法表都按方法名的符号编号查找
+    private final SymbolMap<LoxFunction> methods;
 
-    private final Map<String, LoxFunction> staticMethods;
+    private final SymbolMap<LoxFunction> staticMethods;
 
-    private final Map<String, LoxFunction> getter;
+    private final SymbolMap<LoxFunction> getter;
 
     private final LoxClass superclass;
 
-    LoxClass(String name, Map<String, LoxFunction> methods, Map<String, LoxFunction> staticMethods, Map<String, LoxFunction> getter, LoxClass superclass) {
+    LoxClass(String name, SymbolMap<LoxFunction> methods, SymbolMap<LoxFunction> staticMethods, SymbolMap<LoxFunction> getter, LoxClass superclass) {
         this.name = name;
         this.methods = methods;
         this.staticMethods = staticMethods;
@@ -36,7 +36,7 @@ public class LoxClass implements LoxCallable {
 
     @Override
     public int arity() {
-        LoxFunction initializer = findMethod("init");
+        LoxFunction initializer = findMethod(Symbols.INIT);
         if (initializer == null) return 0;
         return initializer.arity();
     }
@@ -44,34 +44,66 @@ public class LoxClass implements LoxCallable {
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
         LoxInstance instance = new LoxInstance(this);
-        LoxFunction initializer = findMethod("init");
+        LoxFunction initializer = findMethod(Symbols.INIT);
         if (initializer != null) {
             initializer.bind(instance).call(interpreter, arguments);
         }
         return instance;
     }
 
-    public LoxFunction findMethod(String name) {
-        if (methods.containsKey(name)) {
-            return methods.get(name);
+    @Override
+    public Object call0(Interpreter interpreter) {
+        return construct(interpreter, null, null, null, null);
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a0) {
+        return construct(interpreter, a0, null, null, null);
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a0, Object a1) {
+        return construct(interpreter, a0, a1, null, null);
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a0, Object a1, Object a2) {
+        return construct(interpreter, a0, a1, a2, null);
+    }
+
+    @Override
+    public Object call4(Interpreter interpreter, Object a0, Object a1, Object a2, Object a3) {
+        return construct(interpreter, a0, a1, a2, a3);
+    }
+
+    /**
+     * init 的参数不超过 4 个时创建实例：直接以新实例为 this 调用 init，不分配参数列表和 bind 出来的函数
+     */
+    private Object construct(Interpreter interpreter, Object a0, Object a1, Object a2, Object a3) {
+        LoxInstance instance = new LoxInstance(this);
+        LoxFunction initializer = findMethod(Symbols.INIT);
+        if (initializer != null) {
+            initializer.initialize(interpreter, instance, a0, a1, a2, a3);
+        }
+        return instance;
+    }
+
+    public LoxFunction findMethod(int symbol) {
+        LoxFunction method = methods.get(symbol);
+        if (method != null) {
+            return method;
         }
         if (superclass != null) {
-            return superclass.findMethod(name);
+            return superclass.findMethod(symbol);
         }
         return null;
     }
 
-    public LoxFunction findStaticMethod(String name) {
-        if (staticMethods.containsKey(name)) {
-            return staticMethods.get(name);
-        }
-        return null;
+    public LoxFunction findStaticMethod(int symbol) {
+        return staticMethods.get(symbol);
     }
 
-    public LoxFunction findGetterMethod(String name) {
-        if (getter.containsKey(name)) {
-            return getter.get(name);
-        }
-        return null;
+    public LoxFunction findGetterMethod(int symbol) {
+        return getter.get(symbol);
     }
 }
@@ -8,15 +8,27 @@ import java.util.List;
  * @className LoxFunction
  * @date 2023/9/15 11:33
  **/
-public class LoxFunction implements LoxCallable {
-    private final Environment closure;
+public class LoxFunction implements TailCallable {
+    // 创建时捕获的外层变量，只有函数体（和里面的函数）用到的那些，见 Resolver
+    private final Upvalue[] upvalues;
+    // bind 出来的方法的 this，没有 bind 时为 null
+    protected final LoxInstance receiver;
     protected final boolean isInitializer;
     protected final Stmt.Function function;
+    // 同一声明共享的调用计数和编译结果
+    protected final FunctionProfile profile;
 
-    public LoxFunction(Stmt.Function function, Environment closure, boolean isInitializer) {
-        this.closure = closure;
+    public LoxFunction(Stmt.Function function, Upvalue[] upvalues, boolean isInitializer) {
+        this(function, upvalues, null, isInitializer, FunctionProfile.of(function, isInitializer));
+    }
+
+    LoxFunction(Stmt.Function function, Upvalue[] upvalues, LoxInstance receiver, boolean isInitializer,
+                FunctionProfile profile) {
+        this.upvalues = upvalues;
+        this.receiver = receiver;
         this.function = function;
         this.isInitializer = isInitializer;
+        this.profile = profile;
     }
 
     @Override
@@ -26,23 +38,81 @@ public class LoxFunction implements LoxCallable {
 
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
-        Environment environment = new Environment(closure);
-        for (int i = 0; i < function.params.size(); i++) {
-            environment.define(function.params.get(i).lexeme, arguments.get(i));
-        }
-        try {
-            interpreter.executeBlock(function.body, environment);
-        } catch (ReturnStmt r) {
+        return interpreter.runTailCalls(invoke(interpreter, arguments));
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        return interpreter.runTailCalls(invoke(interpreter, receiver, null, null, null, null));
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a0) {
+        return interpreter.runTailCalls(invoke(interpreter, receiver, a0, null, null, null));
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a0, Object a1) {
+        return interpreter.runTailCalls(invoke(interpreter, receiver, a0, a1, null, null));
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a0, Object a1, Object a2) {
+        return interpreter.runTailCalls(invoke(interpreter, receiver, a0, a1, a2, null));
+    }
+
+    @Override
+    public Object call4(Interpreter interpreter, Object a0, Object a1, Object a2, Object a3) {
+        return interpreter.runTailCalls(invoke(interpreter, receiver, a0, a1, a2, a3));
+    }
 
-            return r.value;
+    /**
+     * 以 instance 为 this 调用初始化方法，创建实例时用，不用先 bind。参数不超过 4 个
+     */
+    Object initialize(Interpreter interpreter, LoxInstance instance, Object a0, Object a1, Object a2, Object a3) {
+        return interpreter.runTailCalls(invoke(interpreter, instance, a0, a1, a2, a3));
+    }
+
+    @Override
+    public Object invoke(Interpreter interpreter, List<Object> arguments) {
+        JitCode code = profile.enter(interpreter);
+        if (code != null) return code.invoke(interpreter, upvalues, receiver, arguments);
+        profile.execute(interpreter, upvalues, receiver, profile.pushFrame(interpreter, arguments));
+        return result(interpreter, receiver);
+    }
+
+    @Override
+    public Object invoke(Interpreter interpreter, Object a0, Object a1, Object a2, Object a3) {
+        return invoke(interpreter, receiver, a0, a1, a2, a3);
+    }
+
+    private Object invoke(Interpreter interpreter, Object receiver, Object a0, Object a1, Object a2, Object a3) {
+        JitCode code = profile.enter(interpreter);
+        if (code != null) return code.invoke(interpreter, upvalues, receiver, a0, a1, a2, a3);
+        profile.execute(interpreter, upvalues, receiver, profile.pushFrame(interpreter, a0, a1, a2, a3));
+        return result(interpreter, receiver);
+    }
+
+    private Object result(Interpreter interpreter, Object receiver) {
+        // 初始化方法总是返回 this，里面只能写不带值的 return;
+        if (interpreter.completion == Interpreter.RETURN) {
+            Object value = interpreter.takeReturnValue();
+            return isInitializer ? receiver : value;
         }
-        if (isInitializer) return closure.getAt(0, "this");
+        if (isInitializer) return receiver;
         return null;
     }
 
+    @Override
+    public String toString() {
+        return "<fn " + function.name.lexeme + ">";
+    }
+
+    Upvalue[] upvalues() {
+        return upvalues;
+    }
+
     public LoxFunction bind(LoxInstance instance) {
-        Environment environment = new Environment();
-        environment.define("this", instance);
-        return new LoxFunction(function, environment, isInitializer);
+        return new LoxFunction(function, upvalues, instance, isInitializer, profile);
     }
 }
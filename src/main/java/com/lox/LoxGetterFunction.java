@@ -10,8 +10,13 @@ import java.util.List;
  **/
 public class LoxGetterFunction extends LoxFunction {
 
-    public LoxGetterFunction(Stmt.Function function, Environment closure, boolean isInitializer) {
-        super(function, closure, isInitializer);
+    public LoxGetterFunction(Stmt.Function function, Upvalue[] upvalues, boolean isInitializer) {
+        super(function, upvalues, isInitializer);
+    }
+
+    LoxGetterFunction(Stmt.Function function, Upvalue[] upvalues, LoxInstance receiver, boolean isInitializer,
+                      FunctionProfile profile) {
+        super(function, upvalues, receiver, isInitializer, profile);
     }
 
     @Override
@@ -26,8 +31,6 @@ public class LoxGetterFunction extends LoxFunction {
 
     @Override
     public LoxFunction bind(LoxInstance instance) {
-        Environment environment = new Environment();
-        environment.define("this", instance);
-        return new LoxGetterFunction(super.function, environment, super.isInitializer);
+        return new LoxGetterFunction(super.function, upvalues(), instance, super.isInitializer, super.profile);
     }
 }
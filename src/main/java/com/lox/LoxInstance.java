@@ -1,8 +1,5 @@
 package com.lox;
 
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  * @author peiyou
  * @version 1.0
@@ -12,7 +9,8 @@ import java.util.Map;
 public class LoxInstance {
 
     private LoxClass klass;
-    private final Map<String, Object> fields = new HashMap<>();
+    // 字段名的符号编号 -> 值
+    private final SymbolMap<Object> fields = new SymbolMap<>();
 
     LoxInstance(LoxClass klass) {
         this.klass = klass;
@@ -24,15 +22,16 @@ public class LoxInstance {
     }
 
     Object get(Token name) {
-        if (fields.containsKey(name.lexeme)) {
-            return fields.get(name.lexeme);
+        Object value = fields.get(name.symbol);
+        if (value != null || fields.containsKey(name.symbol)) {
+            return value;
         }
-        LoxFunction method = klass.findMethod(name.lexeme);
+        LoxFunction method = klass.findMethod(name.symbol);
         if (method != null) {
             return method.bind(this);
         }
 
-        method = klass.findGetterMethod(name.lexeme);
+        method = klass.findGetterMethod(name.symbol);
         if (method != null) {
             return method.bind(this);
         }
@@ -41,6 +40,6 @@ public class LoxInstance {
     }
 
     void set(Token name, Object value) {
-        fields.put(name.lexeme, value);
+        fields.put(name.symbol, value);
     }
 }
@@ -8,14 +8,22 @@ import java.util.List;
  * @className LoxLambda
  * @date 2023/9/15 15:39
  **/
-public class LoxLambda implements LoxCallable {
+public class LoxLambda implements TailCallable {
 
-    private final Environment closure;
+    // 创建时捕获的外层变量，只有函数体用到的那些，见 Resolver
+    private final Upvalue[] upvalues;
     private final Expr.Lambda lambda;
+    // 同一声明共享的调用计数和编译结果
+    private final FunctionProfile profile;
 
-    public LoxLambda(Expr.Lambda lambda, Environment closure) {
-        this.closure = closure;
+    public LoxLambda(Expr.Lambda lambda, Upvalue[] upvalues) {
+        this(lambda, upvalues, FunctionProfile.of(lambda));
+    }
+
+    LoxLambda(Expr.Lambda lambda, Upvalue[] upvalues, FunctionProfile profile) {
+        this.upvalues = upvalues;
         this.lambda = lambda;
+        this.profile = profile;
     }
 
     @Override
@@ -25,16 +33,54 @@ public class LoxLambda implements LoxCallable {
 
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
-        Environment environment = new Environment(closure);
-        for (int i = 0; i < lambda.params.size(); i++) {
-            environment.define(lambda.params.get(i).lexeme, arguments.get(i));
-        }
-        try {
-            interpreter.executeBlock(lambda.body, environment);
-        } catch (ReturnStmt r) {
-
-            return r.value;
-        }
+        return interpreter.runTailCalls(invoke(interpreter, arguments));
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        return interpreter.runTailCalls(invoke(interpreter, null, null, null, null));
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a0) {
+        return interpreter.runTailCalls(invoke(interpreter, a0, null, null, null));
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a0, Object a1) {
+        return interpreter.runTailCalls(invoke(interpreter, a0, a1, null, null));
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a0, Object a1, Object a2) {
+        return interpreter.runTailCalls(invoke(interpreter, a0, a1, a2, null));
+    }
+
+    @Override
+    public Object call4(Interpreter interpreter, Object a0, Object a1, Object a2, Object a3) {
+        return interpreter.runTailCalls(invoke(interpreter, a0, a1, a2, a3));
+    }
+
+    @Override
+    public Object invoke(Interpreter interpreter, List<Object> arguments) {
+        JitCode code = profile.enter(interpreter);
+        if (code != null) return code.invoke(interpreter, upvalues, null, arguments);
+        profile.execute(interpreter, upvalues, null, profile.pushFrame(interpreter, arguments));
+        if (interpreter.completion == Interpreter.RETURN) return interpreter.takeReturnValue();
         return null;
     }
+
+    @Override
+    public Object invoke(Interpreter interpreter, Object a0, Object a1, Object a2, Object a3) {
+        JitCode code = profile.enter(interpreter);
+        if (code != null) return code.invoke(interpreter, upvalues, null, a0, a1, a2, a3);
+        profile.execute(interpreter, upvalues, null, profile.pushFrame(interpreter, a0, a1, a2, a3));
+        if (interpreter.completion == Interpreter.RETURN) return interpreter.takeReturnValue();
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "<fn lambda>";
+    }
 }
@@ -0,0 +1,311 @@
+package com.lox;
+
+import java.util.List;
+
+/**
+ * 在 Resolver 之后把语法树翻译成 {@link ExprNode}/{@link StmtNode} 节点树，只翻译一次。
+ * 二元运算按运算符直接选定节点类型，变量按 Resolver 记下的绑定分成调用帧、Upvalue 和全局三种节点，
+ * 执行时节点之间直接调用，不再经过 Visitor 分派。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className NodeCompiler
+ * @date 2026/10/18 14:30
+ **/
+class NodeCompiler implements Expr.Visitor<ExprNode>, Stmt.Visitor<StmtNode> {
+
+    private final Interpreter interpreter;
+    // 为 true 时（--nodes）嵌套的函数一起编译；分层执行时嵌套函数等自己变热了再编译
+    private final boolean eager;
+    // 正在编译的函数，其中循环的回边次数记到它上面；顶层代码为 null
+    private FunctionProfile function = null;
+
+    NodeCompiler(Interpreter interpreter, boolean eager) {
+        this.interpreter = interpreter;
+        this.eager = eager;
+    }
+
+    StmtNode.Body compile(List<Stmt> statements) {
+        return new StmtNode.Body(compileAll(statements), interpreter);
+    }
+
+    /**
+     * OSR 时单独编译一个循环，function 是循环所在的函数
+     */
+    StmtNode compileLoop(Stmt loop, FunctionProfile function) {
+        this.function = function;
+        // for 循环的初始化语句在切换之前已经执行过了
+        if (loop.kind == Stmt.FOR) return compileFor((Stmt.For) loop, false);
+        return compile(loop);
+    }
+
+    StmtNode.Body compileBody(FunctionProfile profile) {
+        FunctionProfile enclosing = function;
+        function = profile;
+        try {
+            return compile(profile.statements);
+        } finally {
+            function = enclosing;
+        }
+    }
+
+    private StmtNode[] compileAll(List<Stmt> statements) {
+        StmtNode[] nodes = new StmtNode[statements.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = compile(statements.get(i));
+        }
+        return nodes;
+    }
+
+    private StmtNode compile(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    private ExprNode compile(Expr expr) {
+        return expr.accept(this);
+    }
+
+    private FunctionProfile profile(FunctionProfile profile) {
+        if (eager && profile.body == null) {
+            profile.useNodes(interpreter, compileBody(profile));
+        }
+        return profile;
+    }
+
+    private FunctionProfile profile(Stmt.Function function, boolean isInitializer) {
+        return profile(interpreter.profileOf(function, isInitializer));
+    }
+
+    private FunctionProfile[] compileFunctions(List<Stmt.Function> functions, boolean methods) {
+        FunctionProfile[] profiles = new FunctionProfile[functions.size()];
+        for (int i = 0; i < profiles.length; i++) {
+            Stmt.Function function = functions.get(i);
+            profiles[i] = profile(function, methods && function.name.lexeme.equals("init"));
+        }
+        return profiles;
+    }
+
+    private ExprNode variable(Token name, int binding, int slot) {
+        switch (binding) {
+            case Resolver.FRAME: return new ExprNode.FrameRead(interpreter, slot);
+            case Resolver.CELL: return new ExprNode.CellRead(interpreter, false, slot);
+            case Resolver.UPVALUE: return new ExprNode.CellRead(interpreter, true, slot);
+        }
+        return new ExprNode.GlobalRead(name, interpreter.globals.global(name));
+    }
+
+    @Override
+    public ExprNode visitAssignExpr(Expr.Assign expr) {
+        ExprNode value = compile(expr.value);
+        switch (expr.binding) {
+            case Resolver.FRAME: return new ExprNode.FrameWrite(interpreter, expr.slot, value);
+            case Resolver.CELL: return new ExprNode.CellWrite(interpreter, false, expr.slot, value);
+            case Resolver.UPVALUE: return new ExprNode.CellWrite(interpreter, true, expr.slot, value);
+        }
+        return new ExprNode.GlobalWrite(expr.name, interpreter.globals.global(expr.name), value);
+    }
+
+    @Override
+    public ExprNode visitBinaryExpr(Expr.Binary expr) {
+        ExprNode left = compile(expr.left);
+        ExprNode right = compile(expr.right);
+        Token operator = expr.operator;
+        switch (operator.type) {
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+            case MINUS:
+            case PLUS:
+            case SLASH:
+            case STAR:
+                // 第一次执行时按操作数的类型换成特化的节点
+                return new ExprNode.Uninitialized(left, right, operator);
+            case BANG_EQUAL: return new ExprNode.Equal(left, right, true);
+            case EQUAL_EQUAL: return new ExprNode.Equal(left, right, false);
+            case COMMA: return new ExprNode.Comma(left, right);
+            case LOGIC_AND: return new ExprNode.BitAnd(left, right, operator);
+            case LOGIC_OR: return new ExprNode.BitOr(left, right, operator);
+        }
+        // 和解释器一样，未知运算符两边照常求值，结果为 nil
+        return new ExprNode.Comma(new ExprNode.Comma(left, right), new ExprNode.Constant(null));
+    }
+
+    @Override
+    public ExprNode visitCallExpr(Expr.Call expr) {
+        ExprNode callee = compile(expr.callee);
+        ExprNode[] arguments = new ExprNode[expr.arguments.size()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = compile(expr.arguments.get(i));
+        }
+        ExprNode staticReceiver = null;
+        Token staticName = null;
+        if (expr.callee instanceof Expr.Get && ((Expr.Get) expr.callee).object instanceof Expr.Variable) {
+            Expr.Get get = (Expr.Get) expr.callee;
+            Expr.Variable receiver = (Expr.Variable) get.object;
+            staticReceiver = variable(receiver.name, receiver.binding, receiver.slot);
+            staticName = get.name;
+        }
+        return new ExprNode.Call(callee, arguments, expr.paren, interpreter, staticReceiver, staticName, expr.tail);
+    }
+
+    @Override
+    public ExprNode visitGetExpr(Expr.Get expr) {
+        return new ExprNode.Get(compile(expr.object), expr.name, interpreter);
+    }
+
+    @Override
+    public ExprNode visitGroupingExpr(Expr.Grouping expr) {
+        return compile(expr.expression);
+    }
+
+    @Override
+    public ExprNode visitLiteralExpr(Expr.Literal expr) {
+        return new ExprNode.Constant(expr.value);
+    }
+
+    @Override
+    public ExprNode visitLogicalExpr(Expr.Logical expr) {
+        ExprNode left = compile(expr.left);
+        ExprNode right = compile(expr.right);
+        if (expr.operator.type == TokenType.OR) {
+            return new ExprNode.Or(left, right);
+        }
+        return new ExprNode.And(left, right);
+    }
+
+    @Override
+    public ExprNode visitSetExpr(Expr.Set expr) {
+        return new ExprNode.Set(compile(expr.object), expr.name, compile(expr.value));
+    }
+
+    @Override
+    public ExprNode visitThisExpr(Expr.This expr) {
+        return variable(expr.keyword, expr.binding, expr.slot);
+    }
+
+    @Override
+    public ExprNode visitSuperExpr(Expr.Super expr) {
+        return new ExprNode.Super(interpreter, expr.slot, variable(expr.keyword, expr.thisBinding, expr.thisSlot),
+                expr.method);
+    }
+
+    @Override
+    public ExprNode visitUnaryExpr(Expr.Unary expr) {
+        ExprNode right = compile(expr.right);
+        switch (expr.operator.type) {
+            case BANG: return new ExprNode.Not(right);
+            case MINUS: return new ExprNode.UninitializedNegate(right, expr.operator);
+        }
+        return new ExprNode.Comma(right, new ExprNode.Constant(null));
+    }
+
+    @Override
+    public ExprNode visitTernaryExpr(Expr.Ternary expr) {
+        return new ExprNode.Conditional(compile(expr.condition), compile(expr.left), compile(expr.right));
+    }
+
+    @Override
+    public ExprNode visitVariableExpr(Expr.Variable expr) {
+        return variable(expr.name, expr.binding, expr.slot);
+    }
+
+    @Override
+    public ExprNode visitSelfIncOrDecrExpr(Expr.SelfIncOrDecr expr) {
+        if (!(expr.variable instanceof Expr.Variable)) {
+            return new ExprNode.Fail(expr.name, expr.name.lexeme + "只能对变量进行" + expr.name.lexeme + "操作。");
+        }
+        Expr.Variable variable = (Expr.Variable) expr.variable;
+        switch (variable.binding) {
+            case Resolver.FRAME:
+                return new ExprNode.FrameIncrement(interpreter, variable.slot, variable.name, expr.name);
+            case Resolver.CELL:
+                return new ExprNode.CellIncrement(interpreter, false, variable.slot, variable.name, expr.name);
+            case Resolver.UPVALUE:
+                return new ExprNode.CellIncrement(interpreter, true, variable.slot, variable.name, expr.name);
+        }
+        return new ExprNode.GlobalIncrement(variable.name, interpreter.globals.global(variable.name), expr.name);
+    }
+
+    @Override
+    public ExprNode visitLambdaExpr(Expr.Lambda expr) {
+        return new ExprNode.Lambda(expr, profile(interpreter.profileOf(expr)), interpreter);
+    }
+
+    @Override
+    public StmtNode visitBlockStmt(Stmt.Block stmt) {
+        return new StmtNode.Body(compileAll(stmt.statements), interpreter);
+    }
+
+    @Override
+    public StmtNode visitClassStmt(Stmt.Class stmt) {
+        ExprNode superclass = stmt.superclass == null ? null : compile(stmt.superclass);
+        return new StmtNode.Class(stmt, superclass, interpreter,
+                compileFunctions(stmt.methods, true),
+                compileFunctions(stmt.staticMethods, false),
+                compileFunctions(stmt.getter, false));
+    }
+
+    @Override
+    public StmtNode visitExpressionStmt(Stmt.Expression stmt) {
+        return new StmtNode.Expression(compile(stmt.expression));
+    }
+
+    @Override
+    public StmtNode visitFunctionStmt(Stmt.Function stmt) {
+        return new StmtNode.Function(stmt, profile(stmt, false), interpreter);
+    }
+
+    @Override
+    public StmtNode visitIfStmt(Stmt.If stmt) {
+        StmtNode elseBranch = stmt.elseBranch == null ? null : compile(stmt.elseBranch);
+        return new StmtNode.If(compile(stmt.condition), compile(stmt.thenBranch), elseBranch);
+    }
+
+    @Override
+    public StmtNode visitPrintStmt(Stmt.Print stmt) {
+        return new StmtNode.Print(compile(stmt.expression), interpreter);
+    }
+
+    @Override
+    public StmtNode visitVarStmt(Stmt.Var stmt) {
+        ExprNode initializer = stmt.initializer == null ? null : compile(stmt.initializer);
+        return new StmtNode.Var(stmt.name, stmt.slot, stmt.captured, initializer, interpreter);
+    }
+
+    @Override
+    public StmtNode visitWhileStmt(Stmt.While stmt) {
+        return new StmtNode.While(compile(stmt.condition), compile(stmt.body), function,
+                interpreter.loopProfileOf(stmt), interpreter);
+    }
+
+    @Override
+    public StmtNode visitForStmt(Stmt.For stmt) {
+        return compileFor(stmt, true);
+    }
+
+    private StmtNode compileFor(Stmt.For stmt, boolean withInitializer) {
+        StmtNode initializer = withInitializer && stmt.initializer != null ? compile(stmt.initializer) : null;
+        ExprNode increment = stmt.increment == null ? null : compile(stmt.increment);
+        return new StmtNode.For(initializer, compile(stmt.condition), increment, compile(stmt.body),
+                function, interpreter.loopProfileOf(stmt), interpreter);
+    }
+
+    @Override
+    public StmtNode visitBreakStmt(Stmt.Break stmt) {
+        // Parser 目前把 continue 也解析成 Break，按 token 区分
+        if (stmt.token.type == TokenType.CONTINUE) return new StmtNode.Continue(interpreter);
+        return new StmtNode.Break(interpreter);
+    }
+
+    @Override
+    public StmtNode visitContinueStmt(Stmt.Continue stmt) {
+        return new StmtNode.Continue(interpreter);
+    }
+
+    @Override
+    public StmtNode visitReturnStmt(Stmt.Return stmt) {
+        ExprNode value = stmt.value == null ? null : compile(stmt.value);
+        return new StmtNode.Return(value, interpreter);
+    }
+}
@@ -0,0 +1,19 @@
+package com.lox;
+
+/**
+ * 持有表达式节点的节点。运算节点第一次执行后按见到的操作数类型把自己换成特化的版本，
+ * 推测落空时再换回通用的版本，替换由持有它的上一层完成，见 {@link ExprNode#replace}。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className NodeParent
+ * @date 2026/10/19 10:20
+ **/
+interface NodeParent {
+
+    /**
+     * 把子节点 child 换成 replacement。child 已经不在这里时（同一个节点在递归里的另一次执行先把它换掉了）
+     * 什么也不做
+     */
+    void replaceChild(ExprNode child, ExprNode replacement);
+}
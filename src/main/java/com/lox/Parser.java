@@ -351,22 +351,8 @@ public class Parser {
         consume(RIGHT_PAREN, "Expect ')' after for clauses.");
         Stmt body = statement();
 
-        if (increment != null) {
-            body = new Stmt.Block(Arrays.asList(
-                    body,
-                    new Stmt.Expression(increment)
-            ));
-        }
-
         if (condition == null) condition = new Expr.Literal(true);
-        body = new Stmt.While(condition, body);
-        if (initializer != null) {
-            body = new Stmt.Block(Arrays.asList(
-                    initializer,
-                    body
-            ));
-        }
-        return body;
+        return new Stmt.For(initializer, condition, increment, body);
     }
 
     /**
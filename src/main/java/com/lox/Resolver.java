@@ -1,31 +1,49 @@
 package com.lox;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 
 /**
+ * 解析变量引用，同时做逃逸分析。局部变量都放在所在函数的调用帧里，按帧内槽位读写；被内层函数
+ * （fun、lambda、方法）引用到的局部变量在帧里放一个 {@link Upvalue}，内层函数创建时只把自己用到的
+ * 那几个 Upvalue 拷进闭包（像 clox 一样隔一层的经由中间函数转手），不再持有外层的整条环境链。
+ * 两个闭包捕获同一个变量时拿到的是同一个 Upvalue，互相看得到对方的修改。
+ * <p>
+ * 一个变量是否被捕获要等它的作用域结束才知道，所以同一函数里的引用先记下来，作用域结束时再写回节点。
+ * 方法里的 this 是方法自己的第一个局部变量，super 是类声明外面一层作用域里的局部变量。
+ *
  * @author peiyou
  * @version 1.0
  * @className Resolver
  * @date 2023/9/15 16:21
  **/
 public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
-    private final Interpreter interpreter;
-
-    private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+    // 变量引用的绑定方式，记在节点的 binding 上。全局变量按名字找单元
+    static final int GLOBAL = 0;
+    // 当前函数调用帧里的变量，slot 是帧内槽位
+    static final int FRAME = 1;
+    // 当前函数调用帧里被内层函数捕获的变量，帧里放的是 Upvalue，slot 是帧内槽位
+    static final int CELL = 2;
+    // 外层函数的变量，slot 是闭包里 Upvalue 数组的下标
+    static final int UPVALUE = 3;
+
+    private final Stack<Scope> scopes = new Stack<>();
     private FunctionType currentFunction = FunctionType.NONE;
+    // 是否在当前函数（或顶层代码）的循环里，break 和 continue 只能写在循环里，进入函数时清零
+    private boolean inLoop = false;
+    // 顶层代码（块里的局部变量）的调用帧
+    private final Frame script = new Frame(null);
+    private Frame frame = script;
 
     private ClassType currentClass = ClassType.NONE;
 
     private enum FunctionType {
         NONE,
         FUNCTION,
-        WHILE,
-        FUNCTION_WHILE,
         METHOD,
-        METHOD_WHILE,
         INITIALIZER,
         STATIC_METHOD,
     }
@@ -36,8 +54,64 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         SUBCLASS
     }
 
-    public Resolver(Interpreter interpreter) {
-        this.interpreter = interpreter;
+    /**
+     * 一个函数（或顶层代码）的调用帧。作用域结束后它的槽位可以给后面的作用域复用，
+     * size 是同时存在的局部变量最多有几个
+     */
+    private static final class Frame {
+        final Frame enclosing;
+        int size = 0;
+        int next = 0;
+        // 闭包创建时按顺序捕获的变量：不小于 0 是外层函数帧里的槽位，-1 - i 是外层函数的第 i 个 upvalue
+        final List<Integer> upvalues = new ArrayList<>();
+        final Map<Local, Integer> upvalueIndex = new HashMap<>();
+
+        Frame(Frame enclosing) {
+            this.enclosing = enclosing;
+        }
+    }
+
+    private static final class Scope {
+        final Frame frame;
+        final Map<String, Local> locals = new HashMap<>();
+        // 按声明顺序
+        final List<Local> declared = new ArrayList<>();
+        // 开始时的空闲槽位，结束时还回去
+        final int base;
+
+        Scope(Frame frame) {
+            this.frame = frame;
+            this.base = frame.next;
+        }
+    }
+
+    /**
+     * 作用域里的一个局部变量，声明时就分配帧内槽位。作用域结束时才知道是否被捕获，
+     * 再写回声明和同一函数里的引用
+     */
+    private static final class Local {
+        final Frame frame;
+        final int slot;
+        boolean defined = false;
+        boolean captured = false;
+        // 声明它的 var/fun/class 语句；参数、this 和 super 为 null
+        Stmt declaration;
+        final List<Expr> uses = new ArrayList<>();
+
+        Local(Frame frame, int slot) {
+            this.frame = frame;
+            this.slot = slot;
+        }
+    }
+
+    public Resolver() {
+    }
+
+    /**
+     * 顶层代码的调用帧大小，解释器执行这批语句前按它预留
+     */
+    int frameSize() {
+        return script.size;
     }
 
     @Override
@@ -52,7 +126,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     public Void visitClassStmt(Stmt.Class stmt) {
         ClassType enclosingClass = currentClass;
         currentClass = ClassType.CLASS;
-        declare(stmt.name);
+        declare(stmt.name, stmt);
         define(stmt.name);
         if (stmt.superclass != null && stmt.name.lexeme.equals(stmt.superclass.name.lexeme)) {
             Lox.error(stmt.superclass.name,
@@ -65,10 +139,11 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         }
         if (stmt.superclass != null) {
             beginScope();
-            scopes.peek().put("super", true);
+            // 方法总是通过 upvalue 引用 super，所以它一定被捕获
+            Local local = declareImplicit("super");
+            local.captured = true;
+            stmt.superSlot = local.slot;
         }
-        beginScope();
-        scopes.peek().put("this", true);
         for (Stmt.Function method: stmt.methods) {
             FunctionType declaration = FunctionType.METHOD;
             if (method.name.lexeme.equals("init")) {
@@ -86,7 +161,6 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             FunctionType declaration = FunctionType.METHOD;
             resolveFunction(method, declaration);
         }
-        endScope();
         if (stmt.superclass != null) endScope();
         currentClass = enclosingClass;
         return null;
@@ -100,7 +174,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitVarStmt(Stmt.Var stmt) {
-        declare(stmt.name);
+        declare(stmt.name, stmt);
         if (stmt.initializer != null) {
             resolve(stmt.initializer);
         }
@@ -110,33 +184,81 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitVariableExpr(Expr.Variable expr) {
-        if (!scopes.isEmpty() &&
-        scopes.peek().get(expr.name.lexeme) == Boolean.FALSE) {
+        if (!scopes.isEmpty() && scopes.peek().locals.containsKey(expr.name.lexeme) &&
+        !scopes.peek().locals.get(expr.name.lexeme).defined) {
             Lox.error(expr.name, "不能在初始化时读取局部变量本身。");
         }
-        resolveLocal(expr, expr.name);
+        resolveLocal(expr, expr.name.lexeme);
         return null;
     }
 
-    private void resolveLocal(Expr expr, Token name) {
+    private void resolveLocal(Expr expr, String name) {
+        Local local = find(name);
+        if (local == null) return;
+        if (local.frame == frame) {
+            local.uses.add(expr);
+        } else {
+            local.captured = true;
+            bind(expr, UPVALUE, upvalue(frame, local));
+        }
+    }
+
+    private Local find(String name) {
         for (int i = scopes.size() - 1; i >= 0; i--) {
-            if (scopes.get(i).containsKey(name.lexeme)) {
-                interpreter.resolve(expr, scopes.size() - 1 - i);
-                return;
-            }
+            Local local = scopes.get(i).locals.get(name);
+            if (local != null) return local;
+        }
+        return null;
+    }
+
+    /**
+     * local 在 frame 这个函数的闭包里的下标。frame 直接外层声明的变量从外层帧里取，
+     * 更外层的先变成外层函数的 upvalue，再从那里转手
+     */
+    private static int upvalue(Frame frame, Local local) {
+        Integer index = frame.upvalueIndex.get(local);
+        if (index != null) return index;
+        int capture = frame.enclosing == local.frame ? local.slot : -1 - upvalue(frame.enclosing, local);
+        frame.upvalues.add(capture);
+        frame.upvalueIndex.put(local, frame.upvalues.size() - 1);
+        return frame.upvalues.size() - 1;
+    }
+
+    /**
+     * 把解析结果直接记在节点上，执行时读字段即可。找不到的是全局变量，binding 保持 GLOBAL。
+     * super 表达式上记的是它用到的 this
+     */
+    private static void bind(Expr expr, int binding, int slot) {
+        switch (expr.kind) {
+            case Expr.VARIABLE:
+                ((Expr.Variable) expr).binding = binding;
+                ((Expr.Variable) expr).slot = slot;
+                break;
+            case Expr.ASSIGN:
+                ((Expr.Assign) expr).binding = binding;
+                ((Expr.Assign) expr).slot = slot;
+                break;
+            case Expr.THIS:
+                ((Expr.This) expr).binding = binding;
+                ((Expr.This) expr).slot = slot;
+                break;
+            case Expr.SUPER:
+                ((Expr.Super) expr).thisBinding = binding;
+                ((Expr.Super) expr).thisSlot = slot;
+                break;
         }
     }
 
     @Override
     public Void visitAssignExpr(Expr.Assign expr) {
         resolve(expr.value);
-        resolveLocal(expr, expr.name);
+        resolveLocal(expr, expr.name.lexeme);
         return null;
     }
 
     @Override
     public Void visitFunctionStmt(Stmt.Function stmt) {
-        declare(stmt.name);
+        declare(stmt.name, stmt);
         define(stmt.name);
         resolveFunction(stmt, FunctionType.FUNCTION);
         return null;
@@ -166,7 +288,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitReturnStmt(Stmt.Return stmt) {
-        if (currentFunction == FunctionType.NONE || FunctionType.WHILE == currentFunction) {
+        if (currentFunction == FunctionType.NONE) {
             Lox.error(stmt.token, "Can't return from top-level code.");
         }
 
@@ -176,23 +298,34 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
                         "Can't return a value from an initializer.");
             }
             resolve(stmt.value);
+            // return f(...)：调用完直接返回，解释器退掉当前调用帧后再执行它，见 Interpreter.tailCall
+            if (stmt.value.kind == Expr.CALL) ((Expr.Call) stmt.value).tail = true;
         }
         return null;
     }
 
     @Override
     public Void visitWhileStmt(Stmt.While stmt) {
-        FunctionType enclosingFunction = currentFunction;
-        if (enclosingFunction == FunctionType.FUNCTION) {
-            currentFunction = FunctionType.FUNCTION_WHILE;
-        } else if (enclosingFunction == FunctionType.METHOD) {
-            currentFunction = FunctionType.METHOD_WHILE;
-        } else {
-            currentFunction = FunctionType.WHILE;
-        }
+        boolean enclosingLoop = inLoop;
+        inLoop = true;
         resolve(stmt.condition);
         resolve(stmt.body);
-        currentFunction = enclosingFunction;
+        inLoop = enclosingLoop;
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        // 初始化语句声明的变量只在这个循环里可见
+        beginScope();
+        if (stmt.initializer != null) resolve(stmt.initializer);
+        boolean enclosingLoop = inLoop;
+        inLoop = true;
+        resolve(stmt.condition);
+        resolve(stmt.body);
+        if (stmt.increment != null) resolve(stmt.increment);
+        inLoop = enclosingLoop;
+        endScope();
         return null;
     }
 
@@ -245,8 +378,13 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         } else if (currentClass != ClassType.SUBCLASS) {
             Lox.error(expr.keyword,
                     "Can't use 'super' in a class with no superclass.");
+        } else if (currentFunction == FunctionType.STATIC_METHOD) {
+            Lox.error(expr.keyword, "不能在静态方法使用'super'关键字。");
         }
-        resolveLocal(expr, expr.keyword);
+        // 方法是单独的函数，super 总是来自外层
+        Local local = find("super");
+        if (local != null) expr.slot = upvalue(frame, local);
+        resolveLocal(expr, "this");
         return null;
     }
 
@@ -261,7 +399,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             return null;
         }
 
-        resolveLocal(expr, expr.keyword);
+        resolveLocal(expr, "this");
         return null;
     }
 
@@ -273,16 +411,17 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitBreakStmt(Stmt.Break stmt) {
-        if (currentFunction == FunctionType.NONE || FunctionType.FUNCTION == currentFunction || FunctionType.METHOD == currentFunction) {
-            Lox.error(stmt.token, "Can't break from top-level code.");
+        if (!inLoop) {
+            // Parser 把 continue 也解析成 Break
+            Lox.error(stmt.token, "Can't " + stmt.token.lexeme + " outside of a loop.");
         }
         return null;
     }
 
     @Override
     public Void visitContinueStmt(Stmt.Continue stmt) {
-        if (currentFunction == FunctionType.NONE || FunctionType.FUNCTION == currentFunction || FunctionType.METHOD == currentFunction) {
-            Lox.error(stmt.token, "Can't continue from top-level code.");
+        if (!inLoop) {
+            Lox.error(stmt.token, "Can't continue outside of a loop.");
         }
         return null;
     }
@@ -305,14 +444,20 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     public Void visitLambdaExpr(Expr.Lambda expr) {
         FunctionType enclosingFunction = currentFunction;
         currentFunction = FunctionType.FUNCTION;
+        boolean enclosingLoop = inLoop;
+        inLoop = false;
+        Frame enclosingFrame = frame;
+        frame = new Frame(enclosingFrame);
         beginScope();
-        for (Token param: expr.params) {
-            declare(param);
-            define(param);
-        }
+        List<Local> params = declareParams(expr.params, new ArrayList<>());
         resolve(expr.body);
+        expr.boxedParams = boxed(params);
         endScope();
+        expr.frameSize = frame.size;
+        expr.upvalues = upvalues(frame);
+        frame = enclosingFrame;
         currentFunction = enclosingFunction;
+        inLoop = enclosingLoop;
         return null;
     }
 
@@ -320,31 +465,100 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     private void resolveFunction(Stmt.Function function, FunctionType type) {
         FunctionType enclosingFunction = currentFunction;
         currentFunction = type;
+        boolean enclosingLoop = inLoop;
+        inLoop = false;
+        Frame enclosingFrame = frame;
+        frame = new Frame(enclosingFrame);
 
         beginScope();
-        for (Token param: function.params) {
-            declare(param);
-            define(param);
-        }
+        List<Local> params = new ArrayList<>();
+        // 方法的 0 号槽是 this，参数从 1 号开始
+        function.hasThis = type == FunctionType.METHOD || type == FunctionType.INITIALIZER;
+        if (function.hasThis) params.add(declareImplicit("this"));
+        declareParams(function.params, params);
         resolve(function.body);
+        function.boxedParams = boxed(params);
         endScope();
+        function.frameSize = frame.size;
+        function.upvalues = upvalues(frame);
+        frame = enclosingFrame;
         currentFunction = enclosingFunction;
+        inLoop = enclosingLoop;
     }
 
-    private void declare(Token name) {
-        if (scopes.isEmpty()) return;
-        Map<String, Boolean> scope = scopes.peek();
-        if (scope.containsKey(name.lexeme)) {
+    private List<Local> declareParams(List<Token> params, List<Local> locals) {
+        for (Token param : params) {
+            Local local = declare(param, null);
+            define(param);
+            if (local != null) locals.add(local);
+        }
+        return locals;
+    }
+
+    /**
+     * 被捕获的参数（和 this）的槽位，函数入口把它们的值装进 Upvalue
+     */
+    private static int[] boxed(List<Local> params) {
+        int count = 0;
+        for (Local local : params) {
+            if (local.captured) count++;
+        }
+        int[] slots = new int[count];
+        count = 0;
+        for (Local local : params) {
+            if (local.captured) slots[count++] = local.slot;
+        }
+        return slots;
+    }
+
+    private static int[] upvalues(Frame frame) {
+        int[] upvalues = new int[frame.upvalues.size()];
+        for (int i = 0; i < upvalues.length; i++) {
+            upvalues[i] = frame.upvalues.get(i);
+        }
+        return upvalues;
+    }
+
+    private Local declare(Token name, Stmt declaration) {
+        if (scopes.isEmpty()) return null;
+        Scope scope = scopes.peek();
+        if (scope.locals.containsKey(name.lexeme)) {
             Lox.error(name,
                     "Already a variable with this name in this scope.");
+            return null;
         }
-        scope.put(name.lexeme, false);
+        Local local = allocate(scope);
+        local.declaration = declaration;
+        scope.locals.put(name.lexeme, local);
+        scope.declared.add(local);
+        return local;
     }
 
     private void define(Token name) {
         if (scopes.isEmpty()) return;
-        scopes.peek().put(name.lexeme, true);
+        Local local = scopes.peek().locals.get(name.lexeme);
+        if (local != null) local.defined = true;
+    }
+
+    /**
+     * 在当前作用域里声明 this 或 super
+     */
+    private Local declareImplicit(String name) {
+        Scope scope = scopes.peek();
+        Local local = allocate(scope);
+        local.defined = true;
+        scope.locals.put(name, local);
+        scope.declared.add(local);
+        return local;
     }
+
+    private static Local allocate(Scope scope) {
+        Frame frame = scope.frame;
+        Local local = new Local(frame, frame.next++);
+        frame.size = Math.max(frame.size, frame.next);
+        return local;
+    }
+
     void resolve(List<Stmt> statements) {
         for (Stmt statement: statements) {
             resolve(statement);
@@ -360,10 +574,39 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     }
 
     private void beginScope() {
-        scopes.push(new HashMap<String, Boolean>());
+        scopes.push(new Scope(frame));
     }
 
+    /**
+     * 结束作用域：变量是否被捕获已经确定，写回声明和引用，槽位留给后面的作用域
+     */
     private void endScope() {
-        scopes.pop();
+        Scope scope = scopes.pop();
+        for (Local local : scope.declared) {
+            if (local.declaration != null) {
+                bindDeclaration(local.declaration, local.slot, local.captured);
+            }
+            for (Expr use : local.uses) {
+                bind(use, local.captured ? CELL : FRAME, local.slot);
+            }
+        }
+        scope.frame.next = scope.base;
+    }
+
+    private static void bindDeclaration(Stmt declaration, int slot, boolean captured) {
+        switch (declaration.kind) {
+            case Stmt.VAR:
+                ((Stmt.Var) declaration).slot = slot;
+                ((Stmt.Var) declaration).captured = captured;
+                break;
+            case Stmt.FUNCTION:
+                ((Stmt.Function) declaration).slot = slot;
+                ((Stmt.Function) declaration).captured = captured;
+                break;
+            case Stmt.CLASS:
+                ((Stmt.Class) declaration).slot = slot;
+                ((Stmt.Class) declaration).captured = captured;
+                break;
+        }
     }
 }
@@ -26,6 +26,8 @@ public class Scanner {
     private int line = 1;
 
     private static final Map<String, TokenType> keywords;
+    // 关键字的符号编号 -> 类型，不是关键字的编号为 null 或越界
+    private static final TokenType[] keywordTypes;
     static {
         keywords = new HashMap<>();
         keywords.put("and",    AND);
@@ -47,6 +49,13 @@ public class Scanner {
         keywords.put("do",  DO);
         keywords.put("break", BREAK);
         keywords.put("continue", CONTINUE);
+
+        int max = 0;
+        for (String keyword : keywords.keySet()) max = Math.max(max, Symbols.intern(keyword));
+        keywordTypes = new TokenType[max + 1];
+        for (Map.Entry<String, TokenType> entry : keywords.entrySet()) {
+            keywordTypes[Symbols.intern(entry.getKey())] = entry.getValue();
+        }
     }
 
     Scanner(String source) {
@@ -178,11 +187,11 @@ public class Scanner {
 
     private void identifier() {
         while (isAlphaNumeric(peek())) advance();
-        // 看是关键字还是普通的变量名之类的
-        String text = source.substring(start, current);
-        TokenType type = keywords.get(text);
+        // 同名的标识符共用符号表里的编号和名字，看编号是关键字还是普通的变量名之类的
+        int symbol = Symbols.intern(source, start, current);
+        TokenType type = symbol < keywordTypes.length ? keywordTypes[symbol] : null;
         if (type == null) type = IDENTIFIER;
-        addToken(type);
+        tokens.add(new Token(type, Symbols.name(symbol), null, line, symbol));
     }
 
     private boolean isAlpha(char c) {
@@ -201,9 +210,17 @@ public class Scanner {
             // 消耗掉 . 号
             advance();
             while (isDigit(peek())) advance();
+            addToken(NUMBER, Double.parseDouble(source.substring(start, current)));
+            return;
         }
 
-        addToken(NUMBER, Double.parseDouble(source.substring(start, current)));
+        // 没有小数部分的是整数，超出 long 范围的还当浮点数
+        String text = source.substring(start, current);
+        try {
+            addToken(NUMBER, Long.parseLong(text));
+        } catch (NumberFormatException e) {
+            addToken(NUMBER, Double.parseDouble(text));
+        }
     }
     private void string() {
         while(peek() != '"' && !isAtEnd()) {
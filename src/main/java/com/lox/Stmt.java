@@ -2,10 +2,29 @@ package com.lox;
 
 import java.util.List;
 
-abstract class Stmt {
+public abstract class Stmt {
+
+    public static final int BLOCK = 0;
+    public static final int CLASS = 1;
+    public static final int EXPRESSION = 2;
+    public static final int FUNCTION = 3;
+    public static final int IF = 4;
+    public static final int PRINT = 5;
+    public static final int VAR = 6;
+    public static final int WHILE = 7;
+    public static final int BREAK = 8;
+    public static final int CONTINUE = 9;
+    public static final int RETURN = 10;
+    public static final int FOR = 11;
+
+    public final int kind;
+
+    protected Stmt(int kind) {
+        this.kind = kind;
+    }
 
-    abstract <R> R accept(Visitor<R> visitor);
-    interface Visitor<R> {
+    public abstract <R> R accept(Visitor<R> visitor);
+    public interface Visitor<R> {
         R visitBlockStmt(Block stmt);
         R visitClassStmt(Class stmt);
         R visitExpressionStmt(Expression stmt);
@@ -17,21 +36,24 @@ abstract class Stmt {
         R visitBreakStmt(Break stmt);
         R visitContinueStmt(Continue stmt);
         R visitReturnStmt(Return stmt);
+        R visitForStmt(For stmt);
     }
-    static class Block extends Stmt{
-        Block(List<Stmt> statements) {
+    public static class Block extends Stmt{
+        public Block(List<Stmt> statements) {
+            super(BLOCK);
             this.statements = statements;
         }
 
-        final List<Stmt> statements;
+        public final List<Stmt> statements;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitBlockStmt(this);
         }
     }
-    static class Class extends Stmt{
-        Class(Token name, List<Stmt.Function> methods, List<Stmt.Function> staticMethods, List<Stmt.Function> getter, Expr.Variable superclass) {
+    public static class Class extends Stmt{
+        public Class(Token name, List<Stmt.Function> methods, List<Stmt.Function> staticMethods, List<Stmt.Function> getter, Expr.Variable superclass) {
+            super(CLASS);
             this.name = name;
             this.methods = methods;
             this.staticMethods = staticMethods;
@@ -39,137 +61,179 @@ abstract class Stmt {
             this.superclass = superclass;
         }
 
-        final Token name;
-        final List<Stmt.Function> methods;
-        final List<Stmt.Function> staticMethods;
-        final List<Stmt.Function> getter;
-        final Expr.Variable superclass;
+        public final Token name;
+        public final List<Stmt.Function> methods;
+        public final List<Stmt.Function> staticMethods;
+        public final List<Stmt.Function> getter;
+        public final Expr.Variable superclass;
+        public int slot = -1;
+        public boolean captured;
+        public int superSlot;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitClassStmt(this);
         }
     }
-    static class Expression extends Stmt{
-        Expression(Expr expression) {
+    public static class Expression extends Stmt{
+        public Expression(Expr expression) {
+            super(EXPRESSION);
             this.expression = expression;
         }
 
-        final Expr expression;
+        public final Expr expression;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitExpressionStmt(this);
         }
     }
-    static class Function extends Stmt{
-        Function(Token name, List<Token> params, List<Stmt> body) {
+    public static class Function extends Stmt{
+        public Function(Token name, List<Token> params, List<Stmt> body) {
+            super(FUNCTION);
             this.name = name;
             this.params = params;
             this.body = body;
         }
 
-        final Token name;
-        final List<Token> params;
-        final List<Stmt> body;
+        public final Token name;
+        public final List<Token> params;
+        public final List<Stmt> body;
+        public int slot = -1;
+        public boolean captured;
+        public boolean hasThis;
+        public int frameSize;
+        public int[] upvalues;
+        public int[] boxedParams;
+        public FunctionProfile profile;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitFunctionStmt(this);
         }
     }
-    static class If extends Stmt{
-        If(Expr condition, Stmt thenBranch, Stmt elseBranch) {
+    public static class If extends Stmt{
+        public If(Expr condition, Stmt thenBranch, Stmt elseBranch) {
+            super(IF);
             this.condition = condition;
             this.thenBranch = thenBranch;
             this.elseBranch = elseBranch;
         }
 
-        final Expr condition;
-        final Stmt thenBranch;
-        final Stmt elseBranch;
+        public final Expr condition;
+        public final Stmt thenBranch;
+        public final Stmt elseBranch;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitIfStmt(this);
         }
     }
-    static class Print extends Stmt{
-        Print(Expr expression) {
+    public static class Print extends Stmt{
+        public Print(Expr expression) {
+            super(PRINT);
             this.expression = expression;
         }
 
-        final Expr expression;
+        public final Expr expression;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitPrintStmt(this);
         }
     }
-    static class Var extends Stmt{
-        Var(Token name, Expr initializer) {
+    public static class Var extends Stmt{
+        public Var(Token name, Expr initializer) {
+            super(VAR);
             this.name = name;
             this.initializer = initializer;
         }
 
-        final Token name;
-        final Expr initializer;
+        public final Token name;
+        public final Expr initializer;
+        public int slot = -1;
+        public boolean captured;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitVarStmt(this);
         }
     }
-    static class While extends Stmt{
-        While(Expr condition, Stmt body) {
+    public static class While extends Stmt{
+        public While(Expr condition, Stmt body) {
+            super(WHILE);
             this.condition = condition;
             this.body = body;
         }
 
-        final Expr condition;
-        final Stmt body;
+        public final Expr condition;
+        public final Stmt body;
+        public LoopProfile profile;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitWhileStmt(this);
         }
     }
-    static class Break extends Stmt{
-        Break(Token token) {
+    public static class Break extends Stmt{
+        public Break(Token token) {
+            super(BREAK);
             this.token = token;
         }
 
-        final Token token;
+        public final Token token;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitBreakStmt(this);
         }
     }
-    static class Continue extends Stmt{
-        Continue(Token token) {
+    public static class Continue extends Stmt{
+        public Continue(Token token) {
+            super(CONTINUE);
             this.token = token;
         }
 
-        final Token token;
+        public final Token token;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitContinueStmt(this);
         }
     }
-    static class Return extends Stmt{
-        Return(Token token, Expr value) {
+    public static class Return extends Stmt{
+        public Return(Token token, Expr value) {
+            super(RETURN);
             this.token = token;
             this.value = value;
         }
 
-        final Token token;
-        final Expr value;
+        public final Token token;
+        public final Expr value;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitReturnStmt(this);
         }
     }
+    public static class For extends Stmt{
+        public For(Stmt initializer, Expr condition, Expr increment, Stmt body) {
+            super(FOR);
+            this.initializer = initializer;
+            this.condition = condition;
+            this.increment = increment;
+            this.body = body;
+        }
+
+        public final Stmt initializer;
+        public final Expr condition;
+        public final Expr increment;
+        public final Stmt body;
+        public LoopProfile profile;
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitForStmt(this);
+        }
+    }
 }
@@ -0,0 +1,392 @@
+package com.lox;
+
+/**
+ * 预先链接好的语句节点，和 {@link ExprNode} 一起由 {@link NodeCompiler} 生成。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className StmtNode
+ * @date 2026/10/18 14:10
+ **/
+abstract class StmtNode {
+
+    abstract void execute();
+
+    static final class Expression extends StmtNode implements NodeParent {
+        ExprNode expression;
+
+        Expression(ExprNode expression) {
+            this.expression = ExprNode.adopt(this, expression);
+        }
+
+        @Override
+        public void replaceChild(ExprNode child, ExprNode replacement) {
+            if (expression == child) expression = replacement;
+        }
+
+        @Override
+        void execute() {
+            expression.evaluate();
+        }
+    }
+
+    static final class Print extends StmtNode implements NodeParent {
+        ExprNode expression;
+        final Interpreter interpreter;
+
+        Print(ExprNode expression, Interpreter interpreter) {
+            this.expression = ExprNode.adopt(this, expression);
+            this.interpreter = interpreter;
+        }
+
+        @Override
+        public void replaceChild(ExprNode child, ExprNode replacement) {
+            if (expression == child) expression = replacement;
+        }
+
+        @Override
+        void execute() {
+            System.out.println(interpreter.stringify(expression.evaluate()));
+        }
+    }
+
+    static final class Var extends StmtNode implements NodeParent {
+        final Token name;
+        // 调用帧里的槽位，小于 0 时是全局变量
+        final int slot;
+        // 被内层函数捕获，槽位里放 Upvalue
+        final boolean captured;
+        ExprNode initializer;
+        final Interpreter interpreter;
+
+        Var(Token name, int slot, boolean captured, ExprNode initializer, Interpreter interpreter) {
+            this.name = name;
+            this.slot = slot;
+            this.captured = captured;
+            this.initializer = ExprNode.adopt(this, initializer);
+            this.interpreter = interpreter;
+        }
+
+        @Override
+        public void replaceChild(ExprNode child, ExprNode replacement) {
+            if (initializer == child) initializer = replacement;
+        }
+
+        @Override
+        void execute() {
+            if (captured) {
+                Upvalue cell = new Upvalue(null);
+                interpreter.stack[interpreter.fp + slot] = cell;
+                if (initializer != null) cell.value = initializer.evaluate();
+                return;
+            }
+            Object value = null;
+            if (initializer != null) {
+                value = initializer.evaluate();
+            }
+            define(interpreter, name, slot, value);
+        }
+    }
+
+    static void define(Interpreter interpreter, Token name, int slot, Object value) {
+        if (slot >= 0) {
+            interpreter.stack[interpreter.fp + slot] = value;
+        } else {
+            interpreter.globals.define(name, value);
+        }
+    }
+
+    /**
+     * 顺序执行一串语句。用于脚本顶层、函数体和块，块里的变量也在调用帧里，不需要单独的节点
+     */
+    static final class Body extends StmtNode {
+        final StmtNode[] statements;
+        final Interpreter interpreter;
+
+        Body(StmtNode[] statements, Interpreter interpreter) {
+            this.statements = statements;
+            this.interpreter = interpreter;
+        }
+
+        @Override
+        void execute() {
+            for (StmtNode statement : statements) {
+                statement.execute();
+                // break、continue、return 之后的语句不再执行
+                if (interpreter.completion != Interpreter.NORMAL) return;
+            }
+        }
+    }
+
+    static final class If extends StmtNode implements NodeParent {
+        ExprNode condition;
+        final StmtNode thenBranch;
+        final StmtNode elseBranch;
+
+        If(ExprNode condition, StmtNode thenBranch, StmtNode elseBranch) {
+            this.condition = ExprNode.adopt(this, condition);
+            this.thenBranch = thenBranch;
+            this.elseBranch = elseBranch;
+        }
+
+        @Override
+        public void replaceChild(ExprNode child, ExprNode replacement) {
+            if (condition == child) condition = replacement;
+        }
+
+        @Override
+        void execute() {
+            if (ExprNode.isTruthy(condition.evaluate())) {
+                thenBranch.execute();
+            } else if (elseBranch != null) {
+                elseBranch.execute();
+            }
+        }
+    }
+
+    static final class While extends StmtNode implements NodeParent {
+        ExprNode condition;
+        final StmtNode body;
+        // 所在函数，回边次数记到它上面用于分层；顶层循环为 null
+        final FunctionProfile function;
+        // OSR 用的回边计数，循环够热时切换到 JIT 编译的版本
+        final LoopProfile loop;
+        final Interpreter interpreter;
+
+        While(ExprNode condition, StmtNode body, FunctionProfile function, LoopProfile loop, Interpreter interpreter) {
+            this.condition = ExprNode.adopt(this, condition);
+            this.body = body;
+            this.function = function;
+            this.loop = loop;
+            this.interpreter = interpreter;
+        }
+
+        @Override
+        public void replaceChild(ExprNode child, ExprNode replacement) {
+            if (condition == child) condition = replacement;
+        }
+
+        @Override
+        void execute() {
+            if (loop.ready(false)) {
+                loop.run(interpreter);
+                return;
+            }
+            int backEdges = 0;
+            try {
+                while (ExprNode.isTruthy(condition.evaluate())) {
+                    backEdges++;
+                    body.execute();
+                    if (interpreter.exitLoop()) break;
+                    if (loop.backEdge(interpreter, false, function)) {
+                        loop.run(interpreter);
+                        return;
+                    }
+                }
+            } finally {
+                if (function != null) function.addBackEdges(backEdges);
+            }
+        }
+    }
+
+    static final class For extends StmtNode implements NodeParent {
+        // OSR 编译的循环不带初始化语句，为 null
+        final StmtNode initializer;
+        ExprNode condition;
+        ExprNode increment;
+        final StmtNode body;
+        final FunctionProfile function;
+        final LoopProfile loop;
+        final Interpreter interpreter;
+
+        For(StmtNode initializer, ExprNode condition, ExprNode increment, StmtNode body,
+            FunctionProfile function, LoopProfile loop, Interpreter interpreter) {
+            this.initializer = initializer;
+            this.condition = ExprNode.adopt(this, condition);
+            this.increment = ExprNode.adopt(this, increment);
+            this.body = body;
+            this.function = function;
+            this.loop = loop;
+            this.interpreter = interpreter;
+        }
+
+        @Override
+        public void replaceChild(ExprNode child, ExprNode replacement) {
+            if (condition == child) {
+                condition = replacement;
+            } else if (increment == child) {
+                increment = replacement;
+            }
+        }
+
+        @Override
+        void execute() {
+            if (initializer != null) initializer.execute();
+            if (loop.ready(false)) {
+                loop.run(interpreter);
+                return;
+            }
+            int backEdges = 0;
+            try {
+                while (ExprNode.isTruthy(condition.evaluate())) {
+                    backEdges++;
+                    body.execute();
+                    if (interpreter.exitLoop()) break;
+                    if (increment != null) increment.evaluate();
+                    if (loop.backEdge(interpreter, false, function)) {
+                        loop.run(interpreter);
+                        return;
+                    }
+                }
+            } finally {
+                if (function != null) function.addBackEdges(backEdges);
+            }
+        }
+    }
+
+    static final class Break extends StmtNode {
+        final Interpreter interpreter;
+
+        Break(Interpreter interpreter) {
+            this.interpreter = interpreter;
+        }
+
+        @Override
+        void execute() {
+            interpreter.completion = Interpreter.BREAK;
+        }
+    }
+
+    static final class Continue extends StmtNode {
+        final Interpreter interpreter;
+
+        Continue(Interpreter interpreter) {
+            this.interpreter = interpreter;
+        }
+
+        @Override
+        void execute() {
+            interpreter.completion = Interpreter.CONTINUE;
+        }
+    }
+
+    static final class Return extends StmtNode implements NodeParent {
+        ExprNode value;
+        final Interpreter interpreter;
+
+        Return(ExprNode value, Interpreter interpreter) {
+            this.value = ExprNode.adopt(this, value);
+            this.interpreter = interpreter;
+        }
+
+        @Override
+        public void replaceChild(ExprNode child, ExprNode replacement) {
+            if (value == child) value = replacement;
+        }
+
+        @Override
+        void execute() {
+            Object result = null;
+            if (value != null) {
+                result = value.evaluate();
+                // 尾调用已经记在 completion 上
+                if (interpreter.completion == Interpreter.TAIL_CALL) return;
+            }
+            interpreter.returnValue = result;
+            interpreter.completion = Interpreter.RETURN;
+        }
+    }
+
+    static final class Function extends StmtNode {
+        final Stmt.Function declaration;
+        final FunctionProfile profile;
+        final Interpreter interpreter;
+
+        Function(Stmt.Function declaration, FunctionProfile profile, Interpreter interpreter) {
+            this.declaration = declaration;
+            this.profile = profile;
+            this.interpreter = interpreter;
+        }
+
+        @Override
+        void execute() {
+            if (declaration.captured) {
+                Upvalue cell = new Upvalue(null);
+                interpreter.stack[interpreter.fp + declaration.slot] = cell;
+                cell.value = new LoxFunction(declaration, interpreter.capture(declaration.upvalues), null, false, profile);
+                return;
+            }
+            define(interpreter, declaration.name, declaration.slot,
+                    new LoxFunction(declaration, interpreter.capture(declaration.upvalues), null, false, profile));
+        }
+    }
+
+    static final class Class extends StmtNode {
+        final Stmt.Class declaration;
+        final ExprNode superclass;
+        final FunctionProfile[] methods;
+        final FunctionProfile[] staticMethods;
+        final FunctionProfile[] getters;
+        final Interpreter interpreter;
+
+        Class(Stmt.Class declaration, ExprNode superclass, Interpreter interpreter, FunctionProfile[] methods,
+              FunctionProfile[] staticMethods, FunctionProfile[] getters) {
+            this.declaration = declaration;
+            this.superclass = superclass;
+            this.interpreter = interpreter;
+            this.methods = methods;
+            this.staticMethods = staticMethods;
+            this.getters = getters;
+        }
+
+        @Override
+        void execute() {
+            Object superValue = null;
+            if (superclass != null) {
+                superValue = superclass.evaluate();
+                if (!(superValue instanceof LoxClass)) {
+                    throw new RuntimeError(declaration.superclass.name, "Superclass must be a class.");
+                }
+            }
+            Object[] stack = interpreter.stack;
+            int fp = interpreter.fp;
+            Upvalue cell = null;
+            if (declaration.captured) {
+                cell = new Upvalue(null);
+                stack[fp + declaration.slot] = cell;
+            } else if (declaration.slot < 0) {
+                interpreter.globals.define(declaration.name, null);
+            }
+
+            if (superclass != null) {
+                stack[fp + declaration.superSlot] = new Upvalue(superValue);
+            }
+            SymbolMap<LoxFunction> methodMap = new SymbolMap<>();
+            for (int i = 0; i < methods.length; i++) {
+                Stmt.Function method = declaration.methods.get(i);
+                methodMap.put(method.name.symbol, new LoxFunction(method, interpreter.capture(method.upvalues), null,
+                        methods[i].isInitializer, methods[i]));
+            }
+            SymbolMap<LoxFunction> staticMap = new SymbolMap<>();
+            for (int i = 0; i < staticMethods.length; i++) {
+                Stmt.Function method = declaration.staticMethods.get(i);
+                staticMap.put(method.name.symbol, new LoxFunction(method, interpreter.capture(method.upvalues), null,
+                        false, staticMethods[i]));
+            }
+            SymbolMap<LoxFunction> getterMap = new SymbolMap<>();
+            for (int i = 0; i < getters.length; i++) {
+                Stmt.Function method = declaration.getter.get(i);
+                getterMap.put(method.name.symbol, new LoxGetterFunction(method, interpreter.capture(method.upvalues),
+                        null, false, getters[i]));
+            }
+            LoxClass klass = new LoxClass(declaration.name.lexeme, methodMap, staticMap, getterMap, (LoxClass) superValue);
+            if (cell != null) {
+                cell.value = klass;
+            } else if (declaration.slot >= 0) {
+                stack[fp + declaration.slot] = klass;
+            } else {
+                interpreter.globals.assign(declaration.name, klass);
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.lox;
+
+/**
+ * 以 {@link Symbols} 编号为键的哈希表，用作实例的字段和类的方法表。键是 int，查找不装箱，
+ * 也不调用 hashCode/equals；字段通常只有几个，开放寻址在一两次探测内就能找到。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className SymbolMap
+ * @date 2026/10/18 23:58
+ **/
+final class SymbolMap<V> {
+    // 存编号 + 1，0 表示空位
+    private int[] keys = new int[8];
+    private Object[] values = new Object[8];
+    private int size = 0;
+
+    @SuppressWarnings("unchecked")
+    V get(int symbol) {
+        int index = indexOf(symbol);
+        return index < 0 ? null : (V) values[index];
+    }
+
+    boolean containsKey(int symbol) {
+        return indexOf(symbol) >= 0;
+    }
+
+    void put(int symbol, V value) {
+        int mask = keys.length - 1;
+        int index = symbol & mask;
+        while (keys[index] != 0) {
+            if (keys[index] == symbol + 1) {
+                values[index] = value;
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = symbol + 1;
+        values[index] = value;
+        // 装载因子不超过 1/2
+        if (++size * 2 > keys.length) grow();
+    }
+
+    private int indexOf(int symbol) {
+        int[] keys = this.keys;
+        int mask = keys.length - 1;
+        int index = symbol & mask;
+        int key = symbol + 1;
+        while (true) {
+            int entry = keys[index];
+            if (entry == key) return index;
+            if (entry == 0) return -1;
+            index = (index + 1) & mask;
+        }
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new Object[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == 0) continue;
+            int index = (oldKeys[i] - 1) & mask;
+            while (keys[index] != 0) index = (index + 1) & mask;
+            keys[index] = oldKeys[i];
+            values[index] = oldValues[i];
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.lox;
+
+import java.util.Arrays;
+
+/**
+ * 标识符的符号表。Scanner 扫描到标识符（和关键字）时在这里登记，同名的标识符得到同一个编号和
+ * 同一个 String，记在 {@link Token#symbol} 上。全局环境、实例字段和类的方法表都按编号查找，
+ * 不用再对名字算哈希、逐字符比较。
+ * <p>
+ * 编号从 0 开始连续分配，整个进程共用一张表（REPL 里每次输入的同名变量编号相同），登记过的名字不会删除。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className Symbols
+ * @date 2026/10/18 23:58
+ **/
+final class Symbols {
+    // 编号 -> 名字
+    private static String[] names = new String[64];
+    private static int count = 0;
+    // 开放寻址的哈希表，存编号 + 1，0 表示空位
+    private static int[] table = new int[128];
+
+    /**
+     * 构造方法的名字
+     */
+    static final int INIT = intern("init");
+
+    private Symbols() {}
+
+    static String name(int symbol) {
+        return names[symbol];
+    }
+
+    static int intern(String name) {
+        return intern(name, 0, name.length());
+    }
+
+    /**
+     * text[start, end) 的编号，第一次出现时登记。已经登记过的名字不创建新的 String
+     */
+    static int intern(String text, int start, int end) {
+        int length = end - start;
+        int hash = 0;
+        for (int i = start; i < end; i++) hash = 31 * hash + text.charAt(i);
+        int mask = table.length - 1;
+        int index = mix(hash) & mask;
+        while (true) {
+            int entry = table[index];
+            if (entry == 0) break;
+            String name = names[entry - 1];
+            if (name.length() == length && name.regionMatches(0, text, start, length)) return entry - 1;
+            index = (index + 1) & mask;
+        }
+        int symbol = count++;
+        if (symbol == names.length) names = Arrays.copyOf(names, symbol * 2);
+        names[symbol] = text.substring(start, end);
+        table[index] = symbol + 1;
+        // 装载因子不超过 1/2
+        if (count * 2 > table.length) rehash();
+        return symbol;
+    }
+
+    private static void rehash() {
+        int[] grown = new int[table.length * 2];
+        int mask = grown.length - 1;
+        for (int i = 0; i < count; i++) {
+            int index = mix(names[i].hashCode()) & mask;
+            while (grown[index] != 0) index = (index + 1) & mask;
+            grown[index] = i + 1;
+        }
+        table = grown;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,22 @@
+package com.lox;
+
+import java.util.List;
+
+/**
+ * 可以尾调用的 Lox 函数（fun、方法和 lambda）。
+ * <p>
+ * call 执行完函数体后还要处理函数体最后留下的尾调用；invoke 只执行一次函数体，遇到 return f(...)
+ * 时返回 null，completion 为 TAIL_CALL，由外层 {@link Interpreter#runTailCalls} 接着执行。
+ * 参数不超过 4 个时用第二个 invoke，多出来的参数位置传 null。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className TailCallable
+ * @date 2026/10/18 23:50
+ **/
+interface TailCallable extends LoxCallable {
+
+    Object invoke(Interpreter interpreter, List<Object> arguments);
+
+    Object invoke(Interpreter interpreter, Object a0, Object a1, Object a2, Object a3);
+}
@@ -7,20 +7,27 @@ package com.lox;
  * @date 2023/9/8 09:53
  **/
 public class Token {
-    final TokenType type;
+    public final TokenType type;
     // 词位、语义
-    final String lexeme;
+    public final String lexeme;
     // 字面量
-    final Object literal;
+    public final Object literal;
 
     // 所在行
-    final int line;
+    public final int line;
+    // 标识符和关键字在 Symbols 里的编号，其余的词位为 -1
+    public final int symbol;
 
     Token(TokenType type, String lexeme, Object literal, int line) {
+        this(type, lexeme, literal, line, -1);
+    }
+
+    Token(TokenType type, String lexeme, Object literal, int line, int symbol) {
         this.type = type;
         this.lexeme = lexeme;
         this.literal = literal;
         this.line = line;
+        this.symbol = symbol;
     }
 
     public String toString() {
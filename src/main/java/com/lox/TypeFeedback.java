@@ -0,0 +1,49 @@
+package com.lox;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JIT 推测局部变量是数字时用的类型反馈，{@link FunctionProfile} 和 {@link LoopProfile} 各有一份，
+ * 按调用帧槽位记录。
+ * <p>
+ * 没有记录的槽位推测为整数（循环计数、下标这些最常见）。类型检查失败去优化时记下被检查的变量
+ * 实际是什么类型，重新编译时按它推测。整数和浮点数都见过的（比如从 0 开始累加浮点数的变量）
+ * 记为 {@link #NUMBER}；见过不是数字的值以后就不再推测它。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className TypeFeedback
+ * @date 2026/10/18 23:50
+ **/
+final class TypeFeedback {
+    /**
+     * 可能是整数也可能是浮点数：只在结果一定是浮点数的运算里按 double 参与计算
+     */
+    static final int NUMBER = 5;
+
+    // 调用帧槽位 -> ExprNode.DOUBLE / NUMBER / ExprNode.GENERIC，没有记录的是 ExprNode.LONG
+    private final Map<Integer, Integer> kinds = new HashMap<>();
+
+    /**
+     * 槽位上的变量推测的类型：ExprNode.LONG、ExprNode.DOUBLE 或 NUMBER，为 ExprNode.GENERIC 时不推测
+     */
+    int kindOf(int slot) {
+        Integer kind = kinds.get(slot);
+        return kind != null ? kind : ExprNode.LONG;
+    }
+
+    void observe(int slot, Object value) {
+        int seen = value instanceof Long ? ExprNode.LONG
+                : value instanceof Double ? ExprNode.DOUBLE : ExprNode.GENERIC;
+        int kind = kindOf(slot);
+        if (kind == seen || kind == ExprNode.GENERIC) return;
+        if (seen == ExprNode.GENERIC) {
+            kinds.put(slot, ExprNode.GENERIC);
+        } else if (kind == ExprNode.LONG) {
+            kinds.put(slot, seen);
+        } else {
+            kinds.put(slot, NUMBER);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.lox;
+
+/**
+ * 被内层函数捕获的局部变量。声明它的函数在调用帧的槽位里放这个对象，内层函数创建时把它拷进
+ * 自己的闭包，两边读写的都是 value，所以几个闭包捕获同一个变量时能看到彼此的修改。
+ * <p>
+ * 闭包只持有它用到的这几个对象，外层函数的其他局部变量不会因为闭包活着而留在内存里。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className Upvalue
+ * @date 2026/10/18 23:10
+ **/
+public final class Upvalue {
+    static final Upvalue[] NONE = new Upvalue[0];
+
+    public Object value;
+
+    Upvalue(Object value) {
+        this.value = value;
+    }
+}
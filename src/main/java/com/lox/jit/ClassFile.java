@@ -0,0 +1,203 @@
+package com.lox.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 最小的 class 文件生成器，只覆盖 JIT 用到的部分：常量池、无字段、若干方法。
+ * 版本号用 49（Java 5），这样不需要生成 StackMapTable，JVM 用类型推导校验字节码。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className ClassFile
+ * @date 2026/10/18 16:00
+ **/
+public final class ClassFile {
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_FINAL = 0x0010;
+    public static final int ACC_SUPER = 0x0020;
+
+    private static final int VERSION = 49;
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+
+    private final int access;
+    private final int thisClass;
+    private final int superClass;
+    private final List<byte[]> methods = new ArrayList<>();
+
+    public ClassFile(int access, String name, String superName) {
+        this.access = access;
+        this.thisClass = classRef(name);
+        this.superClass = classRef(superName);
+    }
+
+    // ---------------------------------------------------------------- 常量池
+
+    private interface Entry {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private int constant(String key, int slots, Entry entry) {
+        Integer index = poolIndex.get(key);
+        if (index != null) return index;
+        try {
+            entry.write(poolOut);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        int result = poolCount;
+        poolCount += slots;
+        if (poolCount > 0xFFFF) throw new JitBailout("常量池溢出");
+        poolIndex.put(key, result);
+        return result;
+    }
+
+    int utf8(String value) {
+        return constant("U" + value, 1, out -> {
+            out.writeByte(1);
+            out.writeUTF(value);
+        });
+    }
+
+    int classRef(String internalName) {
+        int name = utf8(internalName);
+        return constant("C" + internalName, 1, out -> {
+            out.writeByte(7);
+            out.writeShort(name);
+        });
+    }
+
+    int string(String value) {
+        int utf = utf8(value);
+        return constant("S" + value, 1, out -> {
+            out.writeByte(8);
+            out.writeShort(utf);
+        });
+    }
+
+    int integer(int value) {
+        return constant("I" + value, 1, out -> {
+            out.writeByte(3);
+            out.writeInt(value);
+        });
+    }
+
+    int doubleValue(double value) {
+        return constant("D" + Double.doubleToRawLongBits(value), 2, out -> {
+            out.writeByte(6);
+            out.writeDouble(value);
+        });
+    }
+
+    int longValue(long value) {
+        return constant("J" + value, 2, out -> {
+            out.writeByte(5);
+            out.writeLong(value);
+        });
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        int n = utf8(name);
+        int d = utf8(descriptor);
+        return constant("N" + name + ":" + descriptor, 1, out -> {
+            out.writeByte(12);
+            out.writeShort(n);
+            out.writeShort(d);
+        });
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        int c = classRef(owner);
+        int nt = nameAndType(name, descriptor);
+        return constant("M" + tag + owner + "." + name + ":" + descriptor, 1, out -> {
+            out.writeByte(tag);
+            out.writeShort(c);
+            out.writeShort(nt);
+        });
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(9, owner, name, descriptor);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(10, owner, name, descriptor);
+    }
+
+    int interfaceMethodRef(String owner, String name, String descriptor) {
+        return memberRef(11, owner, name, descriptor);
+    }
+
+    // ---------------------------------------------------------------- 方法
+
+    /**
+     * 新建一个方法体，写完指令后调用 {@link #addMethod} 加入本类
+     */
+    public Code newCode(int maxLocals) {
+        return new Code(this, maxLocals);
+    }
+
+    public void addMethod(int access, String name, String descriptor, Code code) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            int codeAttribute = utf8("Code");
+            byte[] body = code.toByteArray();
+            out.writeShort(access);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+            // 只有一个 Code 属性
+            out.writeShort(1);
+            out.writeShort(codeAttribute);
+            out.writeInt(2 + 2 + 4 + body.length + 2 + 2);
+            out.writeShort(code.maxStack());
+            out.writeShort(code.maxLocals());
+            out.writeInt(body.length);
+            out.write(body);
+            // 没有异常表，也没有子属性
+            out.writeShort(0);
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        methods.add(bytes.toByteArray());
+    }
+
+    public byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolCount);
+            out.write(pool.toByteArray());
+            out.writeShort(access);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            // 没有接口和字段
+            out.writeShort(0);
+            out.writeShort(0);
+            out.writeShort(methods.size());
+            for (byte[] method : methods) {
+                out.write(method);
+            }
+            // 没有类属性
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
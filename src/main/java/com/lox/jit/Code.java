@@ -0,0 +1,474 @@
+package com.lox.jit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 一个方法的字节码。每条指令都带着对操作数栈深度的影响，写的同时算出 max_stack。
+ * 跳转统一用 16 位偏移，方法体超过 32K 时放弃编译。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className Code
+ * @date 2026/10/18 16:10
+ **/
+public final class Code {
+    private static final int MAX_CODE = 32767;
+
+    // 本生成器用到的 JVM 指令
+    private static final int ACONST_NULL = 0x01;
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC = 0x12;
+    private static final int LDC_W = 0x13;
+    private static final int LDC2_W = 0x14;
+    private static final int LLOAD = 0x16;
+    private static final int ALOAD = 0x19;
+    private static final int AALOAD = 0x32;
+    private static final int LSTORE = 0x37;
+    private static final int ASTORE = 0x3A;
+    private static final int AASTORE = 0x53;
+    private static final int POP = 0x57;
+    private static final int POP2 = 0x58;
+    private static final int DUP = 0x59;
+    private static final int LADD = 0x61;
+    private static final int DADD = 0x63;
+    private static final int LSUB = 0x65;
+    private static final int DSUB = 0x67;
+    private static final int LMUL = 0x69;
+    private static final int DMUL = 0x6B;
+    private static final int LNEG = 0x75;
+    private static final int DNEG = 0x77;
+    private static final int LAND = 0x7F;
+    private static final int LOR = 0x81;
+    private static final int L2D = 0x8A;
+    private static final int LCMP = 0x94;
+    private static final int DCMPL = 0x97;
+    private static final int DCMPG = 0x98;
+    private static final int IFEQ = 0x99;
+    private static final int IFNE = 0x9A;
+    private static final int IFLT = 0x9B;
+    private static final int IFGE = 0x9C;
+    private static final int IFGT = 0x9D;
+    private static final int IFLE = 0x9E;
+    private static final int GOTO = 0xA7;
+    private static final int ARETURN = 0xB0;
+    private static final int RETURN = 0xB1;
+    private static final int GETSTATIC = 0xB2;
+    private static final int GETFIELD = 0xB4;
+    private static final int INVOKEVIRTUAL = 0xB6;
+    private static final int INVOKESPECIAL = 0xB7;
+    private static final int INVOKESTATIC = 0xB8;
+    private static final int INVOKEINTERFACE = 0xB9;
+    private static final int ANEWARRAY = 0xBD;
+    private static final int CHECKCAST = 0xC0;
+    private static final int INSTANCEOF = 0xC1;
+    private static final int IFNULL = 0xC6;
+    private static final int IFNONNULL = 0xC7;
+
+    /**
+     * 跳转目标。绑定之前的跳转先记下位置，绑定时回填偏移
+     */
+    public static final class Label {
+        private int position = -1;
+        // 跳到这里时的栈深度，-1 表示还不知道
+        private int stack = -1;
+        private final List<Integer> pending = new ArrayList<>();
+    }
+
+    private final ClassFile classFile;
+    private byte[] code = new byte[64];
+    private int count = 0;
+    private int stack = 0;
+    private int maxStack = 0;
+    private int maxLocals;
+    // 上一条是 goto/return 之后、下一个 label 之前的代码不可达，栈深度以 label 为准
+    private boolean reachable = true;
+
+    Code(ClassFile classFile, int maxLocals) {
+        this.classFile = classFile;
+        this.maxLocals = maxLocals;
+    }
+
+    int maxStack() {
+        return maxStack;
+    }
+
+    int maxLocals() {
+        return maxLocals;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(code, count);
+    }
+
+    // ---------------------------------------------------------------- 底层写入
+
+    private void u1(int b) {
+        if (count == code.length) {
+            code = Arrays.copyOf(code, count * 2);
+        }
+        code[count++] = (byte) b;
+        if (count > MAX_CODE) throw new JitBailout("方法体过大");
+    }
+
+    private void u2(int v) {
+        u1(v >> 8);
+        u1(v);
+    }
+
+    private void op(int opcode, int stackDelta) {
+        u1(opcode);
+        stack += stackDelta;
+        if (stack > maxStack) maxStack = stack;
+    }
+
+    private void jump(int opcode, int stackDelta, Label label) {
+        int at = count;
+        op(opcode, stackDelta);
+        mergeStack(label);
+        if (label.position >= 0) {
+            u2(label.position - at);
+        } else {
+            label.pending.add(at);
+            u2(0);
+        }
+    }
+
+    private void mergeStack(Label label) {
+        if (label.stack < 0) {
+            label.stack = stack;
+        } else if (label.stack != stack) {
+            throw new IllegalStateException("跳转两边的栈深度不一致");
+        }
+    }
+
+    public void bind(Label label) {
+        label.position = count;
+        if (reachable) {
+            mergeStack(label);
+        } else if (label.stack >= 0) {
+            stack = label.stack;
+        }
+        reachable = true;
+        for (int at : label.pending) {
+            int offset = count - at;
+            code[at + 1] = (byte) (offset >> 8);
+            code[at + 2] = (byte) offset;
+        }
+        label.pending.clear();
+    }
+
+    // ---------------------------------------------------------------- 局部变量
+
+    public int newLocal() {
+        if (maxLocals == 0xFFFF) throw new JitBailout("局部变量过多");
+        return maxLocals++;
+    }
+
+    public void aload(int slot) {
+        if (slot > 0xFF) throw new JitBailout("局部变量过多");
+        op(ALOAD, 1);
+        u1(slot);
+    }
+
+    public void astore(int slot) {
+        if (slot > 0xFF) throw new JitBailout("局部变量过多");
+        op(ASTORE, -1);
+        u1(slot);
+    }
+
+    /**
+     * long 占 slot 和 slot + 1 两个槽位
+     */
+    public void lload(int slot) {
+        if (slot > 0xFE) throw new JitBailout("局部变量过多");
+        op(LLOAD, 2);
+        u1(slot);
+    }
+
+    public void lstore(int slot) {
+        if (slot > 0xFE) throw new JitBailout("局部变量过多");
+        op(LSTORE, -2);
+        u1(slot);
+    }
+
+    // ---------------------------------------------------------------- 常量
+
+    public void aconstNull() {
+        op(ACONST_NULL, 1);
+    }
+
+    public void iconst(int value) {
+        if (value >= -1 && value <= 5) {
+            op(ICONST_0 + value, 1);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            op(BIPUSH, 1);
+            u1(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            op(SIPUSH, 1);
+            u2(value);
+        } else {
+            ldc(classFile.integer(value));
+        }
+    }
+
+    public void ldcString(String value) {
+        ldc(classFile.string(value));
+    }
+
+    public void ldcDouble(double value) {
+        op(LDC2_W, 2);
+        u2(classFile.doubleValue(value));
+    }
+
+    public void ldcLong(long value) {
+        op(LDC2_W, 2);
+        u2(classFile.longValue(value));
+    }
+
+    private void ldc(int index) {
+        if (index <= 0xFF) {
+            op(LDC, 1);
+            u1(index);
+        } else {
+            op(LDC_W, 1);
+            u2(index);
+        }
+    }
+
+    // ---------------------------------------------------------------- 栈和数组
+
+    public void pop() {
+        op(POP, -1);
+    }
+
+    /**
+     * 弹出栈顶的一个 long 或 double
+     */
+    public void pop2() {
+        op(POP2, -2);
+    }
+
+    public void dup() {
+        op(DUP, 1);
+    }
+
+    public void aaload() {
+        op(AALOAD, -1);
+    }
+
+    public void aastore() {
+        op(AASTORE, -3);
+    }
+
+    public void anewarray(String internalName) {
+        op(ANEWARRAY, 0);
+        u2(classFile.classRef(internalName));
+    }
+
+    public void checkcast(String internalName) {
+        op(CHECKCAST, 0);
+        u2(classFile.classRef(internalName));
+    }
+
+    public void instanceOf(String internalName) {
+        op(INSTANCEOF, 0);
+        u2(classFile.classRef(internalName));
+    }
+
+    // ---------------------------------------------------------------- double 运算
+
+    public void dadd() {
+        op(DADD, -2);
+    }
+
+    public void dsub() {
+        op(DSUB, -2);
+    }
+
+    public void dmul() {
+        op(DMUL, -2);
+    }
+
+    public void dneg() {
+        op(DNEG, 0);
+    }
+
+    /**
+     * 比较栈顶两个 double，NaN 时压入 -1
+     */
+    public void dcmpl() {
+        op(DCMPL, -3);
+    }
+
+    /**
+     * 比较栈顶两个 double，NaN 时压入 1
+     */
+    public void dcmpg() {
+        op(DCMPG, -3);
+    }
+
+    // ---------------------------------------------------------------- long 运算
+
+    public void ladd() {
+        op(LADD, -2);
+    }
+
+    public void lsub() {
+        op(LSUB, -2);
+    }
+
+    public void lmul() {
+        op(LMUL, -2);
+    }
+
+    public void lneg() {
+        op(LNEG, 0);
+    }
+
+    public void land() {
+        op(LAND, -2);
+    }
+
+    public void lor() {
+        op(LOR, -2);
+    }
+
+    /**
+     * 比较栈顶两个 long，压入 -1、0 或 1
+     */
+    public void lcmp() {
+        op(LCMP, -3);
+    }
+
+    public void l2d() {
+        op(L2D, 0);
+    }
+
+    // ---------------------------------------------------------------- 字段和方法
+
+    public void getstatic(String owner, String name, String descriptor) {
+        op(GETSTATIC, 1);
+        u2(classFile.fieldRef(owner, name, descriptor));
+    }
+
+    public void getfield(String owner, String name, String descriptor) {
+        op(GETFIELD, 0);
+        u2(classFile.fieldRef(owner, name, descriptor));
+    }
+
+    public void invokestatic(String owner, String name, String descriptor) {
+        op(INVOKESTATIC, stackEffect(descriptor, false));
+        u2(classFile.methodRef(owner, name, descriptor));
+    }
+
+    public void invokevirtual(String owner, String name, String descriptor) {
+        op(INVOKEVIRTUAL, stackEffect(descriptor, true));
+        u2(classFile.methodRef(owner, name, descriptor));
+    }
+
+    public void invokespecial(String owner, String name, String descriptor) {
+        op(INVOKESPECIAL, stackEffect(descriptor, true));
+        u2(classFile.methodRef(owner, name, descriptor));
+    }
+
+    public void invokeinterface(String owner, String name, String descriptor) {
+        op(INVOKEINTERFACE, stackEffect(descriptor, true));
+        u2(classFile.interfaceMethodRef(owner, name, descriptor));
+        u1(argumentSlots(descriptor) + 1);
+        u1(0);
+    }
+
+    /**
+     * 根据方法描述符算出调用前后栈深度的变化
+     */
+    private static int stackEffect(String descriptor, boolean hasReceiver) {
+        int effect = -argumentSlots(descriptor) - (hasReceiver ? 1 : 0);
+        char ret = descriptor.charAt(descriptor.indexOf(')') + 1);
+        if (ret == 'J' || ret == 'D') {
+            effect += 2;
+        } else if (ret != 'V') {
+            effect += 1;
+        }
+        return effect;
+    }
+
+    private static int argumentSlots(String descriptor) {
+        int slots = 0;
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            char c = descriptor.charAt(i);
+            if (c == 'J' || c == 'D') {
+                slots += 2;
+                i++;
+            } else if (c == 'L') {
+                slots++;
+                i = descriptor.indexOf(';', i) + 1;
+            } else if (c == '[') {
+                while (descriptor.charAt(i) == '[') i++;
+                if (descriptor.charAt(i) == 'L') {
+                    i = descriptor.indexOf(';', i) + 1;
+                } else {
+                    i++;
+                }
+                slots++;
+            } else {
+                slots++;
+                i++;
+            }
+        }
+        return slots;
+    }
+
+    // ---------------------------------------------------------------- 跳转和返回
+
+    public void ifeq(Label label) {
+        jump(IFEQ, -1, label);
+    }
+
+    public void ifne(Label label) {
+        jump(IFNE, -1, label);
+    }
+
+    public void iflt(Label label) {
+        jump(IFLT, -1, label);
+    }
+
+    public void ifge(Label label) {
+        jump(IFGE, -1, label);
+    }
+
+    public void ifgt(Label label) {
+        jump(IFGT, -1, label);
+    }
+
+    public void ifle(Label label) {
+        jump(IFLE, -1, label);
+    }
+
+    public void ifnull(Label label) {
+        jump(IFNULL, -1, label);
+    }
+
+    public void ifnonnull(Label label) {
+        jump(IFNONNULL, -1, label);
+    }
+
+    public void goTo(Label label) {
+        jump(GOTO, 0, label);
+        reachable = false;
+    }
+
+    public void areturn() {
+        op(ARETURN, -1);
+        reachable = false;
+    }
+
+    public void vreturn() {
+        op(RETURN, 0);
+        reachable = false;
+    }
+}
@@ -0,0 +1,16 @@
+package com.lox.jit;
+
+/**
+ * 遇到 JIT 不支持的写法时抛出，调用方捕获后继续用解释器执行这个函数
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className JitBailout
+ * @date 2026/10/18 16:05
+ **/
+public class JitBailout extends RuntimeException {
+
+    public JitBailout(String reason) {
+        super(reason, null, false, false);
+    }
+}
@@ -0,0 +1,21 @@
+package com.lox.jit;
+
+/**
+ * 加载 JIT 生成的类。父加载器用 jlox 自己的加载器，生成的代码才能引用 com.lox 里的运行时类。
+ * 每次编译用一个新的加载器，只加载一个类，代码被丢掉后可以连同加载器一起卸载
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className JitClassLoader
+ * @date 2026/10/18 16:20
+ **/
+public final class JitClassLoader extends ClassLoader {
+
+    public JitClassLoader(ClassLoader parent) {
+        super(parent);
+    }
+
+    public Class<?> define(String internalName, byte[] bytes) {
+        return defineClass(internalName.replace('/', '.'), bytes, 0, bytes.length);
+    }
+}
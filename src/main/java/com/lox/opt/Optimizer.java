@@ -0,0 +1,407 @@
+package com.lox.opt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.lox.Expr;
+import com.lox.Stmt;
+import com.lox.TokenType;
+import com.lox.runtime.LoxNumbers;
+
+/**
+ * Resolver 之后、执行之前的语法树优化，三种执行方式（解释器、节点树、虚拟机）共用：
+ * <ul>
+ *     <li>常量折叠：操作数都是字面量的运算直接算出结果，语义和解释器一样（见 {@link LoxNumbers}）。
+ *     运行时会报错的（除数为 0、类型不对）不折叠，照旧在原来的行报错</li>
+ *     <li>条件是常量的 if、三目表达式、and/or 只留下会执行的那一边，条件为假的 while 去掉，
+ *     条件为假的 for 只留下初始化语句</li>
+ *     <li>去掉没有副作用的表达式语句（比如折叠后只剩一个字面量）</li>
+ * </ul>
+ * 没有变化的节点原样返回；有变化的节点新建一个，Resolver 记在节点上的槽位等信息一起带过去。
+ * 新节点沿用原来的 Token，所以运行时错误的行号不变。函数体、lambda 体和顶层语句的列表原地修改，
+ * 函数和类声明节点本身不用换。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className Optimizer
+ * @date 2026/10/18 23:58
+ **/
+public final class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+
+    /**
+     * 原地优化顶层代码或函数体，去掉的语句从列表里删除
+     */
+    public void optimize(List<Stmt> statements) {
+        List<Stmt> optimized = statements(statements);
+        if (optimized == statements) return;
+        statements.clear();
+        statements.addAll(optimized);
+    }
+
+    /**
+     * 优化后的语句列表，都没有变化时返回 statements 本身
+     */
+    private List<Stmt> statements(List<Stmt> statements) {
+        List<Stmt> result = null;
+        for (int i = 0; i < statements.size(); i++) {
+            Stmt statement = statements.get(i);
+            Stmt optimized = statement.accept(this);
+            if (optimized != statement && result == null) {
+                result = new ArrayList<>(statements.subList(0, i));
+            }
+            if (result != null && optimized != null) result.add(optimized);
+        }
+        return result != null ? result : statements;
+    }
+
+    /**
+     * 优化 if、循环的分支或循环体，整个被去掉时换成空块
+     */
+    private Stmt branch(Stmt stmt) {
+        Stmt optimized = stmt.accept(this);
+        return optimized != null ? optimized : new Stmt.Block(new ArrayList<>());
+    }
+
+    private Expr optimize(Expr expr) {
+        return expr == null ? null : expr.accept(this);
+    }
+
+    // ---------------------------------------------------------------- 语句，返回 null 表示去掉
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        // do-while 脱糖出来的块用的是定长列表，所以这里不原地修改
+        List<Stmt> statements = statements(stmt.statements);
+        return statements == stmt.statements ? stmt : new Stmt.Block(statements);
+    }
+
+    @Override
+    public Stmt visitClassStmt(Stmt.Class stmt) {
+        for (Stmt.Function method : stmt.methods) {
+            optimize(method.body);
+        }
+        for (Stmt.Function method : stmt.staticMethods) {
+            optimize(method.body);
+        }
+        for (Stmt.Function getter : stmt.getter) {
+            optimize(getter.body);
+        }
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        Expr expression = optimize(stmt.expression);
+        if (isPure(expression)) return null;
+        return expression == stmt.expression ? stmt : new Stmt.Expression(expression);
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt) {
+        optimize(stmt.body);
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt) {
+        Expr condition = optimize(stmt.condition);
+        if (condition instanceof Expr.Literal) {
+            if (isTruthy(((Expr.Literal) condition).value)) return stmt.thenBranch.accept(this);
+            return stmt.elseBranch == null ? null : stmt.elseBranch.accept(this);
+        }
+        Stmt thenBranch = branch(stmt.thenBranch);
+        Stmt elseBranch = stmt.elseBranch == null ? null : stmt.elseBranch.accept(this);
+        if (condition == stmt.condition && thenBranch == stmt.thenBranch && elseBranch == stmt.elseBranch) {
+            return stmt;
+        }
+        return new Stmt.If(condition, thenBranch, elseBranch);
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt) {
+        Expr expression = optimize(stmt.expression);
+        return expression == stmt.expression ? stmt : new Stmt.Print(expression);
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        Expr initializer = optimize(stmt.initializer);
+        if (initializer == stmt.initializer) return stmt;
+        Stmt.Var var = new Stmt.Var(stmt.name, initializer);
+        var.slot = stmt.slot;
+        var.captured = stmt.captured;
+        return var;
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        Expr condition = optimize(stmt.condition);
+        if (condition instanceof Expr.Literal && !isTruthy(((Expr.Literal) condition).value)) return null;
+        Stmt body = branch(stmt.body);
+        if (condition == stmt.condition && body == stmt.body) return stmt;
+        return new Stmt.While(condition, body);
+    }
+
+    @Override
+    public Stmt visitForStmt(Stmt.For stmt) {
+        Stmt initializer = stmt.initializer == null ? null : stmt.initializer.accept(this);
+        Expr condition = optimize(stmt.condition);
+        if (condition instanceof Expr.Literal && !isTruthy(((Expr.Literal) condition).value)) {
+            // 循环变量只在循环里可见，留在块里，Resolver 分配的槽位不变
+            if (initializer instanceof Stmt.Var) return new Stmt.Block(Collections.singletonList(initializer));
+            return initializer;
+        }
+        Expr increment = optimize(stmt.increment);
+        if (increment != null && isPure(increment)) increment = null;
+        Stmt body = branch(stmt.body);
+        if (initializer == stmt.initializer && condition == stmt.condition
+                && increment == stmt.increment && body == stmt.body) {
+            return stmt;
+        }
+        return new Stmt.For(initializer, condition, increment, body);
+    }
+
+    @Override
+    public Stmt visitBreakStmt(Stmt.Break stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitContinueStmt(Stmt.Continue stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Stmt.Return stmt) {
+        Expr value = optimize(stmt.value);
+        return value == stmt.value ? stmt : new Stmt.Return(stmt.token, value);
+    }
+
+    // ---------------------------------------------------------------- 表达式
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        Expr value = optimize(expr.value);
+        if (value == expr.value) return expr;
+        Expr.Assign assign = new Expr.Assign(expr.name, value);
+        assign.binding = expr.binding;
+        assign.slot = expr.slot;
+        assign.global = expr.global;
+        return assign;
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+        // 逗号运算符左边没有副作用时只剩右边
+        if (expr.operator.type == TokenType.COMMA && isPure(left)) return right;
+        if (left instanceof Expr.Literal && right instanceof Expr.Literal) {
+            Object value = fold(expr.operator.type, ((Expr.Literal) left).value, ((Expr.Literal) right).value);
+            if (value != null) return new Expr.Literal(value);
+        }
+        if (left == expr.left && right == expr.right) return expr;
+        return new Expr.Binary(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        Expr callee = optimize(expr.callee);
+        List<Expr> arguments = null;
+        for (int i = 0; i < expr.arguments.size(); i++) {
+            Expr argument = expr.arguments.get(i);
+            Expr optimized = optimize(argument);
+            if (optimized != argument && arguments == null) {
+                arguments = new ArrayList<>(expr.arguments.subList(0, i));
+            }
+            if (arguments != null) arguments.add(optimized);
+        }
+        if (callee == expr.callee && arguments == null) return expr;
+        Expr.Call call = new Expr.Call(callee, expr.paren, arguments != null ? arguments : expr.arguments);
+        call.tail = expr.tail;
+        return call;
+    }
+
+    @Override
+    public Expr visitGetExpr(Expr.Get expr) {
+        Expr object = optimize(expr.object);
+        return object == expr.object ? expr : new Expr.Get(object, expr.name);
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        Expr expression = optimize(expr.expression);
+        if (expression instanceof Expr.Literal) return expression;
+        return expression == expr.expression ? expr : new Expr.Grouping(expression);
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+        if (left instanceof Expr.Literal) {
+            // or 左边为真、and 左边为假时结果就是左边的值，否则是右边的值
+            boolean truthy = isTruthy(((Expr.Literal) left).value);
+            return truthy == (expr.operator.type == TokenType.OR) ? left : right;
+        }
+        if (left == expr.left && right == expr.right) return expr;
+        return new Expr.Logical(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitSetExpr(Expr.Set expr) {
+        Expr object = optimize(expr.object);
+        Expr value = optimize(expr.value);
+        if (object == expr.object && value == expr.value) return expr;
+        return new Expr.Set(object, expr.name, value);
+    }
+
+    @Override
+    public Expr visitThisExpr(Expr.This expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitSuperExpr(Expr.Super expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        Expr right = optimize(expr.right);
+        if (right instanceof Expr.Literal) {
+            Object value = ((Expr.Literal) right).value;
+            if (expr.operator.type == TokenType.BANG) return new Expr.Literal(!isTruthy(value));
+            Object negated = LoxNumbers.negate(value);
+            if (negated != null) return new Expr.Literal(negated);
+        }
+        return right == expr.right ? expr : new Expr.Unary(expr.operator, right);
+    }
+
+    @Override
+    public Expr visitTernaryExpr(Expr.Ternary expr) {
+        Expr condition = optimize(expr.condition);
+        if (condition instanceof Expr.Literal) {
+            return isTruthy(((Expr.Literal) condition).value) ? optimize(expr.left) : optimize(expr.right);
+        }
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+        if (condition == expr.condition && left == expr.left && right == expr.right) return expr;
+        return new Expr.Ternary(condition, left, right);
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitSelfIncOrDecrExpr(Expr.SelfIncOrDecr expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitLambdaExpr(Expr.Lambda expr) {
+        optimize(expr.body);
+        return expr;
+    }
+
+    // ---------------------------------------------------------------- 折叠
+
+    /**
+     * 两个常量做二元运算的结果，运行时会报错的返回 null（运算结果本身不会是 nil）
+     */
+    private static Object fold(TokenType operator, Object left, Object right) {
+        switch (operator) {
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+                return compare(operator, left, right);
+            case EQUAL_EQUAL:
+                return LoxNumbers.isEqual(left, right);
+            case BANG_EQUAL:
+                return !LoxNumbers.isEqual(left, right);
+            case PLUS: {
+                Object sum = LoxNumbers.add(left, right);
+                if (sum != null) return sum;
+                if (left instanceof String || right instanceof String) {
+                    return String.valueOf(left) + String.valueOf(right);
+                }
+                return null;
+            }
+            case MINUS:
+                return LoxNumbers.subtract(left, right);
+            case STAR:
+                return LoxNumbers.multiply(left, right);
+            case SLASH:
+                if (LoxNumbers.isZero(right)) return null;
+                return LoxNumbers.divide(left, right);
+            case LOGIC_AND:
+                return LoxNumbers.bitAnd(left, right);
+            case LOGIC_OR:
+                return LoxNumbers.bitOr(left, right);
+            default:
+                return null;
+        }
+    }
+
+    private static Object compare(TokenType operator, Object left, Object right) {
+        if (left instanceof String || right instanceof String) {
+            // 解释器按 toString 比较，有一边是 nil 时运行时报错
+            if (left == null || right == null) return null;
+            int result = left.toString().compareTo(right.toString());
+            switch (operator) {
+                case GREATER: return result > 0;
+                case GREATER_EQUAL: return result >= 0;
+                case LESS: return result < 0;
+                default: return result <= 0;
+            }
+        }
+        switch (operator) {
+            case GREATER: return LoxNumbers.greater(left, right);
+            case GREATER_EQUAL: return LoxNumbers.greaterEqual(left, right);
+            case LESS: return LoxNumbers.less(left, right);
+            default: return LoxNumbers.lessEqual(left, right);
+        }
+    }
+
+    private static boolean isTruthy(Object value) {
+        if (value == null) return false;
+        if (value instanceof Boolean) return (Boolean) value;
+        return true;
+    }
+
+    /**
+     * 求值一定不会报错、也没有副作用的表达式
+     */
+    private static boolean isPure(Expr expr) {
+        switch (expr.kind) {
+            case Expr.LITERAL:
+            case Expr.LAMBDA:
+                return true;
+            case Expr.GROUPING:
+                return isPure(((Expr.Grouping) expr).expression);
+            case Expr.UNARY: {
+                Expr.Unary unary = (Expr.Unary) expr;
+                return unary.operator.type == TokenType.BANG && isPure(unary.right);
+            }
+            case Expr.LOGICAL: {
+                Expr.Logical logical = (Expr.Logical) expr;
+                return isPure(logical.left) && isPure(logical.right);
+            }
+            case Expr.TERNARY: {
+                Expr.Ternary ternary = (Expr.Ternary) expr;
+                return isPure(ternary.condition) && isPure(ternary.left) && isPure(ternary.right);
+            }
+            default:
+                return false;
+        }
+    }
+}
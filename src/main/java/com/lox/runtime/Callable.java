@@ -0,0 +1,16 @@
+package com.lox.runtime;
+
+/**
+ * 可以调用的值：函数、方法、lambda、类和原生函数，对应解释器的 LoxCallable。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className Callable
+ * @date 2026/10/18 20:00
+ **/
+public interface Callable {
+
+    int arity();
+
+    Object call(Object[] arguments);
+}
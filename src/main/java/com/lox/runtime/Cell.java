@@ -0,0 +1,25 @@
+package com.lox.runtime;
+
+/**
+ * 一个可以被多个地方共享修改的变量：全局变量、被闭包捕获的局部变量、被 ++/-- 修改的局部变量。
+ * 没被捕获的局部变量直接翻译成 Java 局部变量。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className Cell
+ * @date 2026/10/18 20:00
+ **/
+public final class Cell {
+    // 变量名，只用于报错
+    public final String name;
+    public Object value;
+
+    public Cell(String name) {
+        this.name = name;
+    }
+
+    public Cell(String name, Object value) {
+        this.name = name;
+        this.value = value;
+    }
+}
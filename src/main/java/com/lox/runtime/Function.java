@@ -0,0 +1,59 @@
+package com.lox.runtime;
+
+/**
+ * Lox 函数、方法、getter 和 lambda。函数体翻译成 {@link Body}，方法的 this 是 self 参数，
+ * bind 时换一个 self 得到新的 Function，和解释器每次取方法都新建绑定一样。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className Function
+ * @date 2026/10/18 20:00
+ **/
+public final class Function implements Callable {
+
+    public interface Body {
+        Object call(Instance self, Object[] arguments);
+    }
+
+    final String name;
+    private final int arity;
+    // 取属性时直接调用
+    final boolean getter;
+    private final Body body;
+    private final Instance self;
+
+    public Function(String name, int arity, Body body) {
+        this(name, arity, false, body, null);
+    }
+
+    public Function(String name, int arity, boolean getter, Body body) {
+        this(name, arity, getter, body, null);
+    }
+
+    private Function(String name, int arity, boolean getter, Body body, Instance self) {
+        this.name = name;
+        this.arity = arity;
+        this.getter = getter;
+        this.body = body;
+        this.self = self;
+    }
+
+    Function bind(Instance instance) {
+        return new Function(name, arity, getter, body, instance);
+    }
+
+    @Override
+    public int arity() {
+        return arity;
+    }
+
+    @Override
+    public Object call(Object[] arguments) {
+        return body.call(self, arguments);
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + name + ">";
+    }
+}
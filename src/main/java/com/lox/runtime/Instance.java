@@ -0,0 +1,48 @@
+package com.lox.runtime;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 类的实例，对应解释器的 LoxInstance。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className Instance
+ * @date 2026/10/18 20:00
+ **/
+public final class Instance {
+    private final Klass klass;
+    private final Map<String, Object> fields = new HashMap<>();
+
+    Instance(Klass klass) {
+        this.klass = klass;
+    }
+
+    /**
+     * 字段优先，其次是方法，最后是 getter（调用后返回结果）
+     */
+    Object get(String name, int line) {
+        Object value = fields.get(name);
+        if (value != null || fields.containsKey(name)) {
+            if (value instanceof Function && ((Function) value).getter) {
+                return ((Function) value).call(new Object[0]);
+            }
+            return value;
+        }
+        Function method = klass.findMethod(name);
+        if (method != null) return method.bind(this);
+        method = klass.findGetter(name);
+        if (method != null) return method.bind(this).call(new Object[0]);
+        throw new LoxError("Undefined property '" + name + "'.", line);
+    }
+
+    void set(String name, Object value) {
+        fields.put(name, value);
+    }
+
+    @Override
+    public String toString() {
+        return klass.name + " instance";
+    }
+}
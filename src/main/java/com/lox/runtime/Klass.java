@@ -0,0 +1,64 @@
+package com.lox.runtime;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 类，对应解释器的 LoxClass。方法表在创建后不再改变。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className Klass
+ * @date 2026/10/18 20:00
+ **/
+public final class Klass implements Callable {
+    final String name;
+    private final Klass superclass;
+    private final Map<String, Function> methods = new HashMap<>();
+    private final Map<String, Function> staticMethods = new HashMap<>();
+    private final Map<String, Function> getters = new HashMap<>();
+
+    public Klass(String name, Klass superclass, Function[] methods, Function[] staticMethods, Function[] getters) {
+        this.name = name;
+        this.superclass = superclass;
+        for (Function method : methods) this.methods.put(method.name, method);
+        for (Function method : staticMethods) this.staticMethods.put(method.name, method);
+        for (Function method : getters) this.getters.put(method.name, method);
+    }
+
+    Function findMethod(String name) {
+        Function method = methods.get(name);
+        if (method != null) return method;
+        if (superclass != null) return superclass.findMethod(name);
+        return null;
+    }
+
+    Function findStaticMethod(String name) {
+        return staticMethods.get(name);
+    }
+
+    Function findGetter(String name) {
+        return getters.get(name);
+    }
+
+    @Override
+    public int arity() {
+        Function initializer = findMethod("init");
+        return initializer == null ? 0 : initializer.arity();
+    }
+
+    @Override
+    public Object call(Object[] arguments) {
+        Instance instance = new Instance(this);
+        Function initializer = findMethod("init");
+        if (initializer != null) {
+            initializer.bind(instance).call(arguments);
+        }
+        return instance;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,18 @@
+package com.lox.runtime;
+
+/**
+ * 翻译后的程序里的运行时错误，对应解释器的 RuntimeError，只带行号不带 Token。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className LoxError
+ * @date 2026/10/18 20:00
+ **/
+public class LoxError extends RuntimeException {
+    public final int line;
+
+    public LoxError(String message, int line) {
+        super(message, null, false, false);
+        this.line = line;
+    }
+}
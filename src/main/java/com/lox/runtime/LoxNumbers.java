@@ -0,0 +1,197 @@
+package com.lox.runtime;
+
+/**
+ * 数字的运算规则，解释器、节点树、JIT、虚拟机和翻译成的 Java 代码共用。
+ * <p>
+ * 数字有两种：没有小数部分的字面量是整数（{@link Long}），其余是浮点数（{@link Double}）。
+ * 两个整数的加减乘和 &amp;、| 结果还是整数，加减乘和取负超出 long 的范围时结果改成按 double 算的浮点数；
+ * 除法的结果总是浮点数；
+ * 整数和浮点数混合运算、比较时整数先转成 double。
+ * <p>
+ * 操作数不是数字时这里的方法返回 null，由调用方按自己的方式报错，报错信息和以前一样。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className LoxNumbers
+ * @date 2026/10/18 23:40
+ **/
+public final class LoxNumbers {
+
+    private LoxNumbers() {}
+
+    public static boolean isNumber(Object value) {
+        return value instanceof Long || value instanceof Double;
+    }
+
+    /**
+     * value 必须是数字
+     */
+    public static double toDouble(Object value) {
+        if (value instanceof Long) return (Long) value;
+        return (Double) value;
+    }
+
+    public static Object add(Object left, Object right) {
+        if (left instanceof Long && right instanceof Long) return add((long) (Long) left, (long) (Long) right);
+        if (left instanceof Double && right instanceof Double) return (Double) left + (Double) right;
+        if (!isNumber(left) || !isNumber(right)) return null;
+        return toDouble(left) + toDouble(right);
+    }
+
+    public static Object subtract(Object left, Object right) {
+        if (left instanceof Long && right instanceof Long) return subtract((long) (Long) left, (long) (Long) right);
+        if (left instanceof Double && right instanceof Double) return (Double) left - (Double) right;
+        if (!isNumber(left) || !isNumber(right)) return null;
+        return toDouble(left) - toDouble(right);
+    }
+
+    public static Object multiply(Object left, Object right) {
+        if (left instanceof Long && right instanceof Long) return multiply((long) (Long) left, (long) (Long) right);
+        if (left instanceof Double && right instanceof Double) return (Double) left * (Double) right;
+        if (!isNumber(left) || !isNumber(right)) return null;
+        return toDouble(left) * toDouble(right);
+    }
+
+    /**
+     * 两个整数的和，溢出时是按 double 算的浮点数
+     */
+    public static Object add(long left, long right) {
+        if (addOverflows(left, right)) return (double) left + (double) right;
+        return left + right;
+    }
+
+    public static Object subtract(long left, long right) {
+        if (subtractOverflows(left, right)) return (double) left - (double) right;
+        return left - right;
+    }
+
+    public static Object multiply(long left, long right) {
+        if (multiplyOverflows(left, right)) return (double) left * (double) right;
+        return left * right;
+    }
+
+    /**
+     * 和 Math.addExact 的判断一样：两个加数同号而和的符号不同
+     */
+    public static boolean addOverflows(long left, long right) {
+        long result = left + right;
+        return ((left ^ result) & (right ^ result)) < 0;
+    }
+
+    public static boolean subtractOverflows(long left, long right) {
+        long result = left - right;
+        return ((left ^ right) & (left ^ result)) < 0;
+    }
+
+    /**
+     * 和 Math.multiplyExact 的判断一样：两个数都小于 2^31 时不会溢出，否则用除法验算
+     */
+    public static boolean multiplyOverflows(long left, long right) {
+        if (((Math.abs(left) | Math.abs(right)) >>> 31) == 0) return false;
+        long result = left * right;
+        return right != 0 && result / right != left || left == Long.MIN_VALUE && right == -1;
+    }
+
+    /**
+     * Long.MIN_VALUE 取负溢出
+     */
+    public static boolean negateOverflows(long value) {
+        return value == Long.MIN_VALUE;
+    }
+
+    /**
+     * 除数为 0 的检查由调用方先用 {@link #isZero} 做
+     */
+    public static Object divide(Object left, Object right) {
+        if (!isNumber(left) || !isNumber(right)) return null;
+        return toDouble(left) / toDouble(right);
+    }
+
+    public static boolean isZero(Object value) {
+        if (value instanceof Long) return (Long) value == 0;
+        return value instanceof Double && (Double) value == 0;
+    }
+
+    public static Boolean greater(Object left, Object right) {
+        if (left instanceof Long && right instanceof Long) return (Long) left > (Long) right;
+        if (left instanceof Double && right instanceof Double) return (Double) left > (Double) right;
+        if (!isNumber(left) || !isNumber(right)) return null;
+        return toDouble(left) > toDouble(right);
+    }
+
+    public static Boolean greaterEqual(Object left, Object right) {
+        if (left instanceof Long && right instanceof Long) return (Long) left >= (Long) right;
+        if (left instanceof Double && right instanceof Double) return (Double) left >= (Double) right;
+        if (!isNumber(left) || !isNumber(right)) return null;
+        return toDouble(left) >= toDouble(right);
+    }
+
+    public static Boolean less(Object left, Object right) {
+        if (left instanceof Long && right instanceof Long) return (Long) left < (Long) right;
+        if (left instanceof Double && right instanceof Double) return (Double) left < (Double) right;
+        if (!isNumber(left) || !isNumber(right)) return null;
+        return toDouble(left) < toDouble(right);
+    }
+
+    public static Boolean lessEqual(Object left, Object right) {
+        if (left instanceof Long && right instanceof Long) return (Long) left <= (Long) right;
+        if (left instanceof Double && right instanceof Double) return (Double) left <= (Double) right;
+        if (!isNumber(left) || !isNumber(right)) return null;
+        return toDouble(left) <= toDouble(right);
+    }
+
+    /**
+     * Lox 的 ==。整数和浮点数按数值比较（1 == 1.0）；两个浮点数和 Double.equals 一样，
+     * NaN 等于 NaN，0.0 和 -0.0 不相等。{@link LoxString} 展平后和 String 按内容比较
+     */
+    public static boolean isEqual(Object left, Object right) {
+        if (left == null) return right == null;
+        if (left instanceof LoxString) left = left.toString();
+        if (right instanceof LoxString) right = right.toString();
+        if (left instanceof Long && right instanceof Double || left instanceof Double && right instanceof Long) {
+            return Double.compare(toDouble(left), toDouble(right)) == 0;
+        }
+        return left.equals(right);
+    }
+
+    public static Object negate(Object value) {
+        if (value instanceof Long) {
+            long number = (Long) value;
+            if (negateOverflows(number)) return -(double) number;
+            return -number;
+        }
+        if (value instanceof Double) return -(Double) value;
+        return null;
+    }
+
+    /**
+     * ++ 和 -- 的新值，delta 是 1 或 -1
+     */
+    public static Object increment(Object value, int delta) {
+        if (value instanceof Long) return add((long) (Long) value, delta);
+        if (value instanceof Double) return (Double) value + delta;
+        return null;
+    }
+
+    public static Object bitAnd(Object left, Object right) {
+        if (left instanceof Long && right instanceof Long) return (Long) left & (Long) right;
+        if (!isInteger(left) || !isInteger(right)) return null;
+        return ((Number) left).longValue() & ((Number) right).longValue();
+    }
+
+    public static Object bitOr(Object left, Object right) {
+        if (left instanceof Long && right instanceof Long) return (Long) left | (Long) right;
+        if (!isInteger(left) || !isInteger(right)) return null;
+        return ((Number) left).longValue() | ((Number) right).longValue();
+    }
+
+    /**
+     * 整数，或者没有小数部分的浮点数（&amp; 和 | 一直接受这样的浮点数）
+     */
+    private static boolean isInteger(Object value) {
+        if (value instanceof Long) return true;
+        if (!(value instanceof Double)) return false;
+        double d = (Double) value;
+        return d == (long) d;
+    }
+}
@@ -0,0 +1,276 @@
+package com.lox.runtime;
+
+/**
+ * {@link com.tool.TranslateLox} 生成的 Java 代码调用的运行时函数。
+ * <p>
+ * 值的表示和解释器相同：nil 是 null，数字是 Long 或 Double（规则见 {@link LoxNumbers}），字符串、布尔值
+ * 直接用 Java 对象。各个运算的语义和报错信息都和 {@link com.lox.Interpreter} 保持一致。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className LoxRuntime
+ * @date 2026/10/18 20:10
+ **/
+public final class LoxRuntime {
+    // 全局变量还没有定义
+    public static final Object UNDEFINED = new Object();
+
+    public static final Callable CLOCK = new Callable() {
+        @Override
+        public int arity() {
+            return 0;
+        }
+
+        @Override
+        public Object call(Object[] arguments) {
+            return (double) System.currentTimeMillis() / 1000.0;
+        }
+
+        @Override
+        public String toString() {
+            return "<native fn>";
+        }
+    };
+
+    private LoxRuntime() {}
+
+    /**
+     * 执行翻译后的脚本，运行时错误和解释器一样打印到 stderr 并以 70 退出
+     */
+    public static void run(Runnable program) {
+        try {
+            program.run();
+        } catch (LoxError error) {
+            System.err.println(error.getMessage() + "\n[line " + error.line + "]");
+            System.exit(70);
+        }
+    }
+
+    // ---------------------------------------------------------------- 变量
+
+    public static Object global(Cell cell, int line) {
+        Object value = cell.value;
+        if (value == UNDEFINED) {
+            throw new LoxError("未定义的变量名'" + cell.name + "'；", line);
+        }
+        return value;
+    }
+
+    public static Object assignGlobal(Cell cell, Object value, int line) {
+        if (cell.value == UNDEFINED) {
+            throw new LoxError("未定义变量'" + cell.name + "'；", line);
+        }
+        cell.value = value;
+        return value;
+    }
+
+    /**
+     * 局部变量的 ++/--，返回旧值
+     */
+    public static Object increment(Cell cell, String operator, int delta, int line) {
+        Object value = cell.value;
+        cell.value = incremented(value, cell.name, operator, delta, line);
+        return value;
+    }
+
+    public static Object incrementGlobal(Cell cell, String operator, int delta, int line) {
+        Object value = global(cell, line);
+        cell.value = incremented(value, cell.name, operator, delta, line);
+        return value;
+    }
+
+    private static Object incremented(Object value, String name, String operator, int delta, int line) {
+        if (value == null) throw new LoxError("变量'" + name + "'未初始化.", line);
+        Object result = LoxNumbers.increment(value, delta);
+        if (result == null) throw new LoxError(operator + "操作只能是数字。", line);
+        return result;
+    }
+
+    // ---------------------------------------------------------------- 运算
+
+    public static boolean isTruthy(Object value) {
+        if (value == null) return false;
+        if (value instanceof Boolean) return (Boolean) value;
+        return true;
+    }
+
+    public static boolean isEqual(Object left, Object right) {
+        return LoxNumbers.isEqual(left, right);
+    }
+
+    public static Object add(Object left, Object right, int line) {
+        Object result = LoxNumbers.add(left, right);
+        if (result != null) return result;
+        Object text = LoxString.concat(left, right);
+        if (text != null) return text;
+        throw new LoxError("操作数两边必须是数字或字符串.", line);
+    }
+
+    public static Object subtract(Object left, Object right, int line) {
+        return checkNumbers(LoxNumbers.subtract(left, right), line);
+    }
+
+    public static Object multiply(Object left, Object right, int line) {
+        return checkNumbers(LoxNumbers.multiply(left, right), line);
+    }
+
+    public static Object divide(Object left, Object right, int line) {
+        Object result = checkNumbers(LoxNumbers.divide(left, right), line);
+        if (LoxNumbers.isZero(right)) throw new LoxError("被除数不能为0.", line);
+        return result;
+    }
+
+    public static Object greater(Object left, Object right, int line) {
+        if (LoxString.isString(left) || LoxString.isString(right)) {
+            return String.valueOf(left).compareTo(String.valueOf(right)) > 0;
+        }
+        return checkNumbers(LoxNumbers.greater(left, right), line);
+    }
+
+    public static Object greaterEqual(Object left, Object right, int line) {
+        if (LoxString.isString(left) || LoxString.isString(right)) {
+            return String.valueOf(left).compareTo(String.valueOf(right)) >= 0;
+        }
+        return checkNumbers(LoxNumbers.greaterEqual(left, right), line);
+    }
+
+    public static Object less(Object left, Object right, int line) {
+        if (LoxString.isString(left) || LoxString.isString(right)) {
+            return String.valueOf(left).compareTo(String.valueOf(right)) < 0;
+        }
+        return checkNumbers(LoxNumbers.less(left, right), line);
+    }
+
+    public static Object lessEqual(Object left, Object right, int line) {
+        if (LoxString.isString(left) || LoxString.isString(right)) {
+            return String.valueOf(left).compareTo(String.valueOf(right)) <= 0;
+        }
+        return checkNumbers(LoxNumbers.lessEqual(left, right), line);
+    }
+
+    public static Object equal(Object left, Object right) {
+        return isEqual(left, right);
+    }
+
+    public static Object notEqual(Object left, Object right) {
+        return !isEqual(left, right);
+    }
+
+    public static Object bitAnd(Object left, Object right, int line) {
+        return checkIntegers(LoxNumbers.bitAnd(left, right), line);
+    }
+
+    public static Object bitOr(Object left, Object right, int line) {
+        return checkIntegers(LoxNumbers.bitOr(left, right), line);
+    }
+
+    /**
+     * 逗号运算符：两边都已经求值，结果是右边
+     */
+    public static Object comma(Object left, Object right) {
+        return right;
+    }
+
+    public static Object not(Object value) {
+        return !isTruthy(value);
+    }
+
+    public static Object negate(Object value, int line) {
+        Object result = LoxNumbers.negate(value);
+        if (result == null) throw new LoxError("Operand must be a number.", line);
+        return result;
+    }
+
+    /**
+     * result 是 LoxNumbers 的运算结果，为 null 表示操作数不是数字
+     */
+    private static Object checkNumbers(Object result, int line) {
+        if (result == null) throw new LoxError("Operands must be numbers.", line);
+        return result;
+    }
+
+    private static Object checkIntegers(Object result, int line) {
+        if (result == null) throw new LoxError("Operand must be a integer.", line);
+        return result;
+    }
+
+    public static Object fail(String message, int line) {
+        throw new LoxError(message, line);
+    }
+
+    /**
+     * 作为语句求值、结果不用的表达式
+     */
+    public static void discard(Object value) {
+    }
+
+    // ---------------------------------------------------------------- 调用和对象
+
+    public static Object call(Object callee, int line, Object[] arguments) {
+        if (!(callee instanceof Callable)) {
+            throw new LoxError("方法和类才支持调用.", line);
+        }
+        return checkedCall((Callable) callee, line, arguments);
+    }
+
+    /**
+     * 形如 a.b(...) 的调用：a.b 求值为 nil 且 a 是类时调用静态方法 b
+     */
+    public static Object callMethod(Object callee, Object receiver, String name, int line, Object[] arguments) {
+        if (callee == null && receiver instanceof Klass) {
+            Function method = ((Klass) receiver).findStaticMethod(name);
+            if (method == null) throw new LoxError(name + "不是静态方法。", line);
+            return checkedCall(method, line, arguments);
+        }
+        return call(callee, line, arguments);
+    }
+
+    private static Object checkedCall(Callable function, int line, Object[] arguments) {
+        if (arguments.length != function.arity()) {
+            throw new LoxError("期待 " + function.arity() + " 个参数，但只传入了 " + arguments.length + " 个。", line);
+        }
+        return function.call(arguments);
+    }
+
+    public static Object get(Object object, String name, int line) {
+        if (object instanceof Instance) return ((Instance) object).get(name, line);
+        return null;
+    }
+
+    public static Object checkInstance(Object object, int line) {
+        if (!(object instanceof Instance)) throw new LoxError("Only instances have fields.", line);
+        return object;
+    }
+
+    public static Object set(Object instance, Object value, String name) {
+        ((Instance) instance).set(name, value);
+        return value;
+    }
+
+    public static Object superMethod(Klass superclass, Instance self, String name, int line) {
+        Function method = superclass.findMethod(name);
+        if (method == null) throw new LoxError("Undefined property '" + name + "'.", line);
+        return method.bind(self);
+    }
+
+    public static Klass superclass(Object value, int line) {
+        if (!(value instanceof Klass)) throw new LoxError("Superclass must be a class.", line);
+        return (Klass) value;
+    }
+
+    // ---------------------------------------------------------------- 输出
+
+    public static void print(Object value) {
+        System.out.println(stringify(value));
+    }
+
+    public static String stringify(Object value) {
+        if (value == null) return "nil";
+        if (value instanceof Double) {
+            String text = value.toString();
+            if (text.endsWith(".0")) text = text.substring(0, text.length() - 2);
+            return text;
+        }
+        return value.toString();
+    }
+}
@@ -0,0 +1,75 @@
+package com.lox.runtime;
+
+/**
+ * 拼接出来的长字符串。Lox 的字符串值是 {@link String} 或者 LoxString，解释器、节点树、JIT、
+ * 虚拟机和翻译成的 Java 代码共用这里的拼接规则。
+ * <p>
+ * {@code s = s + piece;} 这样反复在后面拼接时，新值和旧值共用同一个 StringBuilder，只把 piece
+ * 追加进去，整个循环是线性的，不用每次都把前面的内容复制一遍。缓冲区只追加不修改，每个值记下自己的长度，
+ * 看到的始终是缓冲区的一段前缀；只有长度等于缓冲区当前长度的值（最新的那个）能原地追加，
+ * 对旧的值拼接时另外复制一份缓冲区。
+ * <p>
+ * 打印、比较和判等时用 {@link #toString} 展平，展平的结果缓存下来。拼出来的结果很短时直接用 String。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className LoxString
+ * @date 2026/10/19 00:20
+ **/
+public final class LoxString {
+    // 结果短于这个长度时直接拼成 String
+    private static final int MIN_LENGTH = 64;
+
+    private final StringBuilder buffer;
+    private final int length;
+    private String flat;
+
+    private LoxString(StringBuilder buffer) {
+        this.buffer = buffer;
+        this.length = buffer.length();
+    }
+
+    public static boolean isString(Object value) {
+        return value instanceof String || value instanceof LoxString;
+    }
+
+    /**
+     * Lox 字符串的 +。另一边不是字符串时按 String.valueOf 转换，和以前的 String 拼接一样；
+     * 两边都不是字符串时返回 null，由调用方报错
+     */
+    public static Object concat(Object left, Object right) {
+        if (left instanceof LoxString) {
+            LoxString rope = (LoxString) left;
+            StringBuilder buffer = rope.buffer;
+            if (buffer.length() != rope.length) {
+                buffer = new StringBuilder(rope.length + MIN_LENGTH).append(buffer, 0, rope.length);
+            }
+            // s + s 时 right 和 left 共用缓冲区，先展平再追加
+            buffer.append(right instanceof LoxString ? right.toString() : String.valueOf(right));
+            return new LoxString(buffer);
+        }
+        if (!isString(left) && !isString(right)) return null;
+        String prefix = String.valueOf(left);
+        String suffix = String.valueOf(right);
+        int length = prefix.length() + suffix.length();
+        if (length < MIN_LENGTH) return prefix.concat(suffix);
+        return new LoxString(new StringBuilder(length + MIN_LENGTH).append(prefix).append(suffix));
+    }
+
+    @Override
+    public String toString() {
+        String flat = this.flat;
+        if (flat == null) this.flat = flat = buffer.substring(0, length);
+        return flat;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof LoxString && toString().equals(other.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+}
@@ -0,0 +1,17 @@
+package com.lox.vm;
+
+/**
+ * 一次调用的现场。slots 是这次调用在值栈上的起始下标，0 号槽放被调用者或者 this。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className CallFrame
+ * @date 2026/10/18 09:52
+ **/
+final class CallFrame {
+    ObjClosure closure;
+    int ip;
+    int slots;
+    // 通过 INVOKE 调用 getter 时，getter 返回后还要再用这些参数调用它的返回值
+    Object[] pendingArgs;
+}
@@ -0,0 +1,63 @@
+package com.lox.vm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一段字节码：指令、常量池和行号表。
+ * 行号表和指令按字节一一对应，运行时报错时用 ip 直接查到源码所在行。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className Chunk
+ * @date 2026/10/18 09:40
+ **/
+final class Chunk {
+    byte[] code = new byte[16];
+    int[] lines = new int[16];
+    int count = 0;
+
+    // 编译期用 list 收集，finish 之后换成数组给 VM 直接下标访问
+    private final List<Object> constantList = new ArrayList<>();
+    // 数字和字符串常量去重，函数常量不参与
+    private final Map<Object, Integer> constantIndex = new HashMap<>();
+    Object[] constants;
+
+    void write(int b, int line) {
+        if (count == code.length) {
+            code = Arrays.copyOf(code, count * 2);
+            lines = Arrays.copyOf(lines, count * 2);
+        }
+        code[count] = (byte) b;
+        lines[count] = line;
+        count++;
+    }
+
+    int addConstant(Object value) {
+        boolean pooled = value instanceof Long || value instanceof Double || value instanceof String;
+        if (pooled) {
+            Integer index = constantIndex.get(value);
+            if (index != null) return index;
+        }
+        constantList.add(value);
+        int index = constantList.size() - 1;
+        if (pooled) constantIndex.put(value, index);
+        return index;
+    }
+
+    int constantCount() {
+        return constantList.size();
+    }
+
+    /**
+     * 编译结束后收紧数组
+     */
+    void finish() {
+        code = Arrays.copyOf(code, count);
+        lines = Arrays.copyOf(lines, count);
+        constants = constantList.toArray();
+    }
+}
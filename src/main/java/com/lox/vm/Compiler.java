@@ -0,0 +1,786 @@
+package com.lox.vm;
+
+import com.lox.Expr;
+import com.lox.Lox;
+import com.lox.Stmt;
+import com.lox.Token;
+import com.lox.TokenType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 把已经通过 Resolver 检查的语法树编译成字节码。
+ * 局部变量直接放在 VM 的值栈上，按栈槽访问；被内层函数捕获的变量通过 upvalue 访问；
+ * 全局变量在编译期换成 {@link Globals} 的槽位下标。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className Compiler
+ * @date 2026/10/18 10:05
+ **/
+public class Compiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+    private static final int MAX_LOCALS = 256;
+    private static final int MAX_UPVALUES = 256;
+    private static final int MAX_CONSTANTS = 65536;
+    private static final int MAX_JUMP = 0xffff;
+
+    private enum FunctionType {
+        SCRIPT,
+        FUNCTION,
+        LAMBDA,
+        METHOD,
+        INITIALIZER,
+        STATIC_METHOD
+    }
+
+    private static final class Local {
+        final String name;
+        // -1 表示已声明但还没有初始化
+        int depth;
+        boolean isCaptured = false;
+
+        Local(String name, int depth) {
+            this.name = name;
+            this.depth = depth;
+        }
+    }
+
+    private static final class Upvalue {
+        final int index;
+        final boolean isLocal;
+
+        Upvalue(int index, boolean isLocal) {
+            this.index = index;
+            this.isLocal = isLocal;
+        }
+    }
+
+    private static final class Loop {
+        final Loop enclosing;
+        final int start;
+        final int scopeDepth;
+        final List<Integer> breakJumps = new ArrayList<>();
+
+        Loop(Loop enclosing, int start, int scopeDepth) {
+            this.enclosing = enclosing;
+            this.start = start;
+            this.scopeDepth = scopeDepth;
+        }
+    }
+
+    private static final class FunctionState {
+        final FunctionState enclosing;
+        final ObjFunction function;
+        final FunctionType type;
+        final List<Local> locals = new ArrayList<>();
+        final List<Upvalue> upvalues = new ArrayList<>();
+        int scopeDepth = 0;
+        Loop loop;
+
+        FunctionState(FunctionState enclosing, ObjFunction function, FunctionType type) {
+            this.enclosing = enclosing;
+            this.function = function;
+            this.type = type;
+        }
+    }
+
+    private final Globals globals;
+    private FunctionState current;
+    // 最近一次遇到的 token，用来记录行号和报编译错误
+    private Token token;
+    private boolean hadError = false;
+
+    Compiler(Globals globals) {
+        this.globals = globals;
+    }
+
+    /**
+     * 编译整个脚本，返回顶层函数。出现编译错误时返回 null
+     */
+    ObjFunction compile(List<Stmt> statements) {
+        beginFunction(FunctionType.SCRIPT, null);
+        for (Stmt statement : statements) {
+            compile(statement);
+        }
+        ObjFunction function = endFunction().function;
+        return hadError ? null : function;
+    }
+
+    // ---------------------------------------------------------------- 语句
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        beginScope();
+        for (Stmt statement : stmt.statements) {
+            compile(statement);
+        }
+        endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        mark(stmt.name);
+        int nameConstant = identifierConstant(stmt.name);
+        declareVariable(stmt.name);
+        emitOp(OpCode.CLASS);
+        emitShort(nameConstant);
+        defineVariable(stmt.name);
+
+        if (stmt.superclass != null) {
+            visitVariableExpr(stmt.superclass);
+            beginScope();
+            addLocal("super");
+            markInitialized();
+            getVariable(stmt.name.lexeme);
+            emitOp(OpCode.INHERIT);
+        }
+
+        getVariable(stmt.name.lexeme);
+        for (Stmt.Function method : stmt.methods) {
+            FunctionType type = method.name.lexeme.equals("init")
+                    ? FunctionType.INITIALIZER : FunctionType.METHOD;
+            function(type, method.name, method.params, method.body);
+            emitOp(OpCode.METHOD);
+            emitShort(identifierConstant(method.name));
+        }
+        for (Stmt.Function method : stmt.staticMethods) {
+            function(FunctionType.STATIC_METHOD, method.name, method.params, method.body);
+            emitOp(OpCode.STATIC_METHOD);
+            emitShort(identifierConstant(method.name));
+        }
+        for (Stmt.Function method : stmt.getter) {
+            function(FunctionType.METHOD, method.name, method.params, method.body);
+            emitOp(OpCode.GETTER);
+            emitShort(identifierConstant(method.name));
+        }
+        emitOp(OpCode.POP);
+
+        if (stmt.superclass != null) endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        compile(stmt.expression);
+        emitOp(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        mark(stmt.name);
+        declareVariable(stmt.name);
+        // 函数体里可以递归引用自己
+        if (current.scopeDepth > 0) markInitialized();
+        function(FunctionType.FUNCTION, stmt.name, stmt.params, stmt.body);
+        defineVariable(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        compile(stmt.condition);
+        int thenJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emitOp(OpCode.POP);
+        compile(stmt.thenBranch);
+        int elseJump = emitJump(OpCode.JUMP);
+        patchJump(thenJump);
+        emitOp(OpCode.POP);
+        if (stmt.elseBranch != null) compile(stmt.elseBranch);
+        patchJump(elseJump);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        compile(stmt.expression);
+        emitOp(OpCode.PRINT);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        mark(stmt.name);
+        declareVariable(stmt.name);
+        if (stmt.initializer != null) {
+            compile(stmt.initializer);
+        } else {
+            emitOp(OpCode.NIL);
+        }
+        defineVariable(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        int loopStart = currentChunk().count;
+        compile(stmt.condition);
+        int exitJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emitOp(OpCode.POP);
+
+        Loop loop = new Loop(current.loop, loopStart, current.scopeDepth);
+        current.loop = loop;
+        compile(stmt.body);
+        current.loop = loop.enclosing;
+        emitLoop(loopStart);
+
+        patchJump(exitJump);
+        emitOp(OpCode.POP);
+        // break 跳出时条件值已经弹掉了，所以落在 POP 之后
+        for (int jump : loop.breakJumps) {
+            patchJump(jump);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        beginScope();
+        if (stmt.initializer != null) compile(stmt.initializer);
+        int conditionStart = currentChunk().count;
+        compile(stmt.condition);
+        int exitJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emitOp(OpCode.POP);
+
+        // 增量表达式放在循环体前面，continue 和循环体末尾都往回跳到它
+        int bodyJump = emitJump(OpCode.JUMP);
+        int incrementStart = currentChunk().count;
+        if (stmt.increment != null) {
+            compile(stmt.increment);
+            emitOp(OpCode.POP);
+        }
+        emitLoop(conditionStart);
+        patchJump(bodyJump);
+
+        Loop loop = new Loop(current.loop, incrementStart, current.scopeDepth);
+        current.loop = loop;
+        compile(stmt.body);
+        current.loop = loop.enclosing;
+        emitLoop(incrementStart);
+
+        patchJump(exitJump);
+        emitOp(OpCode.POP);
+        for (int jump : loop.breakJumps) {
+            patchJump(jump);
+        }
+        endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        mark(stmt.token);
+        Loop loop = current.loop;
+        if (loop == null) {
+            error("break 只能放在循环语法内。");
+            return null;
+        }
+        discardLocals(loop.scopeDepth);
+        // 解析器把 continue 也生成成 Stmt.Break，只是 token 类型不同
+        if (stmt.token.type == TokenType.CONTINUE) {
+            emitLoop(loop.start);
+            return null;
+        }
+        loop.breakJumps.add(emitJump(OpCode.JUMP));
+        return null;
+    }
+
+    @Override
+    public Void visitContinueStmt(Stmt.Continue stmt) {
+        mark(stmt.token);
+        Loop loop = current.loop;
+        if (loop == null) {
+            error("continue 只能放在循环语法内。");
+            return null;
+        }
+        discardLocals(loop.scopeDepth);
+        emitLoop(loop.start);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        mark(stmt.token);
+        if (current.type == FunctionType.INITIALIZER) {
+            emitOp(OpCode.GET_LOCAL);
+            emitByte(0);
+        } else if (stmt.value != null) {
+            compile(stmt.value);
+        } else {
+            emitOp(OpCode.NIL);
+        }
+        emitOp(OpCode.RETURN);
+        return null;
+    }
+
+    // ---------------------------------------------------------------- 表达式
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        compile(expr.value);
+        mark(expr.name);
+        setVariable(expr.name.lexeme);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        compile(expr.left);
+        if (expr.operator.type == TokenType.COMMA) {
+            emitOp(OpCode.POP);
+            compile(expr.right);
+            return null;
+        }
+        compile(expr.right);
+        mark(expr.operator);
+        switch (expr.operator.type) {
+            case GREATER:       emitOp(OpCode.GREATER); break;
+            case GREATER_EQUAL: emitOp(OpCode.GREATER_EQUAL); break;
+            case LESS:          emitOp(OpCode.LESS); break;
+            case LESS_EQUAL:    emitOp(OpCode.LESS_EQUAL); break;
+            case BANG_EQUAL:    emitOp(OpCode.NOT_EQUAL); break;
+            case EQUAL_EQUAL:   emitOp(OpCode.EQUAL); break;
+            case MINUS:         emitOp(OpCode.SUBTRACT); break;
+            case PLUS:          emitOp(OpCode.ADD); break;
+            case SLASH:         emitOp(OpCode.DIVIDE); break;
+            case STAR:          emitOp(OpCode.MULTIPLY); break;
+            case LOGIC_AND:     emitOp(OpCode.BIT_AND); break;
+            case LOGIC_OR:      emitOp(OpCode.BIT_OR); break;
+            default:
+                error("不支持的二元运算符。");
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        if (expr.callee instanceof Expr.Get) {
+            // obj.method(...) 不创建绑定方法，直接调用
+            Expr.Get get = (Expr.Get) expr.callee;
+            compile(get.object);
+            compileArguments(expr.arguments);
+            mark(expr.paren);
+            emitOp(OpCode.INVOKE);
+            emitShort(identifierConstant(get.name));
+            emitByte(expr.arguments.size());
+            return null;
+        }
+        if (expr.callee instanceof Expr.Super) {
+            Expr.Super superExpr = (Expr.Super) expr.callee;
+            mark(superExpr.keyword);
+            getVariable("this");
+            compileArguments(expr.arguments);
+            getVariable("super");
+            mark(expr.paren);
+            emitOp(OpCode.SUPER_INVOKE);
+            emitShort(identifierConstant(superExpr.method));
+            emitByte(expr.arguments.size());
+            return null;
+        }
+        compile(expr.callee);
+        compileArguments(expr.arguments);
+        mark(expr.paren);
+        emitOp(OpCode.CALL);
+        emitByte(expr.arguments.size());
+        return null;
+    }
+
+    private void compileArguments(List<Expr> arguments) {
+        if (arguments.size() > 255) {
+            error("参数最多只能有254个。");
+        }
+        for (Expr argument : arguments) {
+            compile(argument);
+        }
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        compile(expr.object);
+        mark(expr.name);
+        emitOp(OpCode.GET_PROPERTY);
+        emitShort(identifierConstant(expr.name));
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            emitOp(OpCode.NIL);
+        } else if (expr.value == Boolean.TRUE) {
+            emitOp(OpCode.TRUE);
+        } else if (expr.value == Boolean.FALSE) {
+            emitOp(OpCode.FALSE);
+        } else {
+            emitOp(OpCode.CONSTANT);
+            emitShort(makeConstant(expr.value));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        compile(expr.left);
+        if (expr.operator.type == TokenType.OR) {
+            int elseJump = emitJump(OpCode.JUMP_IF_FALSE);
+            int endJump = emitJump(OpCode.JUMP);
+            patchJump(elseJump);
+            emitOp(OpCode.POP);
+            compile(expr.right);
+            patchJump(endJump);
+        } else {
+            int endJump = emitJump(OpCode.JUMP_IF_FALSE);
+            emitOp(OpCode.POP);
+            compile(expr.right);
+            patchJump(endJump);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        compile(expr.object);
+        compile(expr.value);
+        mark(expr.name);
+        emitOp(OpCode.SET_PROPERTY);
+        emitShort(identifierConstant(expr.name));
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        mark(expr.keyword);
+        getVariable(expr.keyword.lexeme);
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+        mark(expr.keyword);
+        getVariable("this");
+        getVariable("super");
+        mark(expr.method);
+        emitOp(OpCode.GET_SUPER);
+        emitShort(identifierConstant(expr.method));
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        compile(expr.right);
+        mark(expr.operator);
+        switch (expr.operator.type) {
+            case BANG:  emitOp(OpCode.NOT); break;
+            case MINUS: emitOp(OpCode.NEGATE); break;
+            default:
+                error("不支持的一元运算符。");
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr) {
+        compile(expr.condition);
+        int elseJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emitOp(OpCode.POP);
+        compile(expr.left);
+        int endJump = emitJump(OpCode.JUMP);
+        patchJump(elseJump);
+        emitOp(OpCode.POP);
+        compile(expr.right);
+        patchJump(endJump);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        mark(expr.name);
+        getVariable(expr.name.lexeme);
+        return null;
+    }
+
+    @Override
+    public Void visitSelfIncOrDecrExpr(Expr.SelfIncOrDecr expr) {
+        mark(expr.name);
+        if (!(expr.variable instanceof Expr.Variable)) {
+            error("只能对变量进行" + expr.name.lexeme + "操作。");
+            return null;
+        }
+        String name = ((Expr.Variable) expr.variable).name.lexeme;
+        // 栈上留下旧值，新值写回变量
+        getVariable(name);
+        emitOp(OpCode.DUP);
+        emitOp(expr.name.type == TokenType.PLUS_PLUS ? OpCode.INCREMENT : OpCode.DECREMENT);
+        emitShort(makeConstant(name));
+        setVariable(name);
+        emitOp(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitLambdaExpr(Expr.Lambda expr) {
+        mark(expr.name);
+        function(FunctionType.LAMBDA, expr.name, expr.params, expr.body);
+        return null;
+    }
+
+    // ---------------------------------------------------------------- 函数
+
+    private void function(FunctionType type, Token name, List<Token> params, List<Stmt> body) {
+        FunctionState state = beginFunction(type, type == FunctionType.LAMBDA ? "lambda" : name.lexeme);
+        beginScope();
+        for (Token param : params) {
+            state.function.arity++;
+            mark(param);
+            declareVariable(param);
+            markInitialized();
+        }
+        for (Stmt statement : body) {
+            compile(statement);
+        }
+        endFunction();
+
+        emitOp(OpCode.CLOSURE);
+        emitShort(makeConstant(state.function));
+        for (Upvalue upvalue : state.upvalues) {
+            emitByte(upvalue.isLocal ? 1 : 0);
+            emitByte(upvalue.index);
+        }
+    }
+
+    private FunctionState beginFunction(FunctionType type, String name) {
+        current = new FunctionState(current, new ObjFunction(name), type);
+        // 0 号槽留给被调用者，方法里就是 this
+        boolean hasReceiver = type == FunctionType.METHOD || type == FunctionType.INITIALIZER;
+        current.locals.add(new Local(hasReceiver ? "this" : "", 0));
+        return current;
+    }
+
+    private FunctionState endFunction() {
+        emitReturn();
+        FunctionState state = current;
+        state.function.upvalueCount = state.upvalues.size();
+        state.function.chunk.finish();
+        current = state.enclosing;
+        return state;
+    }
+
+    private void emitReturn() {
+        if (current.type == FunctionType.INITIALIZER) {
+            emitOp(OpCode.GET_LOCAL);
+            emitByte(0);
+        } else {
+            emitOp(OpCode.NIL);
+        }
+        emitOp(OpCode.RETURN);
+    }
+
+    // ---------------------------------------------------------------- 变量
+
+    private void getVariable(String name) {
+        int arg = resolveLocal(current, name);
+        if (arg != -1) {
+            emitOp(OpCode.GET_LOCAL);
+            emitByte(arg);
+        } else if ((arg = resolveUpvalue(current, name)) != -1) {
+            emitOp(OpCode.GET_UPVALUE);
+            emitByte(arg);
+        } else {
+            emitOp(OpCode.GET_GLOBAL);
+            emitShort(globals.slot(name));
+        }
+    }
+
+    private void setVariable(String name) {
+        int arg = resolveLocal(current, name);
+        if (arg != -1) {
+            emitOp(OpCode.SET_LOCAL);
+            emitByte(arg);
+        } else if ((arg = resolveUpvalue(current, name)) != -1) {
+            emitOp(OpCode.SET_UPVALUE);
+            emitByte(arg);
+        } else {
+            emitOp(OpCode.SET_GLOBAL);
+            emitShort(globals.slot(name));
+        }
+    }
+
+    private int resolveLocal(FunctionState state, String name) {
+        for (int i = state.locals.size() - 1; i >= 0; i--) {
+            Local local = state.locals.get(i);
+            // 还没初始化完的变量对自己的初始化表达式不可见，Resolver 已经报过错
+            if (local.depth != -1 && local.name.equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int resolveUpvalue(FunctionState state, String name) {
+        if (state.enclosing == null) return -1;
+
+        int local = resolveLocal(state.enclosing, name);
+        if (local != -1) {
+            state.enclosing.locals.get(local).isCaptured = true;
+            return addUpvalue(state, local, true);
+        }
+
+        int upvalue = resolveUpvalue(state.enclosing, name);
+        if (upvalue != -1) {
+            return addUpvalue(state, upvalue, false);
+        }
+        return -1;
+    }
+
+    private int addUpvalue(FunctionState state, int index, boolean isLocal) {
+        for (int i = 0; i < state.upvalues.size(); i++) {
+            Upvalue upvalue = state.upvalues.get(i);
+            if (upvalue.index == index && upvalue.isLocal == isLocal) {
+                return i;
+            }
+        }
+        if (state.upvalues.size() == MAX_UPVALUES) {
+            error("Too many closure variables in function.");
+            return 0;
+        }
+        state.upvalues.add(new Upvalue(index, isLocal));
+        return state.upvalues.size() - 1;
+    }
+
+    private void declareVariable(Token name) {
+        if (current.scopeDepth == 0) return;
+        addLocal(name.lexeme);
+    }
+
+    private void addLocal(String name) {
+        if (current.locals.size() == MAX_LOCALS) {
+            error("Too many local variables in function.");
+            return;
+        }
+        current.locals.add(new Local(name, -1));
+    }
+
+    private void markInitialized() {
+        if (current.scopeDepth == 0) return;
+        current.locals.get(current.locals.size() - 1).depth = current.scopeDepth;
+    }
+
+    /**
+     * 局部变量的值已经在栈上，标记为可用即可；全局变量写进全局表
+     */
+    private void defineVariable(Token name) {
+        if (current.scopeDepth > 0) {
+            markInitialized();
+            return;
+        }
+        emitOp(OpCode.DEFINE_GLOBAL);
+        emitShort(globals.slot(name.lexeme));
+    }
+
+    private void beginScope() {
+        current.scopeDepth++;
+    }
+
+    private void endScope() {
+        current.scopeDepth--;
+        List<Local> locals = current.locals;
+        while (!locals.isEmpty() && locals.get(locals.size() - 1).depth > current.scopeDepth) {
+            emitOp(locals.get(locals.size() - 1).isCaptured ? OpCode.CLOSE_UPVALUE : OpCode.POP);
+            locals.remove(locals.size() - 1);
+        }
+    }
+
+    /**
+     * break / continue 跳出作用域前，弹掉比循环更深的局部变量，但不改动编译期的局部变量表
+     */
+    private void discardLocals(int depth) {
+        List<Local> locals = current.locals;
+        for (int i = locals.size() - 1; i >= 0 && locals.get(i).depth > depth; i--) {
+            emitOp(locals.get(i).isCaptured ? OpCode.CLOSE_UPVALUE : OpCode.POP);
+        }
+    }
+
+    // ---------------------------------------------------------------- 生成指令
+
+    private void compile(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void compile(Expr expr) {
+        expr.accept(this);
+    }
+
+    private Chunk currentChunk() {
+        return current.function.chunk;
+    }
+
+    private void emitByte(int b) {
+        currentChunk().write(b, token == null ? 0 : token.line);
+    }
+
+    private void emitOp(int op) {
+        emitByte(op);
+    }
+
+    private void emitShort(int value) {
+        emitByte((value >> 8) & 0xff);
+        emitByte(value & 0xff);
+    }
+
+    private int emitJump(int op) {
+        emitOp(op);
+        emitByte(0xff);
+        emitByte(0xff);
+        return currentChunk().count - 2;
+    }
+
+    private void patchJump(int offset) {
+        Chunk chunk = currentChunk();
+        int jump = chunk.count - offset - 2;
+        if (jump > MAX_JUMP) {
+            error("Too much code to jump over.");
+        }
+        chunk.code[offset] = (byte) ((jump >> 8) & 0xff);
+        chunk.code[offset + 1] = (byte) (jump & 0xff);
+    }
+
+    private void emitLoop(int loopStart) {
+        emitOp(OpCode.LOOP);
+        int offset = currentChunk().count - loopStart + 2;
+        if (offset > MAX_JUMP) {
+            error("Loop body too large.");
+        }
+        emitShort(offset);
+    }
+
+    private int makeConstant(Object value) {
+        int constant = currentChunk().addConstant(value);
+        if (constant >= MAX_CONSTANTS) {
+            error("Too many constants in one chunk.");
+            return 0;
+        }
+        return constant;
+    }
+
+    private int identifierConstant(Token name) {
+        return makeConstant(name.lexeme);
+    }
+
+    private void mark(Token token) {
+        if (token != null) this.token = token;
+    }
+
+    private void error(String message) {
+        hadError = true;
+        Lox.error(token, message);
+    }
+}
@@ -0,0 +1,46 @@
+package com.lox.vm;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 全局变量表。编译时把变量名换成槽位下标，运行时按下标读写数组，
+ * 变量在使用之后才定义（函数互相调用、REPL 里后输入的定义）也没问题，
+ * 因为名字到槽位的映射和值是否已经定义是分开的。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className Globals
+ * @date 2026/10/18 09:55
+ **/
+final class Globals {
+    // 还没有执行到定义语句的槽位
+    static final Object UNDEFINED = new Object();
+
+    private final Map<String, Integer> slots = new HashMap<>();
+    String[] names = new String[16];
+    Object[] values = new Object[16];
+
+    Globals() {
+        Arrays.fill(values, UNDEFINED);
+    }
+
+    int slot(String name) {
+        Integer slot = slots.get(name);
+        if (slot != null) return slot;
+        int index = slots.size();
+        if (index == values.length) {
+            names = Arrays.copyOf(names, index * 2);
+            values = Arrays.copyOf(values, index * 2);
+            Arrays.fill(values, index, values.length, UNDEFINED);
+        }
+        names[index] = name;
+        slots.put(name, index);
+        return index;
+    }
+
+    void define(String name, Object value) {
+        values[slot(name)] = value;
+    }
+}
@@ -0,0 +1,13 @@
+package com.lox.vm;
+
+/**
+ * @author peiyou
+ * @version 1.0
+ * @className InterpretResult
+ * @date 2026/10/18 09:53
+ **/
+public enum InterpretResult {
+    OK,
+    COMPILE_ERROR,
+    RUNTIME_ERROR
+}
@@ -0,0 +1,22 @@
+package com.lox.vm;
+
+/**
+ * @author peiyou
+ * @version 1.0
+ * @className ObjBoundMethod
+ * @date 2026/10/18 09:50
+ **/
+final class ObjBoundMethod {
+    final Object receiver;
+    final ObjClosure method;
+
+    ObjBoundMethod(Object receiver, ObjClosure method) {
+        this.receiver = receiver;
+        this.method = method;
+    }
+
+    @Override
+    public String toString() {
+        return method.toString();
+    }
+}
@@ -0,0 +1,28 @@
+package com.lox.vm;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author peiyou
+ * @version 1.0
+ * @className ObjClass
+ * @date 2026/10/18 09:48
+ **/
+final class ObjClass {
+    final String name;
+    final Map<String, ObjClosure> methods = new HashMap<>();
+    final Map<String, ObjClosure> staticMethods = new HashMap<>();
+    final Map<String, ObjClosure> getters = new HashMap<>();
+    // init 方法会被频繁查找，单独缓存一份
+    ObjClosure initializer;
+
+    ObjClass(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,22 @@
+package com.lox.vm;
+
+/**
+ * @author peiyou
+ * @version 1.0
+ * @className ObjClosure
+ * @date 2026/10/18 09:46
+ **/
+final class ObjClosure {
+    final ObjFunction function;
+    final ObjUpvalue[] upvalues;
+
+    ObjClosure(ObjFunction function) {
+        this.function = function;
+        this.upvalues = new ObjUpvalue[function.upvalueCount];
+    }
+
+    @Override
+    public String toString() {
+        return function.toString();
+    }
+}
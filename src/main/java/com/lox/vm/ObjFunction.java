@@ -0,0 +1,27 @@
+package com.lox.vm;
+
+/**
+ * 编译好的函数：参数个数、字节码和需要捕获的 upvalue 数量。
+ * 运行时不会直接调用，总是包在 {@link ObjClosure} 里。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className ObjFunction
+ * @date 2026/10/18 09:45
+ **/
+final class ObjFunction {
+    final String name;
+    final Chunk chunk = new Chunk();
+    int arity = 0;
+    int upvalueCount = 0;
+
+    ObjFunction(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+        if (name == null) return "<script>";
+        return "<fn " + name + ">";
+    }
+}
@@ -0,0 +1,24 @@
+package com.lox.vm;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author peiyou
+ * @version 1.0
+ * @className ObjInstance
+ * @date 2026/10/18 09:49
+ **/
+final class ObjInstance {
+    final ObjClass klass;
+    final Map<String, Object> fields = new HashMap<>();
+
+    ObjInstance(ObjClass klass) {
+        this.klass = klass;
+    }
+
+    @Override
+    public String toString() {
+        return klass.name + " instance";
+    }
+}
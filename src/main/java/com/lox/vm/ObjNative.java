@@ -0,0 +1,29 @@
+package com.lox.vm;
+
+/**
+ * VM 内置的本地函数
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className ObjNative
+ * @date 2026/10/18 09:51
+ **/
+final class ObjNative {
+
+    interface NativeFn {
+        Object call(Object[] args);
+    }
+
+    final int arity;
+    final NativeFn function;
+
+    ObjNative(int arity, NativeFn function) {
+        this.arity = arity;
+        this.function = function;
+    }
+
+    @Override
+    public String toString() {
+        return "<native fn>";
+    }
+}
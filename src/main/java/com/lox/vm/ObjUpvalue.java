@@ -0,0 +1,21 @@
+package com.lox.vm;
+
+/**
+ * 闭包捕获的变量。变量还在栈上时 slot 指向栈槽，
+ * 所在的作用域结束后把值搬到 closed 里，slot 置为 -1。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className ObjUpvalue
+ * @date 2026/10/18 09:47
+ **/
+final class ObjUpvalue {
+    int slot;
+    Object closed;
+    // 按 slot 从大到小串起来的打开状态的 upvalue
+    ObjUpvalue next;
+
+    ObjUpvalue(int slot) {
+        this.slot = slot;
+    }
+}
@@ -0,0 +1,93 @@
+package com.lox.vm;
+
+/**
+ * 字节码指令。用 int 常量而不是 enum，让 VM 的分派循环直接编译成 tableswitch。
+ * 操作数：u8 表示一个字节，u16 表示两个字节（大端）。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className OpCode
+ * @date 2026/10/18 09:30
+ **/
+final class OpCode {
+    // u16 常量下标
+    static final int CONSTANT = 0;
+    static final int NIL = 1;
+    static final int TRUE = 2;
+    static final int FALSE = 3;
+    static final int POP = 4;
+    static final int DUP = 5;
+
+    // u8 栈槽
+    static final int GET_LOCAL = 6;
+    static final int SET_LOCAL = 7;
+    // u16 全局变量槽
+    static final int GET_GLOBAL = 8;
+    static final int DEFINE_GLOBAL = 9;
+    static final int SET_GLOBAL = 10;
+    // u8 upvalue 下标
+    static final int GET_UPVALUE = 11;
+    static final int SET_UPVALUE = 12;
+    // u16 属性名常量
+    static final int GET_PROPERTY = 13;
+    static final int SET_PROPERTY = 14;
+    static final int GET_SUPER = 15;
+
+    static final int EQUAL = 16;
+    static final int NOT_EQUAL = 17;
+    static final int GREATER = 18;
+    static final int GREATER_EQUAL = 19;
+    static final int LESS = 20;
+    static final int LESS_EQUAL = 21;
+    static final int ADD = 22;
+    static final int SUBTRACT = 23;
+    static final int MULTIPLY = 24;
+    static final int DIVIDE = 25;
+    static final int BIT_AND = 26;
+    static final int BIT_OR = 27;
+    static final int NOT = 28;
+    static final int NEGATE = 29;
+    // u16 变量名常量，只用于报错
+    static final int INCREMENT = 30;
+    static final int DECREMENT = 31;
+
+    static final int PRINT = 32;
+    // u16 偏移
+    static final int JUMP = 33;
+    static final int JUMP_IF_FALSE = 34;
+    static final int LOOP = 35;
+    // u8 参数个数
+    static final int CALL = 36;
+    // u16 方法名常量，u8 参数个数
+    static final int INVOKE = 37;
+    static final int SUPER_INVOKE = 38;
+    // u16 函数常量，后面跟 upvalueCount 对 (u8 isLocal, u8 index)
+    static final int CLOSURE = 39;
+    static final int CLOSE_UPVALUE = 40;
+    static final int RETURN = 41;
+    // u16 类名常量
+    static final int CLASS = 42;
+    static final int INHERIT = 43;
+    // u16 方法名常量
+    static final int METHOD = 44;
+    static final int STATIC_METHOD = 45;
+    static final int GETTER = 46;
+
+    private static final String[] NAMES = {
+            "CONSTANT", "NIL", "TRUE", "FALSE", "POP", "DUP",
+            "GET_LOCAL", "SET_LOCAL", "GET_GLOBAL", "DEFINE_GLOBAL", "SET_GLOBAL",
+            "GET_UPVALUE", "SET_UPVALUE", "GET_PROPERTY", "SET_PROPERTY", "GET_SUPER",
+            "EQUAL", "NOT_EQUAL", "GREATER", "GREATER_EQUAL", "LESS", "LESS_EQUAL",
+            "ADD", "SUBTRACT", "MULTIPLY", "DIVIDE", "BIT_AND", "BIT_OR", "NOT", "NEGATE",
+            "INCREMENT", "DECREMENT", "PRINT", "JUMP", "JUMP_IF_FALSE", "LOOP",
+            "CALL", "INVOKE", "SUPER_INVOKE", "CLOSURE", "CLOSE_UPVALUE", "RETURN",
+            "CLASS", "INHERIT", "METHOD", "STATIC_METHOD", "GETTER"
+    };
+
+    private OpCode() {}
+
+    static String name(int op) {
+        if (op < 0 || op >= NAMES.length) return "UNKNOWN_" + op;
+        return NAMES[op];
+    }
+}
@@ -0,0 +1,714 @@
+package com.lox.vm;
+
+import com.lox.Stmt;
+import com.lox.runtime.LoxNumbers;
+import com.lox.runtime.LoxString;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 基于栈的字节码虚拟机。
+ * 所有 Lox 调用都在 {@link #run()} 的同一个循环里完成，调用帧和值栈都是堆上的数组，
+ * 不会像树遍历解释器那样每次调用都消耗一串 Java 栈帧。两个数组都按需翻倍扩容，
+ * 调用深度超过 {@link #FRAMES_MAX}（可以用 {@link #setFramesMax} 修改）时报告栈溢出。
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className VM
+ * @date 2026/10/18 11:00
+ **/
+public class VM {
+
+    private static final int FRAMES_INITIAL = 64;
+    // 默认的最大调用深度
+    public static final int FRAMES_MAX = 1_000_000;
+    // 每次调用时保证值栈顶上至少还有这么多空位：局部变量最多 256 个，再加上表达式的临时值
+    private static final int FRAME_SLOTS = 1024;
+
+    /**
+     * 运行时错误，带着出错指令所在的行号，在 interpret 里统一报告
+     */
+    private static final class VmError extends RuntimeException {
+        final int line;
+
+        VmError(String message, int line) {
+            super(message, null, false, false);
+            this.line = line;
+        }
+    }
+
+    private Object[] stack = new Object[FRAMES_INITIAL * 256];
+    private int stackTop = 0;
+    private CallFrame[] frames = new CallFrame[FRAMES_INITIAL];
+    private int frameCount = 0;
+    private int framesMax = FRAMES_MAX;
+    private final Globals globals = new Globals();
+    private ObjUpvalue openUpvalues;
+
+    public VM() {
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new CallFrame();
+        }
+        globals.define("clock", new ObjNative(0,
+                args -> (double) System.currentTimeMillis() / 1000.0));
+    }
+
+    public InterpretResult interpret(List<Stmt> statements) {
+        ObjFunction function = new Compiler(globals).compile(statements);
+        if (function == null) return InterpretResult.COMPILE_ERROR;
+
+        ObjClosure closure = new ObjClosure(function);
+        push(closure);
+        try {
+            call(closure, 0);
+            run();
+            return InterpretResult.OK;
+        } catch (VmError error) {
+            System.err.println(error.getMessage() + "\n[line " + error.line + "]");
+            resetStack();
+            return InterpretResult.RUNTIME_ERROR;
+        }
+    }
+
+    /**
+     * 最大调用深度，超过时报告 Stack overflow.
+     */
+    public void setFramesMax(int framesMax) {
+        this.framesMax = framesMax;
+    }
+
+    private void run() {
+        CallFrame frame = frames[frameCount - 1];
+        byte[] code = frame.closure.function.chunk.code;
+        Object[] constants = frame.closure.function.chunk.constants;
+        int ip = frame.ip;
+        int base = frame.slots;
+        Object[] stack = this.stack;
+
+        for (;;) {
+            int op = code[ip++];
+            switch (op) {
+                case OpCode.CONSTANT: {
+                    int index = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    stack[stackTop++] = constants[index];
+                    break;
+                }
+                case OpCode.NIL: stack[stackTop++] = null; break;
+                case OpCode.TRUE: stack[stackTop++] = Boolean.TRUE; break;
+                case OpCode.FALSE: stack[stackTop++] = Boolean.FALSE; break;
+                case OpCode.POP: stack[--stackTop] = null; break;
+                case OpCode.DUP: stack[stackTop] = stack[stackTop - 1]; stackTop++; break;
+
+                case OpCode.GET_LOCAL: {
+                    int slot = code[ip++] & 0xff;
+                    stack[stackTop++] = stack[base + slot];
+                    break;
+                }
+                case OpCode.SET_LOCAL: {
+                    int slot = code[ip++] & 0xff;
+                    stack[base + slot] = stack[stackTop - 1];
+                    break;
+                }
+                case OpCode.GET_GLOBAL: {
+                    int slot = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    Object value = globals.values[slot];
+                    if (value == Globals.UNDEFINED) {
+                        frame.ip = ip;
+                        throw error("未定义的变量名'" + globals.names[slot] + "'；");
+                    }
+                    stack[stackTop++] = value;
+                    break;
+                }
+                case OpCode.DEFINE_GLOBAL: {
+                    int slot = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    globals.values[slot] = stack[--stackTop];
+                    stack[stackTop] = null;
+                    break;
+                }
+                case OpCode.SET_GLOBAL: {
+                    int slot = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    if (globals.values[slot] == Globals.UNDEFINED) {
+                        frame.ip = ip;
+                        throw error("未定义变量'" + globals.names[slot] + "'；");
+                    }
+                    globals.values[slot] = stack[stackTop - 1];
+                    break;
+                }
+                case OpCode.GET_UPVALUE: {
+                    ObjUpvalue upvalue = frame.closure.upvalues[code[ip++] & 0xff];
+                    stack[stackTop++] = upvalue.slot >= 0 ? stack[upvalue.slot] : upvalue.closed;
+                    break;
+                }
+                case OpCode.SET_UPVALUE: {
+                    ObjUpvalue upvalue = frame.closure.upvalues[code[ip++] & 0xff];
+                    if (upvalue.slot >= 0) {
+                        stack[upvalue.slot] = stack[stackTop - 1];
+                    } else {
+                        upvalue.closed = stack[stackTop - 1];
+                    }
+                    break;
+                }
+                case OpCode.GET_PROPERTY: {
+                    String name = (String) constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    frame.ip = ip;
+                    Object receiver = stack[stackTop - 1];
+                    if (receiver instanceof ObjInstance) {
+                        ObjInstance instance = (ObjInstance) receiver;
+                        Object value = instance.fields.get(name);
+                        if (value != null || instance.fields.containsKey(name)) {
+                            stack[stackTop - 1] = value;
+                            break;
+                        }
+                        ObjClosure method = instance.klass.methods.get(name);
+                        if (method != null) {
+                            stack[stackTop - 1] = new ObjBoundMethod(instance, method);
+                            break;
+                        }
+                        ObjClosure getter = instance.klass.getters.get(name);
+                        if (getter == null) {
+                            throw error("Undefined property '" + name + "'.");
+                        }
+                        // 实例已经在栈顶，正好作为 getter 的 0 号槽
+                        frame = call(getter, 0);
+                        code = frame.closure.function.chunk.code;
+                        constants = frame.closure.function.chunk.constants;
+                        ip = frame.ip;
+                        base = frame.slots;
+                        stack = this.stack;
+                    } else if (receiver instanceof ObjClass) {
+                        ObjClosure method = ((ObjClass) receiver).staticMethods.get(name);
+                        if (method == null) {
+                            throw error(name + "不是静态方法。");
+                        }
+                        stack[stackTop - 1] = method;
+                    } else {
+                        // 和解释器一致：非实例上取属性得到 nil
+                        stack[stackTop - 1] = null;
+                    }
+                    break;
+                }
+                case OpCode.SET_PROPERTY: {
+                    String name = (String) constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    Object target = stack[stackTop - 2];
+                    if (!(target instanceof ObjInstance)) {
+                        frame.ip = ip;
+                        throw error("Only instances have fields.");
+                    }
+                    Object value = stack[--stackTop];
+                    ((ObjInstance) target).fields.put(name, value);
+                    stack[stackTop] = null;
+                    stack[stackTop - 1] = value;
+                    break;
+                }
+                case OpCode.GET_SUPER: {
+                    String name = (String) constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    ObjClass superclass = (ObjClass) stack[--stackTop];
+                    stack[stackTop] = null;
+                    ObjClosure method = superclass.methods.get(name);
+                    if (method == null) {
+                        frame.ip = ip;
+                        throw error("Undefined property '" + name + "'.");
+                    }
+                    stack[stackTop - 1] = new ObjBoundMethod(stack[stackTop - 1], method);
+                    break;
+                }
+
+                case OpCode.EQUAL: {
+                    Object b = stack[--stackTop];
+                    stack[stackTop] = null;
+                    stack[stackTop - 1] = LoxNumbers.isEqual(stack[stackTop - 1], b);
+                    break;
+                }
+                case OpCode.NOT_EQUAL: {
+                    Object b = stack[--stackTop];
+                    stack[stackTop] = null;
+                    stack[stackTop - 1] = !LoxNumbers.isEqual(stack[stackTop - 1], b);
+                    break;
+                }
+                case OpCode.GREATER:
+                case OpCode.GREATER_EQUAL:
+                case OpCode.LESS:
+                case OpCode.LESS_EQUAL: {
+                    Object b = stack[--stackTop];
+                    Object a = stack[stackTop - 1];
+                    stack[stackTop] = null;
+                    boolean result;
+                    if (a instanceof Long && b instanceof Long) {
+                        result = compare(op, Long.compare((Long) a, (Long) b), 0);
+                    } else if (LoxNumbers.isNumber(a) && LoxNumbers.isNumber(b)) {
+                        result = compare(op, LoxNumbers.toDouble(a), LoxNumbers.toDouble(b));
+                    } else if (LoxString.isString(a) || LoxString.isString(b)) {
+                        result = compare(op, String.valueOf(a).compareTo(String.valueOf(b)), 0);
+                    } else {
+                        frame.ip = ip;
+                        throw error("Operands must be numbers.");
+                    }
+                    stack[stackTop - 1] = result;
+                    break;
+                }
+                case OpCode.ADD: {
+                    Object b = stack[--stackTop];
+                    Object a = stack[stackTop - 1];
+                    stack[stackTop] = null;
+                    if (a instanceof Long && b instanceof Long) {
+                        stack[stackTop - 1] = LoxNumbers.add((long) (Long) a, (long) (Long) b);
+                    } else if (LoxNumbers.isNumber(a) && LoxNumbers.isNumber(b)) {
+                        stack[stackTop - 1] = LoxNumbers.add(a, b);
+                    } else if (LoxString.isString(a) || LoxString.isString(b)) {
+                        stack[stackTop - 1] = LoxString.concat(a, b);
+                    } else {
+                        frame.ip = ip;
+                        throw error("操作数两边必须是数字或字符串.");
+                    }
+                    break;
+                }
+                case OpCode.SUBTRACT: {
+                    Object b = stack[--stackTop];
+                    Object a = stack[stackTop - 1];
+                    stack[stackTop] = null;
+                    if (a instanceof Long && b instanceof Long) {
+                        stack[stackTop - 1] = LoxNumbers.subtract((long) (Long) a, (long) (Long) b);
+                        break;
+                    }
+                    Object result = LoxNumbers.subtract(a, b);
+                    if (result == null) {
+                        frame.ip = ip;
+                        throw error("Operands must be numbers.");
+                    }
+                    stack[stackTop - 1] = result;
+                    break;
+                }
+                case OpCode.MULTIPLY: {
+                    Object b = stack[--stackTop];
+                    Object a = stack[stackTop - 1];
+                    stack[stackTop] = null;
+                    if (a instanceof Long && b instanceof Long) {
+                        stack[stackTop - 1] = LoxNumbers.multiply((long) (Long) a, (long) (Long) b);
+                        break;
+                    }
+                    Object result = LoxNumbers.multiply(a, b);
+                    if (result == null) {
+                        frame.ip = ip;
+                        throw error("Operands must be numbers.");
+                    }
+                    stack[stackTop - 1] = result;
+                    break;
+                }
+                case OpCode.DIVIDE: {
+                    Object b = stack[--stackTop];
+                    Object a = stack[stackTop - 1];
+                    stack[stackTop] = null;
+                    if (!LoxNumbers.isNumber(a) || !LoxNumbers.isNumber(b)) {
+                        frame.ip = ip;
+                        throw error("Operands must be numbers.");
+                    }
+                    if (LoxNumbers.isZero(b)) {
+                        frame.ip = ip;
+                        throw error("被除数不能为0.");
+                    }
+                    stack[stackTop - 1] = LoxNumbers.divide(a, b);
+                    break;
+                }
+                case OpCode.BIT_AND:
+                case OpCode.BIT_OR: {
+                    Object b = stack[--stackTop];
+                    Object a = stack[stackTop - 1];
+                    stack[stackTop] = null;
+                    Object result = op == OpCode.BIT_AND ? LoxNumbers.bitAnd(a, b) : LoxNumbers.bitOr(a, b);
+                    if (result == null) {
+                        frame.ip = ip;
+                        throw error("Operand must be a integer.");
+                    }
+                    stack[stackTop - 1] = result;
+                    break;
+                }
+                case OpCode.NOT:
+                    stack[stackTop - 1] = !isTruthy(stack[stackTop - 1]);
+                    break;
+                case OpCode.NEGATE: {
+                    Object value = stack[stackTop - 1];
+                    Object result = LoxNumbers.negate(value);
+                    if (result == null) {
+                        frame.ip = ip;
+                        throw error("Operand must be a number.");
+                    }
+                    stack[stackTop - 1] = result;
+                    break;
+                }
+                case OpCode.INCREMENT:
+                case OpCode.DECREMENT: {
+                    String name = (String) constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    Object value = stack[stackTop - 1];
+                    if (value == null) {
+                        frame.ip = ip;
+                        throw error("变量'" + name + "'未初始化.");
+                    }
+                    Object result = LoxNumbers.increment(value, op == OpCode.INCREMENT ? 1 : -1);
+                    if (result == null) {
+                        frame.ip = ip;
+                        throw error((op == OpCode.INCREMENT ? "++" : "--") + "操作只能是数字。");
+                    }
+                    stack[stackTop - 1] = result;
+                    break;
+                }
+
+                case OpCode.PRINT: {
+                    System.out.println(stringify(stack[--stackTop]));
+                    stack[stackTop] = null;
+                    break;
+                }
+                case OpCode.JUMP: {
+                    int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2 + offset;
+                    break;
+                }
+                case OpCode.JUMP_IF_FALSE: {
+                    int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    if (!isTruthy(stack[stackTop - 1])) ip += offset;
+                    break;
+                }
+                case OpCode.LOOP: {
+                    int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2 - offset;
+                    break;
+                }
+
+                case OpCode.CALL: {
+                    int argCount = code[ip++] & 0xff;
+                    frame.ip = ip;
+                    frame = callValue(stack[stackTop - argCount - 1], argCount);
+                    code = frame.closure.function.chunk.code;
+                    constants = frame.closure.function.chunk.constants;
+                    ip = frame.ip;
+                    base = frame.slots;
+                    stack = this.stack;
+                    break;
+                }
+                case OpCode.INVOKE: {
+                    String name = (String) constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    int argCount = code[ip + 2] & 0xff;
+                    ip += 3;
+                    frame.ip = ip;
+                    frame = invoke(name, argCount);
+                    code = frame.closure.function.chunk.code;
+                    constants = frame.closure.function.chunk.constants;
+                    ip = frame.ip;
+                    base = frame.slots;
+                    stack = this.stack;
+                    break;
+                }
+                case OpCode.SUPER_INVOKE: {
+                    String name = (String) constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    int argCount = code[ip + 2] & 0xff;
+                    ip += 3;
+                    frame.ip = ip;
+                    ObjClass superclass = (ObjClass) stack[--stackTop];
+                    stack[stackTop] = null;
+                    ObjClosure method = superclass.methods.get(name);
+                    if (method == null) {
+                        throw error("Undefined property '" + name + "'.");
+                    }
+                    frame = call(method, argCount);
+                    code = frame.closure.function.chunk.code;
+                    constants = frame.closure.function.chunk.constants;
+                    ip = frame.ip;
+                    base = frame.slots;
+                    stack = this.stack;
+                    break;
+                }
+                case OpCode.CLOSURE: {
+                    ObjFunction function = (ObjFunction) constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    ObjClosure closure = new ObjClosure(function);
+                    for (int i = 0; i < closure.upvalues.length; i++) {
+                        boolean isLocal = code[ip++] != 0;
+                        int index = code[ip++] & 0xff;
+                        closure.upvalues[i] = isLocal
+                                ? captureUpvalue(base + index)
+                                : frame.closure.upvalues[index];
+                    }
+                    stack[stackTop++] = closure;
+                    break;
+                }
+                case OpCode.CLOSE_UPVALUE:
+                    closeUpvalues(stackTop - 1);
+                    stack[--stackTop] = null;
+                    break;
+                case OpCode.RETURN: {
+                    Object result = stack[--stackTop];
+                    closeUpvalues(base);
+                    Object[] pendingArgs = frame.pendingArgs;
+                    frame.pendingArgs = null;
+                    frameCount--;
+                    for (int i = base; i <= stackTop; i++) {
+                        stack[i] = null;
+                    }
+                    stackTop = base;
+                    if (frameCount == 0) {
+                        return;
+                    }
+                    stack[stackTop++] = result;
+                    frame = frames[frameCount - 1];
+                    if (pendingArgs != null) {
+                        // obj.getter(args)：先拿到 getter 的返回值，再用参数调用它
+                        for (Object arg : pendingArgs) {
+                            stack[stackTop++] = arg;
+                        }
+                        frame = callValue(result, pendingArgs.length);
+                    }
+                    code = frame.closure.function.chunk.code;
+                    constants = frame.closure.function.chunk.constants;
+                    ip = frame.ip;
+                    base = frame.slots;
+                    stack = this.stack;
+                    break;
+                }
+
+                case OpCode.CLASS: {
+                    String name = (String) constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    stack[stackTop++] = new ObjClass(name);
+                    break;
+                }
+                case OpCode.INHERIT: {
+                    Object superclass = stack[stackTop - 2];
+                    if (!(superclass instanceof ObjClass)) {
+                        frame.ip = ip;
+                        throw error("Superclass must be a class.");
+                    }
+                    ObjClass subclass = (ObjClass) stack[--stackTop];
+                    stack[stackTop] = null;
+                    // 类创建后方法表不会再变，继承时直接把父类的方法拷贝下来
+                    subclass.methods.putAll(((ObjClass) superclass).methods);
+                    subclass.initializer = ((ObjClass) superclass).initializer;
+                    break;
+                }
+                case OpCode.METHOD:
+                case OpCode.STATIC_METHOD:
+                case OpCode.GETTER: {
+                    String name = (String) constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    ObjClosure method = (ObjClosure) stack[--stackTop];
+                    stack[stackTop] = null;
+                    ObjClass klass = (ObjClass) stack[stackTop - 1];
+                    if (op == OpCode.METHOD) {
+                        klass.methods.put(name, method);
+                        if (name.equals("init")) klass.initializer = method;
+                    } else if (op == OpCode.STATIC_METHOD) {
+                        klass.staticMethods.put(name, method);
+                    } else {
+                        klass.getters.put(name, method);
+                    }
+                    break;
+                }
+                default:
+                    frame.ip = ip;
+                    throw error("未知的指令 " + OpCode.name(op) + "。");
+            }
+        }
+    }
+
+    /**
+     * 调用栈上的值，返回接下来要执行的帧。本地函数和类的构造在这里直接完成，返回的还是当前帧
+     */
+    private CallFrame callValue(Object callee, int argCount) {
+        if (callee instanceof ObjClosure) {
+            return call((ObjClosure) callee, argCount);
+        }
+        if (callee instanceof ObjBoundMethod) {
+            ObjBoundMethod bound = (ObjBoundMethod) callee;
+            stack[stackTop - argCount - 1] = bound.receiver;
+            return call(bound.method, argCount);
+        }
+        if (callee instanceof ObjClass) {
+            ObjClass klass = (ObjClass) callee;
+            stack[stackTop - argCount - 1] = new ObjInstance(klass);
+            if (klass.initializer != null) {
+                return call(klass.initializer, argCount);
+            }
+            if (argCount != 0) {
+                throw error("期待 0 个参数，但只传入了 " + argCount + " 个。");
+            }
+            return frames[frameCount - 1];
+        }
+        if (callee instanceof ObjNative) {
+            ObjNative fn = (ObjNative) callee;
+            if (argCount != fn.arity) {
+                throw error("期待 " + fn.arity + " 个参数，但只传入了 " + argCount + " 个。");
+            }
+            Object[] args = new Object[argCount];
+            System.arraycopy(stack, stackTop - argCount, args, 0, argCount);
+            Object result = fn.function.call(args);
+            for (int i = stackTop - argCount - 1; i < stackTop; i++) {
+                stack[i] = null;
+            }
+            stackTop -= argCount + 1;
+            stack[stackTop++] = result;
+            return frames[frameCount - 1];
+        }
+        throw error("方法和类才支持调用.");
+    }
+
+    private CallFrame invoke(String name, int argCount) {
+        Object receiver = stack[stackTop - argCount - 1];
+        if (receiver instanceof ObjInstance) {
+            ObjInstance instance = (ObjInstance) receiver;
+            Object value = instance.fields.get(name);
+            if (value != null || instance.fields.containsKey(name)) {
+                stack[stackTop - argCount - 1] = value;
+                return callValue(value, argCount);
+            }
+            ObjClosure method = instance.klass.methods.get(name);
+            if (method != null) {
+                return call(method, argCount);
+            }
+            ObjClosure getter = instance.klass.getters.get(name);
+            if (getter == null) {
+                throw error("Undefined property '" + name + "'.");
+            }
+            Object[] args = new Object[argCount];
+            System.arraycopy(stack, stackTop - argCount, args, 0, argCount);
+            for (int i = stackTop - argCount; i < stackTop; i++) {
+                stack[i] = null;
+            }
+            stackTop -= argCount;
+            CallFrame frame = call(getter, 0);
+            frame.pendingArgs = args;
+            return frame;
+        }
+        if (receiver instanceof ObjClass) {
+            ObjClosure method = ((ObjClass) receiver).staticMethods.get(name);
+            if (method == null) {
+                throw error(name + "不是静态方法。");
+            }
+            stack[stackTop - argCount - 1] = method;
+            return call(method, argCount);
+        }
+        throw error("方法和类才支持调用.");
+    }
+
+    private CallFrame call(ObjClosure closure, int argCount) {
+        if (argCount != closure.function.arity) {
+            throw error("期待 " + closure.function.arity + " 个参数，但只传入了 " + argCount + " 个。");
+        }
+        if (frameCount >= framesMax) throw error("Stack overflow.");
+        if (frameCount == frames.length || stackTop + FRAME_SLOTS > stack.length) {
+            grow();
+        }
+        CallFrame frame = frames[frameCount++];
+        frame.closure = closure;
+        frame.ip = 0;
+        frame.slots = stackTop - argCount - 1;
+        frame.pendingArgs = null;
+        return frame;
+    }
+
+    /**
+     * 调用帧或值栈不够用时翻倍。run() 里缓存了 stack 数组，调用之后要重新读取
+     */
+    private void grow() {
+        if (frameCount == frames.length) {
+            CallFrame[] grown = Arrays.copyOf(frames, Math.min(frames.length * 2, framesMax));
+            for (int i = frames.length; i < grown.length; i++) {
+                grown[i] = new CallFrame();
+            }
+            frames = grown;
+        }
+        if (stackTop + FRAME_SLOTS > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(stack.length * 2, stackTop + FRAME_SLOTS));
+        }
+    }
+
+    private ObjUpvalue captureUpvalue(int slot) {
+        ObjUpvalue prev = null;
+        ObjUpvalue upvalue = openUpvalues;
+        while (upvalue != null && upvalue.slot > slot) {
+            prev = upvalue;
+            upvalue = upvalue.next;
+        }
+        if (upvalue != null && upvalue.slot == slot) return upvalue;
+
+        ObjUpvalue created = new ObjUpvalue(slot);
+        created.next = upvalue;
+        if (prev == null) {
+            openUpvalues = created;
+        } else {
+            prev.next = created;
+        }
+        return created;
+    }
+
+    private void closeUpvalues(int last) {
+        while (openUpvalues != null && openUpvalues.slot >= last) {
+            ObjUpvalue upvalue = openUpvalues;
+            upvalue.closed = stack[upvalue.slot];
+            upvalue.slot = -1;
+            openUpvalues = upvalue.next;
+            upvalue.next = null;
+        }
+    }
+
+    private void push(Object value) {
+        stack[stackTop++] = value;
+    }
+
+    private void resetStack() {
+        for (int i = 0; i < stackTop; i++) {
+            stack[i] = null;
+        }
+        stackTop = 0;
+        frameCount = 0;
+        openUpvalues = null;
+    }
+
+    /**
+     * 用当前帧保存的 ip 找到出错的行号
+     */
+    private VmError error(String message) {
+        return new VmError(message, currentLine());
+    }
+
+    private int currentLine() {
+        CallFrame frame = frames[frameCount - 1];
+        Chunk chunk = frame.closure.function.chunk;
+        int instruction = Math.max(0, Math.min(frame.ip, chunk.count) - 1);
+        return chunk.count == 0 ? 0 : chunk.lines[instruction];
+    }
+
+    private static boolean compare(int op, double a, double b) {
+        switch (op) {
+            case OpCode.GREATER: return a > b;
+            case OpCode.GREATER_EQUAL: return a >= b;
+            case OpCode.LESS: return a < b;
+            default: return a <= b;
+        }
+    }
+
+    private static boolean isTruthy(Object object) {
+        if (object == null) return false;
+        if (object instanceof Boolean) return (boolean) object;
+        return true;
+    }
+
+    static String stringify(Object object) {
+        if (object == null) return "nil";
+        if (object instanceof Double) {
+            String text = object.toString();
+            if (text.endsWith(".0")) {
+                text = text.substring(0, text.length() - 2);
+            }
+            return text;
+        }
+        return object.toString();
+    }
+}
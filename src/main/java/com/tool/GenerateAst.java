@@ -8,48 +8,64 @@ import java.util.Arrays;
 import java.util.List;
 
 /**
+ * 生成 Expr 和 Stmt 两棵语法树的类。
+ * <p>
+ * 每个节点类都带一个 int 类型的 kind 标记，按下面列表的顺序编号，新增类型请加在末尾，保持已有编号不变。
+ * Resolver、Optimizer 和 Interpreter 按 kind 做 switch，生成的代码里必须有它。
+ * <p>
+ * 加上 --switch 时还在标准输出打印按 kind 做 switch 分派的求值方法骨架，可以代替 accept 的双重分派：
+ * 一个 tableswitch 加上对求值器自己方法的直接调用。
+ * <p>
+ * 注意在 HotSpot 上 accept 这个多态调用点只是一次虚表调用，而完整的 switch 方法有两百多字节，
+ * 超出了内联的阈值，树遍历解释器换成 switch 之后反而更慢，所以 Interpreter 目前仍然用 accept。
+ * 换之前请先跑一下 benchmark。
+ *
  * @author peiyou
  * @version 1.0
  * @className GenerateAst
  * @date 2023/9/8 13:19
  **/
 public class GenerateAst {
+    private static boolean printSwitch = false;
+
     public static void main(String[] args) throws FileNotFoundException, UnsupportedEncodingException {
-        if (args.length != 1) {
-            System.out.println("使用：generate_ast <输入的目录>");
+        if (args.length < 1 || args.length > 2 || (args.length == 2 && !args[1].equals("--switch"))) {
+            System.out.println("使用：generate_ast <输出的目录> [--switch]");
             System.exit(64);
         }
         String outputDir = args[0];
+        printSwitch = args.length == 2;
         defineAst(outputDir, "Expr", Arrays.asList(
-                "Assign   : Token name, Expr value",
+                "Assign   : Token name, Expr value | int binding, int slot, Global global",
                 "Binary   : Expr left, Token operator, Expr right",
-                "Call     : Expr callee, Token paren, List<Expr> arguments",
+                "Call     : Expr callee, Token paren, List<Expr> arguments | boolean tail",
                 "Get      : Expr object, Token name",
                 "Grouping : Expr expression",
                 "Literal  : Object value",
                 "Logical  : Expr left, Token operator, Expr right",
                 "Set      : Expr object, Token name, Expr value",
-                "This     : Token keyword",
-                "Super    : Token keyword, Token method",
+                "This     : Token keyword | int binding, int slot",
+                "Super    : Token keyword, Token method | int slot, int thisBinding, int thisSlot",
                 "Unary    : Token operator, Expr right",
                 "Ternary  : Expr condition, Expr left, Expr right",
-                "Variable : Token name",
+                "Variable : Token name | int binding, int slot, Global global",
                 "SelfIncOrDecr: Token name, Expr variable",
-                "Lambda   : Token name, List<Token> params, List<Stmt> body"
+                "Lambda   : Token name, List<Token> params, List<Stmt> body | int frameSize, int[] upvalues, int[] boxedParams, FunctionProfile profile"
         ));
 
         defineAst(outputDir, "Stmt", Arrays.asList(
                 "Block      : List<Stmt> statements",
-                "Class      : Token name, List<Stmt.Function> methods, List<Stmt.Function> staticMethods, List<Stmt.Function> getter, Expr.Variable superclass",
+                "Class      : Token name, List<Stmt.Function> methods, List<Stmt.Function> staticMethods, List<Stmt.Function> getter, Expr.Variable superclass | int slot = -1, boolean captured, int superSlot",
                 "Expression : Expr expression",
-                "Function   : Token name, List<Token> params, List<Stmt> body",
+                "Function   : Token name, List<Token> params, List<Stmt> body | int slot = -1, boolean captured, boolean hasThis, int frameSize, int[] upvalues, int[] boxedParams, FunctionProfile profile",
                 "If         : Expr condition, Stmt thenBranch, Stmt elseBranch",
                 "Print      : Expr expression",
-                "Var        : Token name, Expr initializer",
-                "While      : Expr condition, Stmt body",
+                "Var        : Token name, Expr initializer | int slot = -1, boolean captured",
+                "While      : Expr condition, Stmt body | LoopProfile profile",
                 "Break      : Token token",
                 "Continue   : Token token",
-                "Return     : Token token, Expr value"
+                "Return     : Token token, Expr value",
+                "For        : Stmt initializer, Expr condition, Expr increment, Stmt body | LoopProfile profile"
         ));
     }
 
@@ -59,7 +75,8 @@ public class GenerateAst {
      * @date 2023/9/8 13:24
      * @param outputDir
      * @param baseName
-     * @param types 存放着 类型: 字段类型 字段1, 字段类型 字段2, 字段类型 字段3  ， 以这样的形式放的，冒号后面是字段（多个字段间用逗号分开），前面是类型
+     * @param types 存放着 类型: 字段类型 字段1, 字段类型 字段2, 字段类型 字段3  ， 以这样的形式放的，冒号后面是字段（多个字段间用逗号分开），前面是类型。
+     *              竖线后面是不放进构造函数、之后再填写的字段，可以带初始值，如 Resolver 解析出的变量位置：| int depth = -1, int slot
      * @return void
      */
     private static void defineAst(String outputDir, String baseName, List<String> types) throws FileNotFoundException, UnsupportedEncodingException {
@@ -70,10 +87,12 @@ public class GenerateAst {
         writer.println();
         writer.println("import java.util.List;");
         writer.println();
-        writer.println("abstract class " + baseName + " {");
+        writer.println("public abstract class " + baseName + " {");
+
+        defineKinds(writer, baseName, types);
 
         writer.println();
-        writer.println("    abstract <R> R accept(Visitor<R> visitor);");
+        writer.println("    public abstract <R> R accept(Visitor<R> visitor);");
 
         defineVisitor(writer, baseName, types);
         for (String type: types) {
@@ -84,12 +103,62 @@ public class GenerateAst {
 
         writer.println("}");
         writer.close();
+
+        if (printSwitch) defineSwitch(baseName, types);
+    }
+
+    /**
+     * 节点类型常量、kind 字段和基类构造函数
+     */
+    private static void defineKinds(PrintWriter writer, String baseName, List<String> types) {
+        writer.println();
+        for (int i = 0; i < types.size(); i++) {
+            String typeName = types.get(i).split(":")[0].trim();
+            writer.println("    public static final int " + kindName(typeName) + " = " + i + ";");
+        }
+        writer.println();
+        writer.println("    public final int kind;");
+        writer.println();
+        writer.println("    protected " + baseName + "(int kind) {");
+        writer.println("        this.kind = kind;");
+        writer.println("    }");
+    }
+
+    /**
+     * 在标准输出打印按 kind 分派的方法骨架，复制到求值器里使用
+     */
+    private static void defineSwitch(String baseName, List<String> types) {
+        String node = baseName.toLowerCase();
+        System.out.println("    Object dispatch" + baseName + "(" + baseName + " " + node + ") {");
+        System.out.println("        switch (" + node + ".kind) {");
+        for (String type : types) {
+            String typeName = type.split(":")[0].trim();
+            System.out.println("            case " + baseName + "." + kindName(typeName) + ": return visit" + typeName
+                    + baseName + "((" + baseName + "." + typeName + ") " + node + ");");
+        }
+        System.out.println("        }");
+        System.out.println("        throw new IllegalStateException(\"未知的 " + baseName + " 类型：\" + " + node + ".kind);");
+        System.out.println("    }");
+        System.out.println();
+    }
+
+    /**
+     * SelfIncOrDecr -> SELF_INC_OR_DECR
+     */
+    private static String kindName(String typeName) {
+        return typeName.replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase();
     }
 
     private static void defineType(PrintWriter writer, String baseName, String className, String fieldList) {
-        writer.println("    static class " + className + " extends " + baseName + "{");
+        String extraFields = null;
+        if (fieldList.contains("|")) {
+            extraFields = fieldList.substring(fieldList.indexOf('|') + 1).trim();
+            fieldList = fieldList.substring(0, fieldList.indexOf('|')).trim();
+        }
+        writer.println("    public static class " + className + " extends " + baseName + "{");
         // 构造函数
-        writer.println("        " + className + "(" + fieldList + ") {");
+        writer.println("        public " + className + "(" + fieldList + ") {");
+        writer.println("            super(" + kindName(className) + ");");
 
         // 构造函数内的字段赋值
         String[] fields = fieldList.split(",");
@@ -104,13 +173,18 @@ public class GenerateAst {
 
         for (String field: fields) {
             field = field.trim();
-            writer.println("        final " + field + ";");
+            writer.println("        public final " + field + ";");
+        }
+        if (extraFields != null) {
+            for (String field : extraFields.split(",")) {
+                writer.println("        public " + field.trim() + ";");
+            }
         }
 
         //  accept 方法
         writer.println();
         writer.println("        @Override");
-        writer.println("        <R> R accept(Visitor<R> visitor) {");
+        writer.println("        public <R> R accept(Visitor<R> visitor) {");
         writer.println("            return visitor.visit" +
                 className + baseName + "(this);");
         writer.println("        }");
@@ -122,7 +196,7 @@ public class GenerateAst {
     }
 
     private static void defineVisitor(PrintWriter writer, String baseName, List<String> types) {
-        writer.println("    interface Visitor<R> {");
+        writer.println("    public interface Visitor<R> {");
 
         for (String type: types) {
             String typeName = type.split(":")[0].trim();
@@ -0,0 +1,871 @@
+package com.tool;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.lox.Expr;
+import com.lox.Lox;
+import com.lox.Stmt;
+import com.lox.Token;
+import com.lox.TokenType;
+
+/**
+ * 把 Lox 脚本翻译成一个 Java 类，配合 com.lox.runtime 里的运行时库用 javac 编译后直接运行，
+ * 启动时不再需要扫描、解析和 Resolver。
+ * <p>
+ * 翻译分两遍。第一遍按 Resolver 的规则解析出每个变量引用指向哪个声明，并找出需要放进
+ * {@link com.lox.runtime.Cell} 的局部变量：被内层函数捕获的，或者被 ++/-- 修改的。第二遍生成代码：
+ * 全局变量是类的静态 Cell 字段，其余局部变量是 Java 局部变量；函数、方法和 lambda 翻译成
+ * Java lambda；break、continue 和 return 直接对应 Java 的语句。
+ * <p>
+ * 用法：translate_lox &lt;脚本&gt; &lt;输出目录&gt; [类名]
+ *
+ * @author peiyou
+ * @version 1.0
+ * @className TranslateLox
+ * @date 2026/10/18 20:30
+ **/
+public class TranslateLox implements Expr.Visitor<String>, Stmt.Visitor<Void> {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.out.println("使用：translate_lox <脚本> <输出目录> [类名]");
+            System.exit(64);
+        }
+        Path script = Paths.get(args[0]);
+        String className = args.length == 3 ? args[2] : className(script);
+        List<Stmt> statements = Lox.parse(new String(Files.readAllBytes(script), StandardCharsets.UTF_8));
+        if (statements == null) System.exit(65);
+
+        String source;
+        try {
+            source = new TranslateLox().translate(statements, className, script.getFileName().toString());
+        } catch (TranslateError error) {
+            System.err.println("[line " + error.line + "] Error: " + error.getMessage());
+            System.exit(65);
+            return;
+        }
+        Path output = Paths.get(args[1], className.replace('.', '/') + ".java");
+        if (output.getParent() != null) Files.createDirectories(output.getParent());
+        Files.write(output, source.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 由脚本文件名得到类名：fib.lox -> Fib
+     */
+    private static String className(Path script) {
+        String name = script.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) name = name.substring(0, dot);
+        StringBuilder builder = new StringBuilder();
+        for (char c : name.toCharArray()) {
+            builder.append(Character.isJavaIdentifierPart(c) ? c : '_');
+        }
+        if (builder.length() == 0 || !Character.isJavaIdentifierStart(builder.charAt(0))) builder.insert(0, '_');
+        builder.setCharAt(0, Character.toUpperCase(builder.charAt(0)));
+        return builder.toString();
+    }
+
+    private static final class TranslateError extends RuntimeException {
+        final int line;
+
+        TranslateError(Token token, String message) {
+            super(message);
+            this.line = token.line;
+        }
+    }
+
+    /**
+     * 一个局部变量声明。function 是声明它的函数的编号，从别的函数里引用它时需要放进 Cell
+     */
+    private static final class Variable {
+        final String name;
+        final String javaName;
+        final int function;
+        boolean boxed = false;
+
+        Variable(String name, String javaName, int function) {
+            this.name = name;
+            this.javaName = javaName;
+            this.function = function;
+        }
+    }
+
+    // ---------------------------------------------------------------- 第一遍：解析变量
+
+    /**
+     * 和 Resolver 一样按作用域解析变量，在作用域里找不到的是全局变量
+     */
+    private final class Analyzer implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+        private final List<Map<String, Variable>> scopes = new ArrayList<>();
+        private int function = 0;
+        private int functionCount = 0;
+
+        void analyze(List<Stmt> statements) {
+            for (Stmt statement : statements) {
+                statement.accept(this);
+            }
+        }
+
+        private void analyze(Expr expr) {
+            expr.accept(this);
+        }
+
+        private void declare(Token name, Object declaration) {
+            if (scopes.isEmpty()) {
+                globals.add(name.lexeme);
+                return;
+            }
+            Variable variable = new Variable(name.lexeme, name.lexeme + "$" + (++nameCount), function);
+            scopes.get(scopes.size() - 1).put(name.lexeme, variable);
+            declarations.put(declaration, variable);
+        }
+
+        private void resolve(Expr expr, Token name) {
+            for (int i = scopes.size() - 1; i >= 0; i--) {
+                Variable variable = scopes.get(i).get(name.lexeme);
+                if (variable != null) {
+                    if (variable.function != function) variable.boxed = true;
+                    references.put(expr, variable);
+                    return;
+                }
+            }
+            globals.add(name.lexeme);
+        }
+
+        private void function(List<Token> params, List<Stmt> body) {
+            int enclosing = function;
+            function = ++functionCount;
+            scopes.add(new HashMap<>());
+            for (Token param : params) {
+                declare(param, param);
+            }
+            analyze(body);
+            scopes.remove(scopes.size() - 1);
+            function = enclosing;
+        }
+
+        @Override
+        public Void visitBlockStmt(Stmt.Block stmt) {
+            scopes.add(new HashMap<>());
+            analyze(stmt.statements);
+            scopes.remove(scopes.size() - 1);
+            return null;
+        }
+
+        @Override
+        public Void visitClassStmt(Stmt.Class stmt) {
+            declare(stmt.name, stmt);
+            if (stmt.superclass != null) analyze(stmt.superclass);
+            for (Stmt.Function method : stmt.methods) function(method.params, method.body);
+            for (Stmt.Function method : stmt.staticMethods) function(method.params, method.body);
+            for (Stmt.Function method : stmt.getter) function(method.params, method.body);
+            return null;
+        }
+
+        @Override
+        public Void visitExpressionStmt(Stmt.Expression stmt) {
+            analyze(stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitFunctionStmt(Stmt.Function stmt) {
+            declare(stmt.name, stmt);
+            function(stmt.params, stmt.body);
+            return null;
+        }
+
+        @Override
+        public Void visitIfStmt(Stmt.If stmt) {
+            analyze(stmt.condition);
+            stmt.thenBranch.accept(this);
+            if (stmt.elseBranch != null) stmt.elseBranch.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitPrintStmt(Stmt.Print stmt) {
+            analyze(stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitVarStmt(Stmt.Var stmt) {
+            // 和 Resolver 一样先声明，初始化表达式里的 lambda 可以引用这个变量自己
+            declare(stmt.name, stmt);
+            if (stmt.initializer != null) analyze(stmt.initializer);
+            return null;
+        }
+
+        @Override
+        public Void visitWhileStmt(Stmt.While stmt) {
+            analyze(stmt.condition);
+            stmt.body.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitForStmt(Stmt.For stmt) {
+            scopes.add(new HashMap<>());
+            if (stmt.initializer != null) stmt.initializer.accept(this);
+            analyze(stmt.condition);
+            stmt.body.accept(this);
+            if (stmt.increment != null) analyze(stmt.increment);
+            scopes.remove(scopes.size() - 1);
+            return null;
+        }
+
+        @Override
+        public Void visitBreakStmt(Stmt.Break stmt) {
+            return null;
+        }
+
+        @Override
+        public Void visitContinueStmt(Stmt.Continue stmt) {
+            return null;
+        }
+
+        @Override
+        public Void visitReturnStmt(Stmt.Return stmt) {
+            if (stmt.value != null) analyze(stmt.value);
+            return null;
+        }
+
+        @Override
+        public Void visitAssignExpr(Expr.Assign expr) {
+            analyze(expr.value);
+            resolve(expr, expr.name);
+            return null;
+        }
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr) {
+            analyze(expr.left);
+            analyze(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitCallExpr(Expr.Call expr) {
+            analyze(expr.callee);
+            for (Expr argument : expr.arguments) analyze(argument);
+            return null;
+        }
+
+        @Override
+        public Void visitGetExpr(Expr.Get expr) {
+            analyze(expr.object);
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr) {
+            analyze(expr.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr) {
+            return null;
+        }
+
+        @Override
+        public Void visitLogicalExpr(Expr.Logical expr) {
+            analyze(expr.left);
+            analyze(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitSetExpr(Expr.Set expr) {
+            analyze(expr.object);
+            analyze(expr.value);
+            return null;
+        }
+
+        @Override
+        public Void visitThisExpr(Expr.This expr) {
+            return null;
+        }
+
+        @Override
+        public Void visitSuperExpr(Expr.Super expr) {
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr) {
+            analyze(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitTernaryExpr(Expr.Ternary expr) {
+            analyze(expr.condition);
+            analyze(expr.left);
+            analyze(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitVariableExpr(Expr.Variable expr) {
+            resolve(expr, expr.name);
+            return null;
+        }
+
+        @Override
+        public Void visitSelfIncOrDecrExpr(Expr.SelfIncOrDecr expr) {
+            analyze(expr.variable);
+            // ++/-- 要同时拿到旧值和写回新值，放进 Cell 交给运行时处理
+            Variable variable = references.get(expr.variable);
+            if (variable != null) variable.boxed = true;
+            return null;
+        }
+
+        @Override
+        public Void visitLambdaExpr(Expr.Lambda expr) {
+            function(expr.params, expr.body);
+            return null;
+        }
+    }
+
+    // ---------------------------------------------------------------- 第二遍：生成代码
+
+    /**
+     * 正在生成的 Java 方法或 lambda
+     */
+    private static final class Context {
+        // this 对应的 Java 变量，不在方法里时为 null
+        final String self;
+        // 所在类的父类对应的 Java 变量
+        final String superclass;
+        final boolean initializer;
+        // 逻辑运算用到的临时变量，在方法开头声明
+        final List<String> temps = new ArrayList<>();
+        int loops = 0;
+
+        Context(String self, String superclass, boolean initializer) {
+            this.self = self;
+            this.superclass = superclass;
+            this.initializer = initializer;
+        }
+    }
+
+    private final Set<String> globals = new TreeSet<>();
+    private final Map<Object, Variable> declarations = new IdentityHashMap<>();
+    private final Map<Expr, Variable> references = new IdentityHashMap<>();
+    // 数字字面量（Long 或 Double）-> 常量字段名
+    private final Map<Object, String> numbers = new LinkedHashMap<>();
+    private int nameCount = 0;
+
+    private StringBuilder out = new StringBuilder();
+    private int indent = 0;
+    private Context context;
+    // 上一条语句能不能正常执行完；不能时同一个块里后面的语句执行不到，不再生成（javac 会报错）
+    private boolean completes = true;
+
+    String translate(List<Stmt> statements, String qualifiedName, String scriptName) {
+        new Analyzer().analyze(statements);
+
+        int dot = qualifiedName.lastIndexOf('.');
+        String className = qualifiedName.substring(dot + 1);
+        context = new Context(null, null, false);
+        indent = 2;
+        emitStatements(statements);
+        String body = out.toString();
+
+        out = new StringBuilder();
+        out.append("// Generated by com.tool.TranslateLox from ").append(scriptName).append(", do not edit.\n");
+        if (dot > 0) out.append("package ").append(qualifiedName, 0, dot).append(";\n");
+        out.append("\n");
+        out.append("import com.lox.runtime.Cell;\n");
+        out.append("import com.lox.runtime.Function;\n");
+        out.append("import com.lox.runtime.Klass;\n");
+        out.append("import com.lox.runtime.LoxRuntime;\n\n");
+        out.append("public final class ").append(className).append(" {\n");
+        for (Map.Entry<Object, String> number : numbers.entrySet()) {
+            boolean integer = number.getKey() instanceof Long;
+            out.append("    private static final ").append(integer ? "Long " : "Double ").append(number.getValue())
+                    .append(" = ").append(number.getKey()).append(integer ? "L;\n" : ";\n");
+        }
+        for (String global : globals) {
+            out.append("    private static final Cell ").append(global(global)).append(" = new Cell(")
+                    .append(quote(global)).append(", ")
+                    .append(global.equals("clock") ? "LoxRuntime.CLOCK" : "LoxRuntime.UNDEFINED").append(");\n");
+        }
+        out.append("\n");
+        out.append("    public static void main(String[] args) {\n");
+        out.append("        LoxRuntime.run(").append(className).append("::run);\n");
+        out.append("    }\n\n");
+        out.append("    private static void run() {\n");
+        appendTemps(context, 2);
+        out.append(body);
+        out.append("    }\n");
+        out.append("}\n");
+        return out.toString();
+    }
+
+    // ---------------------------------------------------------------- 辅助
+
+    private String translate(Expr expr) {
+        return expr.accept(this);
+    }
+
+    private void line(String text) {
+        for (int i = 0; i < indent; i++) out.append("    ");
+        out.append(text).append('\n');
+    }
+
+    private void appendTemps(Context context, int indent) {
+        for (String temp : context.temps) {
+            for (int i = 0; i < indent; i++) out.append("    ");
+            out.append("Object ").append(temp).append(" = null;\n");
+        }
+    }
+
+    private void emitStatements(List<Stmt> statements) {
+        completes = true;
+        for (Stmt statement : statements) {
+            statement.accept(this);
+            if (!completes) return;
+        }
+    }
+
+    /**
+     * if/while 的分支：块直接展开到 Java 的花括号里
+     */
+    private void emitBranch(Stmt branch) {
+        indent++;
+        if (branch instanceof Stmt.Block) {
+            emitStatements(((Stmt.Block) branch).statements);
+        } else {
+            emitStatements(java.util.Collections.singletonList(branch));
+        }
+        indent--;
+    }
+
+    private String temp() {
+        String name = "t$" + (++nameCount);
+        context.temps.add(name);
+        return name;
+    }
+
+    private static String global(String name) {
+        return "g$" + name;
+    }
+
+    private String number(Object value) {
+        String name = numbers.get(value);
+        if (name == null) {
+            name = "N$" + numbers.size();
+            numbers.put(value, name);
+        }
+        return name;
+    }
+
+    private static String quote(String value) {
+        StringBuilder builder = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"': builder.append("\\\""); break;
+                case '\\': builder.append("\\\\"); break;
+                case '\n': builder.append("\\n"); break;
+                case '\r': builder.append("\\r"); break;
+                case '\t': builder.append("\\t"); break;
+                default:
+                    if (c < 0x20 || c > 0x7E) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    /**
+     * 变量读取：Cell 里的值、Java 局部变量或者全局变量
+     */
+    private String read(Variable variable, Token name) {
+        if (variable == null) return "LoxRuntime.global(" + global(name.lexeme) + ", " + name.line + ")";
+        return variable.boxed ? variable.javaName + ".value" : variable.javaName;
+    }
+
+    /**
+     * 声明局部或全局变量并赋初值
+     */
+    private void declare(Variable variable, Token name, String value) {
+        if (variable == null) {
+            line(global(name.lexeme) + ".value = " + value + ";");
+        } else if (variable.boxed) {
+            // 先建 Cell 再求初值，初值里的闭包可以捕获这个变量自己
+            line("final Cell " + variable.javaName + " = new Cell(" + quote(variable.name) + ");");
+            line(variable.javaName + ".value = " + value + ";");
+        } else {
+            line("Object " + variable.javaName + " = " + value + ";");
+        }
+    }
+
+    /**
+     * 函数、方法、getter 和 lambda 都翻译成 new Function(name, arity, (self, args) -> {...})。
+     * 方法里的 this 是 self 参数，嵌套的函数沿用外层的 this
+     */
+    private String function(String name, List<Token> params, List<Stmt> body,
+                            boolean method, boolean getter, boolean initializer, String superclass) {
+        int id = ++nameCount;
+        String self = "self$" + id;
+        String arguments = "args$" + id;
+
+        Context enclosingContext = context;
+        StringBuilder enclosingOut = out;
+        boolean enclosingCompletes = completes;
+        int enclosingIndent = indent;
+        context = new Context(method ? self : enclosingContext.self,
+                method ? superclass : enclosingContext.superclass, initializer);
+        out = new StringBuilder();
+        indent = enclosingIndent + 1;
+
+        for (int i = 0; i < params.size(); i++) {
+            declare(declarations.get(params.get(i)), params.get(i), arguments + "[" + i + "]");
+        }
+        emitStatements(body);
+        if (completes) {
+            // 没有 return 时：初始化方法返回 this，其余返回 nil
+            line("return " + (initializer ? self : "null") + ";");
+        }
+        String code = out.toString();
+
+        out = new StringBuilder();
+        out.append("new Function(").append(quote(name)).append(", ").append(params.size());
+        if (getter) out.append(", true");
+        out.append(", (").append(self).append(", ").append(arguments).append(") -> {\n");
+        appendTemps(context, enclosingIndent + 1);
+        out.append(code);
+        for (int i = 0; i < enclosingIndent; i++) out.append("    ");
+        out.append("})");
+        String result = out.toString();
+
+        context = enclosingContext;
+        out = enclosingOut;
+        completes = enclosingCompletes;
+        indent = enclosingIndent;
+        return result;
+    }
+
+    private String functions(List<Stmt.Function> methods, boolean getter, boolean isStatic, String superclass) {
+        if (methods.isEmpty()) return "new Function[0]";
+        StringBuilder builder = new StringBuilder("new Function[] {");
+        indent++;
+        for (int i = 0; i < methods.size(); i++) {
+            Stmt.Function method = methods.get(i);
+            boolean initializer = !isStatic && !getter && method.name.lexeme.equals("init");
+            builder.append(i == 0 ? "\n" : ",\n");
+            for (int j = 0; j < indent; j++) builder.append("    ");
+            builder.append(function(method.name.lexeme, method.params, method.body,
+                    true, getter, initializer, superclass));
+        }
+        indent--;
+        builder.append("\n");
+        for (int j = 0; j < indent; j++) builder.append("    ");
+        return builder.append("}").toString();
+    }
+
+    private static String arguments(List<String> arguments) {
+        if (arguments.isEmpty()) return "new Object[0]";
+        return "new Object[] {" + String.join(", ", arguments) + "}";
+    }
+
+    // ---------------------------------------------------------------- 语句
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        line("{");
+        indent++;
+        emitStatements(stmt.statements);
+        indent--;
+        line("}");
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        String superclass = null;
+        if (stmt.superclass != null) {
+            superclass = "super$" + (++nameCount);
+            line("final Klass " + superclass + " = LoxRuntime.superclass("
+                    + translate(stmt.superclass) + ", " + stmt.superclass.name.line + ");");
+        }
+        // 和解释器一样先把类名定义成 nil，方法里引用类名时拿到的是同一个变量
+        Variable variable = declarations.get(stmt);
+        declare(variable, stmt.name, "null");
+        String target = variable == null ? global(stmt.name.lexeme) + ".value"
+                : variable.boxed ? variable.javaName + ".value" : variable.javaName;
+        line(target + " = new Klass(" + quote(stmt.name.lexeme) + ", " + superclass + ", "
+                + functions(stmt.methods, false, false, superclass) + ", "
+                + functions(stmt.staticMethods, false, true, superclass) + ", "
+                + functions(stmt.getter, true, false, superclass) + ");");
+        completes = true;
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        Expr expr = stmt.expression;
+        while (expr instanceof Expr.Grouping) expr = ((Expr.Grouping) expr).expression;
+        Variable variable = references.get(expr);
+        if (expr instanceof Expr.Assign && variable != null) {
+            line(read(variable, null) + " = " + translate(((Expr.Assign) expr).value) + ";");
+        } else if (expr instanceof Expr.Literal || expr instanceof Expr.This || expr instanceof Expr.Logical
+                || expr instanceof Expr.Ternary || expr instanceof Expr.Lambda
+                || (expr instanceof Expr.Variable && variable != null)) {
+            // 不是方法调用或赋值，Java 不允许单独成为语句
+            line("LoxRuntime.discard(" + translate(expr) + ");");
+        } else {
+            line(translate(expr) + ";");
+        }
+        completes = true;
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        declare(declarations.get(stmt), stmt.name,
+                function(stmt.name.lexeme, stmt.params, stmt.body, false, false, false, null));
+        completes = true;
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        line("if (LoxRuntime.isTruthy(" + translate(stmt.condition) + ")) {");
+        emitBranch(stmt.thenBranch);
+        boolean thenCompletes = completes;
+        boolean elseCompletes = true;
+        if (stmt.elseBranch != null) {
+            line("} else {");
+            emitBranch(stmt.elseBranch);
+            elseCompletes = completes;
+        }
+        line("}");
+        completes = thenCompletes || elseCompletes;
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        line("LoxRuntime.print(" + translate(stmt.expression) + ");");
+        completes = true;
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        declare(declarations.get(stmt), stmt.name,
+                stmt.initializer == null ? "null" : translate(stmt.initializer));
+        completes = true;
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        line("while (LoxRuntime.isTruthy(" + translate(stmt.condition) + ")) {");
+        context.loops++;
+        emitBranch(stmt.body);
+        context.loops--;
+        line("}");
+        completes = true;
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        // 外面再包一层花括号，初始化语句声明的变量只在循环里可见
+        line("{");
+        indent++;
+        if (stmt.initializer != null) stmt.initializer.accept(this);
+        String increment = stmt.increment == null ? "" : "LoxRuntime.discard(" + translate(stmt.increment) + ")";
+        line("for (; LoxRuntime.isTruthy(" + translate(stmt.condition) + "); " + increment + ") {");
+        context.loops++;
+        emitBranch(stmt.body);
+        context.loops--;
+        line("}");
+        indent--;
+        line("}");
+        completes = true;
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        if (context.loops == 0) throw new TranslateError(stmt.token, "break 不在当前函数的循环里，无法翻译。");
+        // Parser 目前把 continue 也解析成 Break，按 token 区分
+        line(stmt.token.type == TokenType.CONTINUE ? "continue;" : "break;");
+        completes = false;
+        return null;
+    }
+
+    @Override
+    public Void visitContinueStmt(Stmt.Continue stmt) {
+        if (context.loops == 0) throw new TranslateError(stmt.token, "continue 不在当前函数的循环里，无法翻译。");
+        line("continue;");
+        completes = false;
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        // 初始化方法里的 return; 返回 this
+        String value = stmt.value != null ? translate(stmt.value) : context.initializer ? context.self : "null";
+        line("return " + value + ";");
+        completes = false;
+        return null;
+    }
+
+    // ---------------------------------------------------------------- 表达式
+
+    @Override
+    public String visitAssignExpr(Expr.Assign expr) {
+        Variable variable = references.get(expr);
+        String value = translate(expr.value);
+        if (variable == null) {
+            return "LoxRuntime.assignGlobal(" + global(expr.name.lexeme) + ", " + value + ", " + expr.name.line + ")";
+        }
+        return "(" + read(variable, expr.name) + " = " + value + ")";
+    }
+
+    @Override
+    public String visitBinaryExpr(Expr.Binary expr) {
+        String left = translate(expr.left);
+        String right = translate(expr.right);
+        int line = expr.operator.line;
+        switch (expr.operator.type) {
+            case GREATER: return "LoxRuntime.greater(" + left + ", " + right + ", " + line + ")";
+            case GREATER_EQUAL: return "LoxRuntime.greaterEqual(" + left + ", " + right + ", " + line + ")";
+            case LESS: return "LoxRuntime.less(" + left + ", " + right + ", " + line + ")";
+            case LESS_EQUAL: return "LoxRuntime.lessEqual(" + left + ", " + right + ", " + line + ")";
+            case MINUS: return "LoxRuntime.subtract(" + left + ", " + right + ", " + line + ")";
+            case PLUS: return "LoxRuntime.add(" + left + ", " + right + ", " + line + ")";
+            case SLASH: return "LoxRuntime.divide(" + left + ", " + right + ", " + line + ")";
+            case STAR: return "LoxRuntime.multiply(" + left + ", " + right + ", " + line + ")";
+            case LOGIC_AND: return "LoxRuntime.bitAnd(" + left + ", " + right + ", " + line + ")";
+            case LOGIC_OR: return "LoxRuntime.bitOr(" + left + ", " + right + ", " + line + ")";
+            case BANG_EQUAL: return "LoxRuntime.notEqual(" + left + ", " + right + ")";
+            case EQUAL_EQUAL: return "LoxRuntime.equal(" + left + ", " + right + ")";
+            case COMMA: return "LoxRuntime.comma(" + left + ", " + right + ")";
+        }
+        throw new TranslateError(expr.operator, "未知运算符 " + expr.operator.lexeme);
+    }
+
+    @Override
+    public String visitCallExpr(Expr.Call expr) {
+        String callee = translate(expr.callee);
+        List<String> arguments = new ArrayList<>();
+        for (Expr argument : expr.arguments) {
+            arguments.add(translate(argument));
+        }
+        if (expr.callee instanceof Expr.Get && ((Expr.Get) expr.callee).object instanceof Expr.Variable) {
+            // a.b(...) 的 a.b 为 nil 时按 Klass.method 查静态方法，见 Interpreter.visitCallExpr
+            Expr.Get get = (Expr.Get) expr.callee;
+            return "LoxRuntime.callMethod(" + callee + ", " + translate(get.object) + ", "
+                    + quote(get.name.lexeme) + ", " + expr.paren.line + ", " + arguments(arguments) + ")";
+        }
+        return "LoxRuntime.call(" + callee + ", " + expr.paren.line + ", " + arguments(arguments) + ")";
+    }
+
+    @Override
+    public String visitGetExpr(Expr.Get expr) {
+        return "LoxRuntime.get(" + translate(expr.object) + ", " + quote(expr.name.lexeme) + ", " + expr.name.line + ")";
+    }
+
+    @Override
+    public String visitGroupingExpr(Expr.Grouping expr) {
+        return translate(expr.expression);
+    }
+
+    @Override
+    public String visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) return "null";
+        if (expr.value instanceof Boolean) return (Boolean) expr.value ? "Boolean.TRUE" : "Boolean.FALSE";
+        if (expr.value instanceof String) return quote((String) expr.value);
+        return number(expr.value);
+    }
+
+    @Override
+    public String visitLogicalExpr(Expr.Logical expr) {
+        String temp = temp();
+        String left = translate(expr.left);
+        String right = translate(expr.right);
+        if (expr.operator.type == TokenType.OR) {
+            return "(LoxRuntime.isTruthy(" + temp + " = " + left + ") ? " + temp + " : " + right + ")";
+        }
+        return "(LoxRuntime.isTruthy(" + temp + " = " + left + ") ? " + right + " : " + temp + ")";
+    }
+
+    @Override
+    public String visitSetExpr(Expr.Set expr) {
+        return "LoxRuntime.set(LoxRuntime.checkInstance(" + translate(expr.object) + ", " + expr.name.line + "), "
+                + translate(expr.value) + ", " + quote(expr.name.lexeme) + ")";
+    }
+
+    @Override
+    public String visitThisExpr(Expr.This expr) {
+        return context.self;
+    }
+
+    @Override
+    public String visitSuperExpr(Expr.Super expr) {
+        return "LoxRuntime.superMethod(" + context.superclass + ", " + context.self + ", "
+                + quote(expr.method.lexeme) + ", " + expr.method.line + ")";
+    }
+
+    @Override
+    public String visitUnaryExpr(Expr.Unary expr) {
+        String right = translate(expr.right);
+        if (expr.operator.type == TokenType.BANG) return "LoxRuntime.not(" + right + ")";
+        return "LoxRuntime.negate(" + right + ", " + expr.operator.line + ")";
+    }
+
+    @Override
+    public String visitTernaryExpr(Expr.Ternary expr) {
+        return "(LoxRuntime.isTruthy(" + translate(expr.condition) + ") ? "
+                + translate(expr.left) + " : " + translate(expr.right) + ")";
+    }
+
+    @Override
+    public String visitVariableExpr(Expr.Variable expr) {
+        return read(references.get(expr), expr.name);
+    }
+
+    @Override
+    public String visitSelfIncOrDecrExpr(Expr.SelfIncOrDecr expr) {
+        String operator = expr.name.lexeme;
+        int line = expr.name.line;
+        if (!(expr.variable instanceof Expr.Variable)) {
+            return "LoxRuntime.fail(" + quote(operator + "只能对变量进行" + operator + "操作。") + ", " + line + ")";
+        }
+        String delta = expr.name.type == TokenType.PLUS_PLUS ? "1" : "-1";
+        Variable variable = references.get(expr.variable);
+        if (variable == null) {
+            String name = ((Expr.Variable) expr.variable).name.lexeme;
+            return "LoxRuntime.incrementGlobal(" + global(name) + ", " + quote(operator) + ", " + delta + ", " + line + ")";
+        }
+        return "LoxRuntime.increment(" + variable.javaName + ", " + quote(operator) + ", " + delta + ", " + line + ")";
+    }
+
+    @Override
+    public String visitLambdaExpr(Expr.Lambda expr) {
+        return function("lambda", expr.params, expr.body, false, false, false, null);
+    }
+}